@@ -0,0 +1,303 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Answers "is X in Y's food chain?" and "what is the closest predator X and Y share?" in constant time, after one
+ * O(n log n) pass over a copy of the pyramid.
+ *
+ * Organisms are numbered in preorder from the apex predator, visiting prey in left, middle, right order, so an
+ * organism's index is its entry time and the organisms under it are exactly the next subtreeSize indices. That
+ * makes an ancestor check two comparisons. For the lowest common predator of u &lt; v, every organism with an index
+ * in (u, v] lies under the answer and one of them is its direct prey, so the answer is the smallest predator index
+ * in that range. A sparse table of range minimums over the predator indices returns it with two lookups. This is
+ * the Euler tour technique indexed by entry time only, which halves the table compared with a full tour.
+ *
+ * The index is immutable and safe to query from any number of threads. Later edits to the tree do not affect it.
+ */
+public final class AncestryIndex {
+    /** The number of queries one fork/join task answers without splitting further. */
+    static final int CHUNK = 8192;
+
+    /** The index of no organism, returned as the predator of the apex. */
+    public static final int NONE = -1;
+
+    private final OrganismNode[] organisms;
+    private final int[] predator;
+    private final int[] subtreeSize;
+    private final int[] depth;
+    private final int[] byNameId;
+    /** minPredator[k][i] is the smallest predator index among organisms i to i + 2^k - 1. */
+    private final int[][] minPredator;
+
+    /**
+     * Constructs an index over a copy of the structure under apex. The tree must not be modified while this runs;
+     * OrganismTree.ancestryIndex holds its read lock.
+     *
+     * @param apex
+     * The top of the pyramid to index.
+     * @custom.precondition
+     * apex is not null.
+     * @custom.postcondition
+     * Every organism under apex has an index, apex's being 0.
+     */
+    AncestryIndex(OrganismNode apex) {
+        int n = Math.max(1, apex.getSubtreeSize());
+        OrganismNode[] order = new OrganismNode[n];
+        int[] predators = new int[n];
+        int[] depths = new int[n];
+        OrganismNode[] pending = new OrganismNode[32];
+        int[] pendingPredator = new int[32];
+        int size = 0, count = 0;
+        pending[size] = apex;
+        pendingPredator[size++] = NONE;
+        while (size > 0) {
+            OrganismNode node = pending[--size];
+            int from = pendingPredator[size];
+            if (count == order.length) {
+                order = Arrays.copyOf(order, count * 2);
+                predators = Arrays.copyOf(predators, count * 2);
+                depths = Arrays.copyOf(depths, count * 2);
+            }
+            order[count] = node;
+            predators[count] = from;
+            depths[count] = from == NONE ? 0 : depths[from] + 1;
+            if (size + 3 > pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+                pendingPredator = Arrays.copyOf(pendingPredator, pending.length);
+            }
+            // Pushed in reverse so that prey are numbered left, middle, right.
+            OrganismNode[] prey = { node.getRight(), node.getMiddle(), node.getLeft() };
+            for (OrganismNode p : prey) {
+                if (p != null) {
+                    pending[size] = p;
+                    pendingPredator[size++] = count;
+                }
+            }
+            count++;
+        }
+
+        organisms = Arrays.copyOf(order, count);
+        predator = Arrays.copyOf(predators, count);
+        depth = Arrays.copyOf(depths, count);
+        subtreeSize = new int[count];
+        int maxNameId = 0;
+        for (int i = count - 1; i >= 0; i--) {
+            subtreeSize[i]++;
+            if (predator[i] != NONE) {
+                subtreeSize[predator[i]] += subtreeSize[i];
+            }
+            maxNameId = Math.max(maxNameId, organisms[i].getNameId());
+        }
+        byNameId = new int[maxNameId + 1];
+        Arrays.fill(byNameId, NONE);
+        for (int i = count - 1; i >= 0; i--) {
+            byNameId[organisms[i].getNameId()] = i;
+        }
+
+        int levels = 32 - Integer.numberOfLeadingZeros(count);
+        minPredator = new int[levels][];
+        minPredator[0] = predator;
+        for (int k = 1; k < levels; k++) {
+            int[] below = minPredator[k - 1];
+            int half = 1 << (k - 1);
+            int[] level = new int[count - (1 << k) + 1];
+            for (int i = 0; i < level.length; i++) {
+                level[i] = Math.min(below[i], below[i + half]);
+            }
+            minPredator[k] = level;
+        }
+    }
+
+    /**
+     * Returns the number of organisms in the index.
+     *
+     * @return
+     * The number of organisms.
+     */
+    public int size() {
+        return organisms.length;
+    }
+
+    /**
+     * Returns the index of the first organism with the given name, in preorder from the apex predator.
+     *
+     * @param name
+     * The name of the organism.
+     * @return
+     * The index.
+     * @throws IllegalArgumentException
+     * If no organism in the index has the given name.
+     */
+    public int indexOf(String name) throws IllegalArgumentException {
+        int nameId = NameDictionary.shared().lookup(name);
+        if (nameId == NameDictionary.NONE || nameId >= byNameId.length || byNameId[nameId] == NONE) {
+            throw new IllegalArgumentException("ERROR: The organism does not exist in the index.");
+        }
+        return byNameId[nameId];
+    }
+
+    /**
+     * Returns the organism at the given index.
+     *
+     * @param index
+     * The index, 0 for the apex predator.
+     * @return
+     * The organism.
+     */
+    public OrganismNode getOrganism(int index) {
+        return organisms[index];
+    }
+
+    /**
+     * Returns the index of the direct predator of the organism at the given index.
+     *
+     * @param index
+     * The index.
+     * @return
+     * The predator's index, or NONE for the apex predator.
+     */
+    public int getPredator(int index) {
+        return predator[index];
+    }
+
+    /**
+     * Returns how many links separate the organism at the given index from the apex predator.
+     *
+     * @param index
+     * The index.
+     * @return
+     * The depth, 0 for the apex predator.
+     */
+    public int getDepth(int index) {
+        return depth[index];
+    }
+
+    /**
+     * Returns whether the organism at ancestor is in the food chain of the organism at descendant, that is, on the
+     * path from the apex predator down to it. An organism is in its own food chain.
+     *
+     * @param ancestor
+     * The index of the possible predator.
+     * @param descendant
+     * The index of the possible prey.
+     * @return
+     * True if ancestor is descendant or eats it directly or indirectly.
+     */
+    public boolean isInFoodChain(int ancestor, int descendant) {
+        return ancestor <= descendant && descendant < ancestor + subtreeSize[ancestor];
+    }
+
+    /**
+     * Returns the closest organism whose food chain includes both given organisms.
+     *
+     * @param a
+     * The index of one organism.
+     * @param b
+     * The index of the other organism.
+     * @return
+     * The index of the lowest common predator, which is a or b itself if one is in the other's food chain.
+     */
+    public int lowestCommonPredator(int a, int b) {
+        if (a == b) {
+            return a;
+        }
+        int from = Math.min(a, b) + 1, to = Math.max(a, b);
+        int k = 31 - Integer.numberOfLeadingZeros(to - from + 1);
+        int[] level = minPredator[k];
+        return Math.min(level[from], level[to - (1 << k) + 1]);
+    }
+
+    /**
+     * Returns the number of links between two organisms through their lowest common predator.
+     *
+     * @param a
+     * The index of one organism.
+     * @param b
+     * The index of the other organism.
+     * @return
+     * The distance, 0 if a is b.
+     */
+    public int distance(int a, int b) {
+        return depth[a] + depth[b] - 2 * depth[lowestCommonPredator(a, b)];
+    }
+
+    /**
+     * Answers lowestCommonPredator for every pair a[i], b[i], in parallel on the common fork/join pool.
+     *
+     * @param a
+     * The indices of the first organisms.
+     * @param b
+     * The indices of the second organisms.
+     * @param out
+     * Receives the index of each pair's lowest common predator.
+     * @custom.precondition
+     * a, b and out have the same length.
+     * @custom.postcondition
+     * out[i] is lowestCommonPredator(a[i], b[i]) for every i.
+     */
+    public void lowestCommonPredators(int[] a, int[] b, int[] out) {
+        checkBatch(a.length, b.length, out.length);
+        ForkJoinPool.commonPool().invoke(new Batch(a, b, out, null, 0, a.length));
+    }
+
+    /**
+     * Answers isInFoodChain for every pair ancestors[i], descendants[i], in parallel on the common fork/join pool.
+     *
+     * @param ancestors
+     * The indices of the possible predators.
+     * @param descendants
+     * The indices of the possible prey.
+     * @param out
+     * Receives each pair's answer.
+     * @custom.precondition
+     * ancestors, descendants and out have the same length.
+     * @custom.postcondition
+     * out[i] is isInFoodChain(ancestors[i], descendants[i]) for every i.
+     */
+    public void isInFoodChain(int[] ancestors, int[] descendants, boolean[] out) {
+        checkBatch(ancestors.length, descendants.length, out.length);
+        ForkJoinPool.commonPool().invoke(new Batch(ancestors, descendants, null, out, 0, ancestors.length));
+    }
+
+    private static void checkBatch(int first, int second, int out) {
+        if (first != second || first != out) throw new IllegalArgumentException("The query arrays must have the same length.");
+    }
+
+    /**
+     * Answers one range of a batch of queries, splitting it in halves until each task holds at most CHUNK queries.
+     */
+    private final class Batch extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] a, b;
+        private final int[] predators;
+        private final boolean[] answers;
+        private final int from, to;
+
+        Batch(int[] a, int[] b, int[] predators, boolean[] answers, int from, int to) {
+            this.a = a;
+            this.b = b;
+            this.predators = predators;
+            this.answers = answers;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > CHUNK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Batch(a, b, predators, answers, from, middle), new Batch(a, b, predators, answers, middle, to));
+            } else if (predators != null) {
+                for (int i = from; i < to; i++) {
+                    predators[i] = lowestCommonPredator(a[i], b[i]);
+                }
+            } else {
+                for (int i = from; i < to; i++) {
+                    answers[i] = isInFoodChain(a[i], b[i]);
+                }
+            }
+        }
+    }
+}
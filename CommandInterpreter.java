@@ -0,0 +1,252 @@
+import java.io.IOException;
+
+/**
+ * Executes single-line food pyramid commands without prompting, for batch scripts.
+ *
+ * Each line holds one full command. Names may contain spaces; for AC and APEX the diet is the last word.
+ * <pre>
+ *   APEX name C|O      create the tree with the given apex predator
+ *   PC name            add a plant child under the cursor
+ *   AC name H|C|O      add an animal child under the cursor
+ *   RC name            remove a child of the cursor
+ *   P | C | F | LP     list prey, food chain, pyramid at cursor, plants supporting cursor
+ *   R                  reset the cursor to the root
+ *   M name             move the cursor to a child
+ *   J name             jump the cursor to any organism
+ *   STATS              show call counts, errors and latencies of the commands run so far, and the query
+ *                      cache's counters when the tree has one
+ *   Q                  stop
+ * </pre>
+ * Blank lines and lines starting with # are ignored. Rejected edits are reported with exceptions that skip
+ * stack-trace capture, since a script only ever prints their messages.
+ */
+public class CommandInterpreter {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private OrganismTree tree;
+    private OrganismSession session;
+    private final CommandMetrics metrics;
+
+    /**
+     * Constructs a CommandInterpreter with no tree. The first command must be APEX.
+     */
+    public CommandInterpreter(){
+        this(new CommandMetrics());
+    }
+
+    /**
+     * Constructs a CommandInterpreter with no tree that records its commands in the given metrics.
+     *
+     * @param metrics
+     * The metrics to record commands in.
+     */
+    public CommandInterpreter(CommandMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Constructs a CommandInterpreter that works on an existing tree through a new session of its own.
+     *
+     * @param tree
+     * The tree to run commands against.
+     */
+    public CommandInterpreter(OrganismTree tree){
+        this(tree.openSession());
+    }
+
+    /**
+     * Constructs a CommandInterpreter that works on an existing tree through the given session.
+     *
+     * @param session
+     * The session whose cursor the commands move.
+     */
+    public CommandInterpreter(OrganismSession session){
+        this(session, new CommandMetrics());
+    }
+
+    /**
+     * Constructs a CommandInterpreter that works on an existing tree through the given session and records its
+     * commands in the given metrics, which may be shared with other interpreters.
+     *
+     * @param session
+     * The session whose cursor the commands move.
+     * @param metrics
+     * The metrics to record commands in.
+     */
+    public CommandInterpreter(OrganismSession session, CommandMetrics metrics){
+        this.tree = session.getTree();
+        this.session = session;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the tree the commands run against.
+     *
+     * @return
+     * The tree, or null if no APEX command has run yet.
+     */
+    public OrganismTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Returns the metrics the commands are recorded in.
+     *
+     * @return
+     * The metrics.
+     */
+    public CommandMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Executes one command line and writes its result to out.
+     *
+     * @param line
+     * The command line.
+     * @param out
+     * The sink for the command's output.
+     * @return
+     * False if the command was Q, true otherwise.
+     * @throws IllegalArgumentException
+     * If the command is unknown, malformed, or rejected by the tree.
+     * @throws IsPlantException
+     * If the command needs an animal at the cursor and the cursor is a plant.
+     * @throws DietMismatchException
+     * If the new prey does not match the cursor's diet.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three prey.
+     * @throws IOException
+     * If out fails to accept the output.
+     * @custom.precondition
+     * line and out are not null.
+     * @custom.postcondition
+     * The command has been applied to the tree and its output appended to out.
+     */
+    public boolean execute(String line, Appendable out) throws IllegalArgumentException, IsPlantException, DietMismatchException, PositionNotAvailableException, IOException {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+            return true;
+        }
+
+        int space = trimmed.indexOf(' ');
+        String command = (space < 0 ? trimmed : trimmed.substring(0, space)).toUpperCase();
+        String argument = space < 0 ? "" : trimmed.substring(space + 1).trim();
+
+        if (command.equals("Q")) {
+            return false;
+        }
+        if (command.equals("STATS")) {
+            metrics.dump(out);
+            if (tree != null && tree.getQueryCache() != null) {
+                tree.getQueryCache().dump(out);
+            }
+            return true;
+        }
+        if (command.equals("APEX")) {
+            createApex(argument);
+            out.append("Constructing food pyramid. . .").append(LINE_SEPARATOR);
+            return true;
+        }
+        if (tree == null) {
+            throw new IllegalArgumentException("ERROR: The food pyramid has no apex predator yet. Use APEX first.");
+        }
+
+        long start = System.nanoTime();
+        try {
+            run(command, argument, out);
+        } catch (Exception e) {
+            metrics.recordError(command, System.nanoTime() - start, e);
+            throw e;
+        }
+        metrics.record(command, System.nanoTime() - start);
+        return true;
+    }
+
+    private void run(String command, String argument, Appendable out) throws IllegalArgumentException, IsPlantException, DietMismatchException, PositionNotAvailableException, IOException {
+        switch (command) {
+            case "PC":
+                session.tryAddPlantChild(requireName(argument)).throwIfRejected(false);
+                out.append(argument).append(" has successfully been added as prey for the ").append(session.getCursor().getName()).append(LINE_SEPARATOR);
+                break;
+            case "AC": {
+                int split = argument.lastIndexOf(' ');
+                if (split < 0) throw new IllegalArgumentException("ERROR: Usage: AC name H|C|O");
+                String name = argument.substring(0, split).trim();
+                boolean[] diet = parseDiet(argument.substring(split + 1));
+                session.tryAddAnimalChild(requireName(name), diet[1], diet[0]).throwIfRejected(false);
+                out.append("A(n) ").append(name).append(" has successfully been added as prey for the ").append(session.getCursor().getName()).append(LINE_SEPARATOR);
+                break;
+            }
+            case "RC": {
+                OrganismResult removed = session.tryRemoveChild(requireName(argument));
+                if (removed == OrganismResult.NOT_FOUND) {
+                    throw new IllegalArgumentException("Name does not reference a direct, valid child of cursor");
+                }
+                removed.throwIfRejected(false);
+                out.append("A(n) ").append(argument).append(" has been successfully removed as prey for the ").append(session.getCursor().getName()).append('!').append(LINE_SEPARATOR);
+                break;
+            }
+            case "P":
+                out.append(session.listPrey()).append(LINE_SEPARATOR);
+                break;
+            case "C":
+                out.append(session.listFoodChain()).append(LINE_SEPARATOR);
+                break;
+            case "F":
+                session.printOrganismTree(out);
+                break;
+            case "LP":
+                if (session.listAllPlants(out) == 0) {
+                    out.append("No plants found supporting the cursor.");
+                }
+                out.append(LINE_SEPARATOR);
+                break;
+            case "R":
+                session.cursorReset();
+                out.append("Cursor successfully reset to root!").append(LINE_SEPARATOR);
+                break;
+            case "M":
+                session.tryMoveCursor(requireName(argument)).throwIfRejected(false);
+                out.append("Cursor successfully moved to ").append(argument).append('!').append(LINE_SEPARATOR);
+                break;
+            case "J":
+                session.jumpCursor(requireName(argument));
+                out.append("Cursor successfully moved to ").append(argument).append('!').append(LINE_SEPARATOR);
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid choice: " + command);
+        }
+    }
+
+    private void createApex(String argument) throws IsPlantException {
+        if (tree != null) throw new IllegalArgumentException("ERROR: The food pyramid already has an apex predator.");
+        int split = argument.lastIndexOf(' ');
+        if (split < 0) throw new IllegalArgumentException("ERROR: Usage: APEX name C|O");
+        String name = requireName(argument.substring(0, split).trim());
+        boolean[] diet = parseDiet(argument.substring(split + 1));
+        if (!diet[0]) throw new IllegalArgumentException("Apex Predator cannot be herbivore.");
+        tree = new OrganismTree(new OrganismNode(name, false, diet[1], diet[0], null, null, null));
+        session = tree.openSession();
+    }
+
+    /**
+     * Parses an H / C / O diet code.
+     *
+     * @param code
+     * The diet code.
+     * @return
+     * A boolean array where the first element indicates a carnivore and the second a herbivore.
+     */
+    private static boolean[] parseDiet(String code) {
+        if (code.equalsIgnoreCase("H")) return new boolean[]{false, true};
+        if (code.equalsIgnoreCase("C")) return new boolean[]{true, false};
+        if (code.equalsIgnoreCase("O")) return new boolean[]{true, true};
+        throw new IllegalArgumentException("Invalid diet: " + code + ". Expected H, C or O.");
+    }
+
+    private static String requireName(String name) {
+        if (name.isEmpty()) throw new IllegalArgumentException("ERROR: A name is required.");
+        return name;
+    }
+}
@@ -0,0 +1,228 @@
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Records call counts, error counts per exception type and latency histograms for the food pyramid commands.
+ *
+ * Recording a successful command only increments preallocated counters and histogram buckets, so it allocates
+ * nothing and may be called from any number of threads. The histogram buckets are logarithmic with eight linear
+ * sub-buckets per power of two, the same layout HdrHistogram uses, which bounds the error of a reported
+ * percentile to 12.5%.
+ */
+public final class CommandMetrics {
+    /**
+     * The commands that are measured. Other command names are ignored by record and recordError.
+     */
+    public static final String[] COMMANDS = { "PC", "AC", "RC", "P", "C", "F", "LP", "R", "M", "J" };
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Map<String, Command> commands = new LinkedHashMap<>();
+
+    /**
+     * Constructs a CommandMetrics with every counter at zero.
+     */
+    public CommandMetrics(){
+        for (String name : COMMANDS) {
+            commands.put(name, new Command());
+        }
+    }
+
+    /**
+     * Records a command that completed normally.
+     *
+     * @param command
+     * The command name, in upper case.
+     * @param nanos
+     * How long the command took, in nanoseconds.
+     * @custom.precondition
+     * command is not null.
+     * @custom.postcondition
+     * If command is measured, its call count and latency histogram include this call.
+     */
+    public void record(String command, long nanos) {
+        Command stats = commands.get(command);
+        if (stats != null) {
+            stats.latency.record(nanos);
+        }
+    }
+
+    /**
+     * Records a command that failed with the given exception.
+     *
+     * @param command
+     * The command name, in upper case.
+     * @param nanos
+     * How long the command ran before failing, in nanoseconds.
+     * @param error
+     * The exception the command failed with.
+     * @custom.precondition
+     * command and error are not null.
+     * @custom.postcondition
+     * If command is measured, its call count, latency histogram and error count for the exception's type include this call.
+     */
+    public void recordError(String command, long nanos, Throwable error) {
+        Command stats = commands.get(command);
+        if (stats != null) {
+            stats.latency.record(nanos);
+            stats.errors.computeIfAbsent(error.getClass().getSimpleName(), type -> new AtomicLong()).incrementAndGet();
+        }
+    }
+
+    /**
+     * Returns the number of recorded calls of a command, including failed ones.
+     *
+     * @param command
+     * The command name, in upper case.
+     * @return
+     * The number of calls, or 0 if the command is not measured.
+     */
+    public long getCount(String command) {
+        Command stats = commands.get(command);
+        return stats == null ? 0 : stats.latency.count();
+    }
+
+    /**
+     * Writes a table of every command that has been called, with its call count, error count and latency
+     * percentiles in microseconds, followed by its errors per exception type.
+     *
+     * @param out
+     * The sink for the table.
+     * @throws IOException
+     * If out fails to accept the output.
+     * @custom.precondition
+     * out is not null.
+     * @custom.postcondition
+     * The current metrics have been appended to out.
+     */
+    public void dump(Appendable out) throws IOException {
+        out.append(String.format("%-8s %10s %8s %10s %10s %10s %10s %10s", "command", "count", "errors", "mean(us)", "p50(us)", "p90(us)", "p99(us)", "max(us)")).append(LINE_SEPARATOR);
+        boolean any = false;
+        for (Map.Entry<String, Command> entry : commands.entrySet()) {
+            Histogram.Snapshot latency = entry.getValue().latency.snapshot();
+            if (latency.count == 0) {
+                continue;
+            }
+            any = true;
+            Map<String, Long> errors = new TreeMap<>();
+            long errorCount = 0;
+            for (Map.Entry<String, AtomicLong> error : entry.getValue().errors.entrySet()) {
+                errors.put(error.getKey(), error.getValue().get());
+                errorCount += error.getValue().get();
+            }
+            out.append(String.format("%-8s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f", entry.getKey(), latency.count, errorCount,
+                    latency.mean() / 1000.0, latency.percentile(50) / 1000.0, latency.percentile(90) / 1000.0,
+                    latency.percentile(99) / 1000.0, latency.max / 1000.0)).append(LINE_SEPARATOR);
+            for (Map.Entry<String, Long> error : errors.entrySet()) {
+                out.append("         ").append(error.getKey()).append(": ").append(Long.toString(error.getValue())).append(LINE_SEPARATOR);
+            }
+        }
+        if (!any) {
+            out.append("No commands have been run yet.").append(LINE_SEPARATOR);
+        }
+    }
+
+    /**
+     * The counters of one command.
+     */
+    private static final class Command {
+        final Histogram latency = new Histogram();
+        final ConcurrentHashMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * A concurrent log-linear histogram of nanosecond latencies.
+     */
+    static final class Histogram {
+        private static final int SUB_BITS = 3;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+        private static final int BUCKETS = (64 - SUB_BITS + 1) << SUB_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            buckets.incrementAndGet(bucket(value));
+            total.addAndGet(value);
+            long seen = max.get();
+            while (value > seen && !max.compareAndSet(seen, value)) {
+                seen = max.get();
+            }
+        }
+
+        long count() {
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                count += buckets.get(i);
+            }
+            return count;
+        }
+
+        Snapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+                count += counts[i];
+            }
+            return new Snapshot(counts, count, total.get(), max.get());
+        }
+
+        /**
+         * Values below SUB_COUNT get a bucket each; above that, each power of two is split into SUB_COUNT equal buckets.
+         */
+        static int bucket(long value) {
+            int exponent = 63 - Long.numberOfLeadingZeros(value | 1);
+            if (exponent < SUB_BITS) {
+                return (int) value;
+            }
+            return ((exponent - SUB_BITS + 1) << SUB_BITS) | (int) ((value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1));
+        }
+
+        static long lowerBound(int bucket) {
+            int magnitude = bucket >>> SUB_BITS, sub = bucket & (SUB_COUNT - 1);
+            return magnitude == 0 ? sub : (long) (SUB_COUNT | sub) << (magnitude - 1);
+        }
+
+        /**
+         * A copy of a histogram's counters, taken while recording may continue.
+         */
+        static final class Snapshot {
+            final long[] counts;
+            final long count, total, max;
+
+            Snapshot(long[] counts, long count, long total, long max) {
+                this.counts = counts;
+                this.count = count;
+                this.total = total;
+                this.max = max;
+            }
+
+            double mean() {
+                return count == 0 ? 0 : (double) total / count;
+            }
+
+            /**
+             * Returns the upper end of the bucket holding the given percentile, capped at the largest recorded value.
+             */
+            long percentile(double percent) {
+                long rank = Math.max(1, (long) Math.ceil(count * percent / 100.0));
+                long seen = 0;
+                for (int i = 0; i < counts.length; i++) {
+                    seen += counts[i];
+                    if (seen >= rank) {
+                        return i + 1 < counts.length ? Math.min(max, lowerBound(i + 1) - 1) : max;
+                    }
+                }
+                return max;
+            }
+        }
+    }
+}
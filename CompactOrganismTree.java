@@ -0,0 +1,511 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * An arena-backed food pyramid that stores its organisms in parallel primitive arrays instead of OrganismNode objects.
+ *
+ * Every organism is an int slot. Child and parent links are slot indices in int arrays, the plant / herbivore /
+ * carnivore flags are packed into one byte per slot, and names are stored once in a dictionary and referenced by
+ * id. The operations and error behavior mirror OrganismTree.
+ *
+ * The arrays cost 21 bytes per organism against an OrganismNode object and its name index entry; how that compares
+ * in total, names included, is measured over generated pyramids by foodpyramid.bench.Footprint in the benchmarks
+ * module.
+ */
+public class CompactOrganismTree {
+    /** Slot value meaning "no organism". */
+    public static final int NIL = -1;
+
+    private static final byte PLANT = 1, HERBIVORE = 2, CARNIVORE = 4;
+    /** Set on every slot that holds an organism, since an animal with no diet has none of the other flags. */
+    private static final byte LIVE = 8;
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private int[] left, middle, right, parent, nameIds;
+    private byte[] flags;
+    private int highWater;
+    private int freeHead = NIL;
+    private int count;
+
+    private NameDictionary names = new NameDictionary();
+
+    private final int root;
+    private int cursor;
+
+    /**
+     * Constructs a CompactOrganismTree with the given apex predator.
+     *
+     * @param apexName
+     * The name of the apex predator.
+     * @param isHerbivore
+     * True if the apex predator is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the apex predator is a carnivore, false otherwise.
+     * @custom.precondition
+     * apexName is not null.
+     * @custom.postcondition
+     * This CompactOrganismTree has been initialized with the apex predator as its root and cursor.
+     */
+    public CompactOrganismTree(String apexName, boolean isHerbivore, boolean isCarnivore) {
+        this(apexName, isHerbivore, isCarnivore, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs a CompactOrganismTree with the given apex predator and room for initialCapacity organisms.
+     *
+     * @param apexName
+     * The name of the apex predator.
+     * @param isHerbivore
+     * True if the apex predator is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the apex predator is a carnivore, false otherwise.
+     * @param initialCapacity
+     * The number of organisms to reserve space for.
+     * @custom.precondition
+     * apexName is not null and initialCapacity is positive.
+     * @custom.postcondition
+     * This CompactOrganismTree has been initialized with the apex predator as its root and cursor.
+     */
+    public CompactOrganismTree(String apexName, boolean isHerbivore, boolean isCarnivore, int initialCapacity) {
+        if (initialCapacity < 1) throw new IllegalArgumentException("Capacity must be positive.");
+        left = new int[initialCapacity];
+        middle = new int[initialCapacity];
+        right = new int[initialCapacity];
+        parent = new int[initialCapacity];
+        nameIds = new int[initialCapacity];
+        flags = new byte[initialCapacity];
+
+        root = allocate(apexName, dietFlags(false, isHerbivore, isCarnivore), NIL);
+        cursor = root;
+    }
+
+    /**
+     * Returns the number of organisms in the tree.
+     *
+     * @return
+     * The number of organisms in the tree.
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the name of the organism at the cursor.
+     *
+     * @return
+     * The name of the organism at the cursor.
+     */
+    public String getCursorName() {
+        return names.name(nameIds[cursor]);
+    }
+
+    /**
+     * Checks if the organism at the cursor is a plant.
+     *
+     * @return
+     * True if the cursor is a plant, false otherwise.
+     */
+    public boolean cursorIsPlant() {
+        return (flags[cursor] & PLANT) != 0;
+    }
+
+    /**
+     * Checks if the organism at the cursor is a herbivore.
+     *
+     * @return
+     * True if the cursor is a herbivore, false otherwise.
+     */
+    public boolean cursorIsHerbivore() {
+        return (flags[cursor] & HERBIVORE) != 0;
+    }
+
+    /**
+     * Checks if the organism at the cursor is a carnivore.
+     *
+     * @return
+     * True if the cursor is a carnivore, false otherwise.
+     */
+    public boolean cursorIsCarnivore() {
+        return (flags[cursor] & CARNIVORE) != 0;
+    }
+
+    /**
+     * Resets the cursor to the root of the tree.
+     *
+     * @custom.postcondition
+     * The cursor has been reset to the root of the tree.
+     */
+    public void cursorReset() {
+        cursor = root;
+    }
+
+    /**
+     * Moves the cursor to the child with the given name.
+     *
+     * @param name
+     * The name of the child to move the cursor to.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the cursor's children.
+     * @custom.postcondition
+     * The cursor will be moved to the child with the given name.
+     */
+    public void moveCursor(String name) throws IllegalArgumentException {
+        int child = findChild(cursor, names.lookup(name));
+        if (child == NIL) {
+            throw new IllegalArgumentException("ERROR: This prey does not exist for this predator.");
+        }
+        cursor = child;
+    }
+
+    /**
+     * Returns a string representation of the prey of the cursor.
+     *
+     * @return
+     * A string representation of the prey of the cursor.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     */
+    public String listPrey() throws IsPlantException {
+        if (cursorIsPlant()) throw new IsPlantException("Cursor is a plant.");
+        if (left[cursor] == NIL) {
+            return "";
+        }
+        StringBuilder temp = new StringBuilder();
+        temp.append(nameOf(cursor)).append(" -> ").append(nameOf(left[cursor]));
+        if (middle[cursor] != NIL) {
+            temp.append(", ").append(nameOf(middle[cursor]));
+        }
+        if (right[cursor] != NIL) {
+            temp.append(", ").append(nameOf(right[cursor]));
+        }
+        return temp.toString();
+    }
+
+    /**
+     * Returns a string representation of the food chain from the apex predator to the cursor.
+     *
+     * @return
+     * A string representation of the food chain from the apex predator to the cursor.
+     */
+    public String listFoodChain() {
+        int depth = 0, length = 0;
+        for (int node = cursor; node != NIL; node = parent[node]) {
+            depth++;
+            length += nameOf(node).length() + 3;
+        }
+
+        int[] chain = new int[depth];
+        int node = cursor;
+        for (int i = depth - 1; i >= 0; i--) {
+            chain[i] = node;
+            node = parent[node];
+        }
+
+        StringBuilder path = new StringBuilder(length);
+        path.append(' ').append(nameOf(chain[0]));
+        for (int i = 1; i < depth; i++) {
+            path.append("-> ").append(nameOf(chain[i]));
+        }
+        return path.toString();
+    }
+
+    /**
+     * Returns a string representation of all the plants in the tree that support the cursor.
+     *
+     * @return
+     * A string representation of all the plants in the tree that support the cursor.
+     */
+    public String listAllPlants() {
+        StringBuilder plantList = new StringBuilder();
+        int plants;
+        try {
+            plants = listAllPlants(plantList);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return plants == 0 ? "No plants found supporting the cursor." : plantList.toString();
+    }
+
+    /**
+     * Writes the names of all the plants that support the cursor to the given sink, separated by commas.
+     *
+     * @param out
+     * The sink to write the plant names to.
+     * @return
+     * The number of plants written.
+     * @throws IOException
+     * If the sink fails to accept the output.
+     */
+    public int listAllPlants(Appendable out) throws IOException {
+        int plants = 0;
+        int[] stack = new int[DEFAULT_CAPACITY];
+        int size = 0;
+        stack[size++] = cursor;
+        while (size > 0) {
+            int node = stack[--size];
+            if ((flags[node] & PLANT) != 0) {
+                if (plants++ > 0) {
+                    out.append(',');
+                }
+                out.append(nameOf(node));
+            }
+            if (size + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (right[node] != NIL) stack[size++] = right[node];
+            if (middle[node] != NIL) stack[size++] = middle[node];
+            if (left[node] != NIL) stack[size++] = left[node];
+        }
+        return plants;
+    }
+
+    /**
+     * Prints the tree with the cursor as the root.
+     */
+    public void printOrganismTree() {
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+        try {
+            printOrganismTree(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the tree with the cursor as the root to the given sink, in the same format as OrganismTree.
+     *
+     * @param out
+     * The sink to write the tree to. It is not flushed or closed.
+     * @throws IOException
+     * If the sink fails to accept the output.
+     */
+    public void printOrganismTree(Appendable out) throws IOException {
+        int[] stack = new int[DEFAULT_CAPACITY];
+        int[] depths = new int[DEFAULT_CAPACITY];
+        int size = 0;
+        stack[size] = cursor;
+        depths[size++] = 0;
+        while (size > 0) {
+            int node = stack[--size];
+            int depth = depths[size];
+            for (int i = 0; i < depth; i++) {
+                out.append('\t');
+            }
+            if ((flags[node] & PLANT) != 0) {
+                out.append('-').append(nameOf(node)).append(LINE_SEPARATOR);
+                continue;
+            }
+            out.append("|- ").append(nameOf(node)).append(LINE_SEPARATOR);
+
+            if (size + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            if (right[node] != NIL) { stack[size] = right[node]; depths[size++] = depth + 1; }
+            if (middle[node] != NIL) { stack[size] = middle[node]; depths[size++] = depth + 1; }
+            if (left[node] != NIL) { stack[size] = left[node]; depths[size++] = depth + 1; }
+        }
+    }
+
+    /**
+     * Checks if the cursor has three children.
+     *
+     * @return
+     * True if the cursor has three children, false otherwise.
+     */
+    public boolean isFull() {
+        return right[cursor] != NIL;
+    }
+
+    /**
+     * Adds an animal child under the cursor.
+     *
+     * @param name
+     * The name of the animal child.
+     * @param isHerbivore
+     * True if the animal child is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the animal child is a carnivore, false otherwise.
+     * @throws IllegalArgumentException
+     * If the given name is already taken by a sibling.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three children.
+     * @throws DietMismatchException
+     * If the animal child's diet is incompatible with the cursor's diet.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     */
+    public void addAnimalChild(String name, boolean isHerbivore, boolean isCarnivore) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException {
+        addPrey(name, dietFlags(false, isHerbivore, isCarnivore));
+    }
+
+    /**
+     * Adds a plant child under the cursor.
+     *
+     * @param name
+     * The name of the plant child.
+     * @throws IllegalArgumentException
+     * If the given name is already taken by a sibling.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three children.
+     * @throws DietMismatchException
+     * If the cursor does not eat plants.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     */
+    public void addPlantChild(String name) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException {
+        addPrey(name, PLANT);
+    }
+
+    /**
+     * Removes the child with the given name, and all of its prey, from the tree.
+     *
+     * @param name
+     * The name of the child to remove.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the cursor's children.
+     * @custom.postcondition
+     * The child's slots are returned to the free list and remaining siblings shift left.
+     */
+    public void removeChild(String name) throws IllegalArgumentException {
+        int folded = names.lookupFolded(name);
+        int removed = NIL;
+        for (int i = 0; i < 3 && removed == NIL && folded != NameDictionary.NONE; i++) {
+            int child = childAt(cursor, i);
+            if (child != NIL && names.foldedId(nameIds[child]) == folded) {
+                removed = child;
+            }
+        }
+        if (removed == NIL) {
+            throw new IllegalArgumentException("Name does not reference a direct, valid child of cursor");
+        }
+
+        if (left[cursor] == removed) {
+            left[cursor] = middle[cursor];
+            middle[cursor] = right[cursor];
+        } else if (middle[cursor] == removed) {
+            middle[cursor] = right[cursor];
+        }
+        right[cursor] = NIL;
+        freeSubtree(removed);
+        if (names.size() > 2 * count + DEFAULT_CAPACITY) {
+            rebuildNames();
+        }
+    }
+
+    private void addPrey(String name, byte preyFlags) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException {
+        if (findChild(cursor, names.lookup(name)) != NIL) {
+            throw new IllegalArgumentException("ERROR: This prey already exists for this predator.");
+        }
+        byte predator = flags[cursor];
+        if ((predator & PLANT) != 0) throw new IsPlantException("Plant nodes cannot have children.");
+        if (((preyFlags & PLANT) != 0 && (predator & HERBIVORE) == 0) || ((preyFlags & PLANT) == 0 && (predator & CARNIVORE) == 0)) {
+            throw new DietMismatchException("ERROR: This prey cannot be added as it does not match the diet of the predator.");
+        }
+        if (right[cursor] != NIL) {
+            throw new PositionNotAvailableException("ERROR: There is no more room for more prey for this predator.");
+        }
+
+        int node = allocate(name, preyFlags, cursor);
+        if (left[cursor] == NIL) {
+            left[cursor] = node;
+        } else if (middle[cursor] == NIL) {
+            middle[cursor] = node;
+        } else {
+            right[cursor] = node;
+        }
+    }
+
+    private int allocate(String name, byte nodeFlags, int parentSlot) {
+        int node;
+        if (freeHead != NIL) {
+            node = freeHead;
+            freeHead = left[node];
+        } else {
+            if (highWater == left.length) {
+                grow();
+            }
+            node = highWater++;
+        }
+        left[node] = middle[node] = right[node] = NIL;
+        parent[node] = parentSlot;
+        flags[node] = (byte) (nodeFlags | LIVE);
+        nameIds[node] = names.intern(name);
+        count++;
+        return node;
+    }
+
+    private void freeSubtree(int start) {
+        int[] stack = new int[DEFAULT_CAPACITY];
+        int size = 0;
+        stack[size++] = start;
+        while (size > 0) {
+            int node = stack[--size];
+            if (size + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (left[node] != NIL) stack[size++] = left[node];
+            if (middle[node] != NIL) stack[size++] = middle[node];
+            if (right[node] != NIL) stack[size++] = right[node];
+
+            middle[node] = right[node] = parent[node] = NIL;
+            flags[node] = 0;
+            left[node] = freeHead;
+            freeHead = node;
+            count--;
+        }
+    }
+
+    /**
+     * Replaces the name dictionary with one holding only the names still in use, so that adding and removing
+     * organisms under ever new names does not grow it without bound. It runs once more names are unused than used,
+     * so its cost is spread over the removals that dropped them.
+     */
+    private void rebuildNames() {
+        NameDictionary live = new NameDictionary();
+        for (int node = 0; node < highWater; node++) {
+            if ((flags[node] & LIVE) != 0) {
+                nameIds[node] = live.intern(names.name(nameIds[node]));
+            }
+        }
+        names = live;
+    }
+
+    private void grow() {
+        int capacity = left.length + (left.length >> 1) + 1;
+        left = Arrays.copyOf(left, capacity);
+        middle = Arrays.copyOf(middle, capacity);
+        right = Arrays.copyOf(right, capacity);
+        parent = Arrays.copyOf(parent, capacity);
+        nameIds = Arrays.copyOf(nameIds, capacity);
+        flags = Arrays.copyOf(flags, capacity);
+    }
+
+    private int childAt(int node, int position) {
+        return position == 0 ? left[node] : position == 1 ? middle[node] : right[node];
+    }
+
+    private int findChild(int node, int nameId) {
+        if (nameId == NIL) {
+            return NIL;
+        }
+        if (left[node] != NIL && nameIds[left[node]] == nameId) return left[node];
+        if (middle[node] != NIL && nameIds[middle[node]] == nameId) return middle[node];
+        if (right[node] != NIL && nameIds[right[node]] == nameId) return right[node];
+        return NIL;
+    }
+
+    private String nameOf(int node) {
+        return names.name(nameIds[node]);
+    }
+
+    private static byte dietFlags(boolean isPlant, boolean isHerbivore, boolean isCarnivore) {
+        return (byte) ((isPlant ? PLANT : 0) | (isHerbivore ? HERBIVORE : 0) | (isCarnivore ? CARNIVORE : 0));
+    }
+}
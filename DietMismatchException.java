@@ -3,4 +3,8 @@ public class DietMismatchException extends Exception {
     public DietMismatchException(String message) {
         super(message);
     }
+
+    public DietMismatchException(String message, boolean writableStackTrace) {
+        super(message, null, writableStackTrace, writableStackTrace);
+    }
 }
@@ -1,10 +1,34 @@
 /**
  * Simulates a food pyramid ecosystem.
  */
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import java.util.Scanner;
 
 public class FoodPyramid {
+    /**
+     * The system property naming a file the command metrics are written to when the program exits.
+     */
+    public static final String STATS_FILE_PROPERTY = "foodpyramid.stats.file";
+
+    /**
+     * The system property naming a base path for crash recovery. The interactive prompt keeps a snapshot in
+     * base.snapshot and journals every edit to base.journal, and resumes from them on the next start.
+     */
+    public static final String JOURNAL_PROPERTY = "foodpyramid.journal";
+
     private static OrganismTree tree;
+    private static final CommandMetrics metrics = new CommandMetrics();
 
     /**
      * Prompts the user to specify the dietary type of the apex predator.
@@ -78,23 +102,136 @@ public class FoodPyramid {
         return new boolean[]{isCar,isHer};
     }
 
+    /**
+     * Runs a script of one-line commands without prompting.
+     * 
+     * @param in
+     * The script to read commands from.
+     * @param out
+     * The sink for command output and per-line errors.
+     * @throws IOException
+     * If reading the script or writing the output fails.
+     * @custom.precondition
+     * in and out are not null.
+     * @custom.postcondition
+     * Every command up to the end of the script or the first Q has been run. Failed commands are reported with their line number and do not stop the run.
+     */
+    public static void runBatch(BufferedReader in, Writer out) throws IOException {
+        runBatch(in, out, new CommandMetrics());
+    }
+
+    /**
+     * Runs a script of one-line commands without prompting, recording each command in the given metrics.
+     * 
+     * @param in
+     * The script to read commands from.
+     * @param out
+     * The sink for command output and per-line errors.
+     * @param metrics
+     * The metrics to record commands in.
+     * @throws IOException
+     * If reading the script or writing the output fails.
+     * @custom.precondition
+     * in, out and metrics are not null.
+     * @custom.postcondition
+     * Every command up to the end of the script or the first Q has been run and recorded in metrics.
+     */
+    public static void runBatch(BufferedReader in, Writer out, CommandMetrics metrics) throws IOException {
+        CommandInterpreter interpreter = new CommandInterpreter(metrics);
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            try {
+                if (!interpreter.execute(line, out)) {
+                    break;
+                }
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                out.write("line " + lineNumber + ": " + e + System.lineSeparator());
+            }
+        }
+        out.flush();
+    }
+
     /**
      * Main method.
+     * 
+     * Run with no arguments for the interactive prompt, or with --batch [file] to run a script of one-line
+     * commands from the file, or from standard input when no file or - is given. When the foodpyramid.stats.file
+     * system property is set, the command metrics are written to that file at exit. When the foodpyramid.journal
+     * system property is set, the interactive prompt journals its edits and resumes from them after a restart.
+     * Run with --serve address [apex name C|O] to serve the command language to many clients over TCP or a
+     * Unix-domain socket; see PyramidServer.
      */
     public FoodPyramid(){}
     public static void main(String[] args) {
+        String statsFile = System.getProperty(STATS_FILE_PROPERTY);
+        if (statsFile != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> dumpMetrics(statsFile)));
+        }
+
+        if (args.length > 0 && (args[0].equals("--batch") || args[0].equals("-b"))) {
+            Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            try (BufferedReader in = args.length > 1 && !args[1].equals("-")
+                    ? Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8)
+                    : new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 1 << 16)) {
+                runBatch(in, out, metrics);
+            } catch (IOException e) {
+                System.err.println(e);
+                System.exit(1);
+            }
+            return;
+        }
+
+        if (args.length > 0 && args[0].equals("--serve")) {
+            try {
+                serve(args);
+            } catch (Exception e) {
+                System.err.println(e);
+                System.exit(1);
+            }
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
-        System.out.print("What is the name of the apex predator?: ");
-        String predname = scanner.nextLine();
+        String journalBase = System.getProperty(JOURNAL_PROPERTY);
+        Path snapshotFile = journalBase == null ? null : Paths.get(journalBase + ".snapshot");
+        Path journalFile = journalBase == null ? null : Paths.get(journalBase + ".journal");
+        String predname = null;
 
-        boolean diet[] = dietFinderApex(scanner);
-        
-        OrganismNode apex = new OrganismNode(predname,false,diet[1],diet[0],null,null,null);
-        
-        try{
-            tree = new OrganismTree(apex);
-        } catch(Exception e){
-            System.out.println(e);
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            try {
+                tree = MutationJournal.recover(snapshotFile, journalFile);
+                System.out.println("Recovered the food pyramid of " + tree.getRoot().getName() + " from " + journalBase + ".");
+            } catch (IOException e) {
+                System.err.println(e);
+                System.exit(1);
+            }
+        } else {
+            System.out.print("What is the name of the apex predator?: ");
+            predname = scanner.nextLine();
+
+            boolean diet[] = dietFinderApex(scanner);
+            
+            OrganismNode apex = new OrganismNode(predname,false,diet[1],diet[0],null,null,null);
+            
+            try{
+                tree = new OrganismTree(apex);
+            } catch(Exception e){
+                System.out.println(e);
+            }
+        }
+
+        MutationJournal journal = null;
+        if (journalFile != null) {
+            try {
+                journal = MutationJournal.open(tree, snapshotFile, journalFile);
+            } catch (IOException e) {
+                System.err.println(e);
+                System.exit(1);
+            }
         }
         
 
@@ -113,13 +250,17 @@ public class FoodPyramid {
         System.out.println("(LP) - List All Plants Supporting Cursor");
         System.out.println("(R)  - Reset Cursor to Root");
         System.out.println("(M)  - Move Cursor to Child");
+        System.out.println("(J)  - Jump Cursor to Organism");
+        System.out.println("(STATS) - Show Command Statistics");
         System.out.println("(Q)  - Quit");
         System.out.println();
         
         while (!choice.equalsIgnoreCase("Q")) {
+            long start = 0;
             try{
                 System.out.print("Enter your choice: ");
                 choice = scanner.nextLine().toUpperCase();
+                start = System.nanoTime();
 
                 switch (choice) {
                     case "PC":
@@ -129,6 +270,7 @@ public class FoodPyramid {
 
                         System.out.print("What is the name of the organism?: ");
                         predname = scanner.nextLine();
+                        start = System.nanoTime();
                         tree.addPlantChild(predname);
                         System.out.println();
                         System.out.println(predname + " has successfully been added as prey for the " + tree.getCursor().getName());                        
@@ -140,12 +282,15 @@ public class FoodPyramid {
 
                         System.out.print("What is the name of the organism?: ");
                         String name = scanner.nextLine();
+                        start = System.nanoTime();
 
                         if ((tree.getCursor().getLeft() != null && tree.getCursor().getLeft().getName().equals(name)) || (tree.getCursor().getMiddle() != null && tree.getCursor().getMiddle().getName().equals(name)) || (tree.getCursor().getRight() != null && tree.getCursor().getRight().getName().equals(name))){
                             throw new IllegalArgumentException("ERROR: This prey already exists for this predator.");
                         }
 
                         boolean new_diet[] = dietFinder(scanner);
+
+                        start = System.nanoTime();
                         tree.addAnimalChild(name, new_diet[1], new_diet[0]);
                         System.out.println();
                         System.out.println("A(n) " + name + " has successfully been added as prey for the " + tree.getCursor().getName());
@@ -153,6 +298,7 @@ public class FoodPyramid {
                     case "RC":
                         System.out.print("What is the name of the organism to be removed?: ");
                         predname = scanner.nextLine();
+                        start = System.nanoTime();
 
                         tree.removeChild(predname);
                         System.out.println();
@@ -181,12 +327,27 @@ public class FoodPyramid {
                     case "M":
                         System.out.print("Move to?: ");
                         predname = scanner.nextLine();
+                        start = System.nanoTime();
 
                         tree.moveCursor(predname);
                         System.out.println();
                         System.out.println("Cursor successfully moved to " + predname +"!");
                         break;
 
+                    case "J":
+                        System.out.print("Jump to?: ");
+                        predname = scanner.nextLine();
+                        start = System.nanoTime();
+
+                        tree.jumpCursor(predname);
+                        System.out.println();
+                        System.out.println("Cursor successfully moved to " + predname +"!");
+                        break;
+
+                    case "STATS":
+                        metrics.dump(System.out);
+                        break;
+
                     case "Q":
                         System.out.println("Quitting program...");
                         break;
@@ -194,11 +355,79 @@ public class FoodPyramid {
                     default:
                         System.out.println("Invalid choice. Please try again.");
                 }
+                metrics.record(choice, System.nanoTime() - start);
                 System.out.println();
             } catch(Exception e){
+                if (start != 0) {
+                    metrics.recordError(choice, System.nanoTime() - start, e);
+                }
                 System.out.println(e);
             }
         }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }
         scanner.close();
     }
+
+    /**
+     * Starts a PyramidServer from the arguments --serve address [apex name C|O]. The tree is recovered from the
+     * journal when the foodpyramid.journal property names one that exists, and otherwise created from the apex
+     * arguments. The server runs until the process is stopped.
+     * 
+     * @param args
+     * The command-line arguments.
+     * @throws Exception
+     * If the arguments are invalid or the tree or server cannot be set up.
+     */
+    private static void serve(String[] args) throws Exception {
+        if (args.length < 2) throw new IllegalArgumentException("Usage: --serve port|host:port|unix:path [apex name C|O]");
+        String journalBase = System.getProperty(JOURNAL_PROPERTY);
+        Path snapshotFile = journalBase == null ? null : Paths.get(journalBase + ".snapshot");
+        Path journalFile = journalBase == null ? null : Paths.get(journalBase + ".journal");
+
+        OrganismTree served;
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            served = MutationJournal.recover(snapshotFile, journalFile);
+        } else {
+            CommandInterpreter apex = new CommandInterpreter(metrics);
+            apex.execute("APEX " + String.join(" ", Arrays.copyOfRange(args, 2, args.length)), new StringBuilder());
+            served = apex.getTree();
+        }
+        MutationJournal journal = journalFile == null ? null : MutationJournal.open(served, snapshotFile, journalFile);
+
+        // Dashboards poll the same queries at the same cursors, so repeated reads are answered from memory.
+        served.setQueryCache(new QueryCache(4096, 32L << 20));
+        PyramidServer server = new PyramidServer(served, metrics);
+        SocketAddress bound = server.start(PyramidServer.parseAddress(args[1]));
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+                if (journal != null) {
+                    journal.close();
+                }
+            } catch (IOException e) {
+                System.err.println(e);
+            }
+        }));
+        System.out.println("Serving the food pyramid of " + served.getRoot().getName() + " on " + bound);
+    }
+
+    /**
+     * Writes the command metrics to the given file, replacing its contents.
+     * 
+     * @param file
+     * The file to write.
+     */
+    private static void dumpMetrics(String file) {
+        try (Writer out = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            metrics.dump(out);
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,562 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A food web: a food pyramid in which one prey can be eaten by several predators and a predator can have any
+ * number of prey.
+ *
+ * Nodes are created bottom-up by a {@link Builder}, which hash-conses them: asking for an organism with the same
+ * name, type and prey as an existing node returns that node, so structurally identical sub-pyramids are stored
+ * once. A web is the set of nodes reachable from its apex predator. Queries walk the web with a visited set, so a
+ * node shared by many predators is visited once per query no matter how many paths lead to it.
+ */
+public final class FoodWeb {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Node apex;
+    private final int size;
+    private final Node[][] predators;
+
+    private FoodWeb(Node apex, int idLimit) {
+        this.apex = apex;
+        List<List<Node>> lists = new ArrayList<>(idLimit);
+        for (int i = 0; i < idLimit; i++) {
+            lists.add(null);
+        }
+        BitSet seen = new BitSet(idLimit);
+        Node[] stack = { apex };
+        int top = 1, count = 0;
+        seen.set(apex.id);
+        while (top > 0) {
+            Node node = stack[--top];
+            count++;
+            for (Node prey : node.prey) {
+                List<Node> list = lists.get(prey.id);
+                if (list == null) {
+                    lists.set(prey.id, list = new ArrayList<>(1));
+                }
+                list.add(node);
+                if (!seen.get(prey.id)) {
+                    seen.set(prey.id);
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = prey;
+                }
+            }
+        }
+        this.size = count;
+        this.predators = new Node[idLimit][];
+        for (int i = 0; i < idLimit; i++) {
+            List<Node> list = lists.get(i);
+            predators[i] = list == null ? Node.NONE : list.toArray(Node.NONE);
+        }
+    }
+
+    /**
+     * Creates a builder for a new web.
+     *
+     * @return
+     * An empty builder.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Converts a tree into a web, merging every repeated sub-pyramid into one shared node.
+     *
+     * @param tree
+     * The tree to convert.
+     * @return
+     * A web with the same organisms and predator-prey links, in which structurally identical subtrees are shared.
+     * @custom.postcondition
+     * The tree was read under its read lock, so the web matches one consistent version of it.
+     */
+    public static FoodWeb fromTree(OrganismTree tree) {
+        FoodWeb[] web = new FoodWeb[1];
+        tree.readLocked(() -> web[0] = fromApex(tree.getRoot()));
+        return web[0];
+    }
+
+    private static FoodWeb fromApex(OrganismNode apex) {
+        Builder builder = builder();
+        List<OrganismNode> order = new ArrayList<>();
+        OrganismTraversal.preorder(apex, (node, depth) -> {
+            order.add(node);
+            return OrganismVisitor.Result.CONTINUE;
+        });
+        Map<OrganismNode, Node> converted = new IdentityHashMap<>(order.size() * 2);
+        for (int i = order.size() - 1; i >= 0; i--) {
+            OrganismNode node = order.get(i);
+            Node[] prey = new Node[3];
+            int count = 0;
+            for (OrganismNode child : new OrganismNode[]{ node.getLeft(), node.getMiddle(), node.getRight() }) {
+                if (child != null) {
+                    prey[count++] = converted.get(child);
+                }
+            }
+            converted.put(node, builder.intern(node.getName(), node.getIsPlant(), node.getIsHerbivore(), node.getIsCarnivore(), Arrays.copyOf(prey, count)));
+        }
+        return builder.build(converted.get(apex));
+    }
+
+    /**
+     * Returns the apex predator.
+     *
+     * @return
+     * The apex predator.
+     */
+    public Node getApex() {
+        return apex;
+    }
+
+    /**
+     * Returns the number of distinct nodes in the web. Shared nodes count once.
+     *
+     * @return
+     * The number of nodes reachable from the apex predator.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the predators of the given node within this web.
+     *
+     * @param node
+     * A node of this web.
+     * @return
+     * A copy of the node's predators, empty for the apex predator.
+     */
+    public Node[] getPredators(Node node) {
+        return predators[node.id].clone();
+    }
+
+    /**
+     * Finds a node by name.
+     *
+     * @param name
+     * The name of the organism.
+     * @return
+     * The first node with that name in depth-first order from the apex predator, or null if there is none.
+     */
+    public Node find(String name) {
+        int nameId = NameDictionary.shared().lookup(name);
+        if (nameId == NameDictionary.NONE) {
+            return null;
+        }
+        Node[] found = { null };
+        walk(apex, node -> {
+            if (node.name.id == nameId) {
+                found[0] = node;
+                return false;
+            }
+            return true;
+        });
+        return found[0];
+    }
+
+    /**
+     * Lists the prey of the given node.
+     *
+     * @param at
+     * The predator.
+     * @return
+     * The predator's name followed by the names of its prey, in the form the tree's listPrey uses.
+     */
+    public String listPrey(Node at) {
+        StringBuilder list = new StringBuilder(at.getName()).append(" -> ");
+        for (int i = 0; i < at.prey.length; i++) {
+            if (i > 0) {
+                list.append(", ");
+            }
+            list.append(at.prey[i].getName());
+        }
+        return list.toString();
+    }
+
+    /**
+     * Lists every distinct plant that supports the given node. A plant reachable along several paths is listed once.
+     *
+     * @param at
+     * The node whose supporting plants are listed.
+     * @return
+     * The plant names separated by commas, in depth-first order.
+     */
+    public String listAllPlants(Node at) {
+        StringBuilder plants = new StringBuilder();
+        walk(at, node -> {
+            if (node.isPlant) {
+                if (plants.length() > 0) {
+                    plants.append(',');
+                }
+                plants.append(node.getName());
+            }
+            return true;
+        });
+        return plants.toString();
+    }
+
+    /**
+     * Lists a shortest food chain from the apex predator down to the given node. The search walks predator links
+     * breadth-first from the node, visiting each predator once.
+     *
+     * @param at
+     * The last organism of the chain.
+     * @return
+     * The chain in the form the tree's listFoodChain uses, or "Cursor not found in the tree." if the node is not
+     * reachable from the apex predator.
+     */
+    public String listFoodChain(Node at) {
+        if (at.id >= predators.length) {
+            return "Cursor not found in the tree.";
+        }
+        Node[] next = new Node[predators.length];
+        Node[] queue = new Node[Math.max(1, size)];
+        BitSet seen = new BitSet(predators.length);
+        int head = 0, tail = 0;
+        queue[tail++] = at;
+        seen.set(at.id);
+        boolean reached = at == apex;
+        while (head < tail && !reached) {
+            Node node = queue[head++];
+            for (Node predator : predators[node.id]) {
+                if (!seen.get(predator.id)) {
+                    seen.set(predator.id);
+                    next[predator.id] = node;
+                    if (predator == apex) {
+                        reached = true;
+                        break;
+                    }
+                    queue[tail++] = predator;
+                }
+            }
+        }
+        if (!reached) {
+            return "Cursor not found in the tree.";
+        }
+        StringBuilder chain = new StringBuilder(" ").append(apex.getName());
+        for (Node node = apex; node != at; ) {
+            node = next[node.id];
+            chain.append("-> ").append(node.getName());
+        }
+        return chain.toString();
+    }
+
+    /**
+     * Prints the web under the given node as an indented tree. A shared node is expanded the first time it is
+     * reached; later occurrences are printed with a "(shared)" marker and not expanded again.
+     *
+     * @param at
+     * The node to print from.
+     * @param out
+     * The sink for the output.
+     * @throws IOException
+     * If out fails to accept the output.
+     */
+    public void printFoodWeb(Node at, Appendable out) throws IOException {
+        BitSet printed = new BitSet(predators.length);
+        Node[] nodes = { at };
+        int[] depths = { 0 };
+        int top = 1;
+        while (top > 0) {
+            Node node = nodes[--top];
+            int depth = depths[top];
+            for (int i = 0; i < depth; i++) {
+                out.append('\t');
+            }
+            out.append(node.isPlant ? "-" : "|- ").append(node.getName());
+            if (printed.get(node.id) && node.prey.length > 0) {
+                out.append(" (shared)").append(LINE_SEPARATOR);
+                continue;
+            }
+            out.append(LINE_SEPARATOR);
+            printed.set(node.id);
+            if (top + node.prey.length > nodes.length) {
+                nodes = Arrays.copyOf(nodes, Math.max(nodes.length * 2, top + node.prey.length));
+                depths = Arrays.copyOf(depths, nodes.length);
+            }
+            for (int i = node.prey.length - 1; i >= 0; i--) {
+                nodes[top] = node.prey[i];
+                depths[top++] = depth + 1;
+            }
+        }
+    }
+
+    /**
+     * Prints the web under the apex predator to standard output.
+     */
+    public void printFoodWeb() {
+        StringBuilder out = new StringBuilder();
+        try {
+            printFoodWeb(apex, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        System.out.print(out);
+    }
+
+    /**
+     * A visitor over distinct nodes that returns false to stop the walk.
+     */
+    private interface NodeVisitor {
+        boolean visit(Node node);
+    }
+
+    /**
+     * Visits every node reachable from start exactly once, depth first, prey in order.
+     */
+    private void walk(Node start, NodeVisitor visitor) {
+        BitSet seen = new BitSet(predators.length);
+        Node[] stack = { start };
+        int top = 1;
+        seen.set(start.id);
+        while (top > 0) {
+            Node node = stack[--top];
+            if (!visitor.visit(node)) {
+                return;
+            }
+            if (top + node.prey.length > stack.length) {
+                stack = Arrays.copyOf(stack, Math.max(stack.length * 2, top + node.prey.length));
+            }
+            for (int i = node.prey.length - 1; i >= 0; i--) {
+                Node prey = node.prey[i];
+                if (!seen.get(prey.id)) {
+                    seen.set(prey.id);
+                    stack[top++] = prey;
+                }
+            }
+        }
+    }
+
+    /**
+     * An immutable organism in a food web. Nodes are created and shared by a Builder.
+     */
+    public static final class Node {
+        static final Node[] NONE = new Node[0];
+
+        private final int id;
+        private final NameDictionary.Entry name;
+        private final boolean isPlant, isHerbivore, isCarnivore;
+        private final Node[] prey;
+
+        private Node(int id, NameDictionary.Entry name, boolean isPlant, boolean isHerbivore, boolean isCarnivore, Node[] prey) {
+            this.id = id;
+            this.name = name;
+            this.isPlant = isPlant;
+            this.isHerbivore = isHerbivore;
+            this.isCarnivore = isCarnivore;
+            this.prey = prey;
+        }
+
+        /**
+         * Returns the name of the organism.
+         *
+         * @return
+         * The name of the organism.
+         */
+        public String getName() {
+            return name.name;
+        }
+
+        /**
+         * Checks if the organism is a plant.
+         *
+         * @return
+         * True if the organism is a plant, false otherwise.
+         */
+        public boolean getIsPlant() {
+            return isPlant;
+        }
+
+        /**
+         * Checks if the organism is a herbivore.
+         *
+         * @return
+         * True if the organism is a herbivore, false otherwise.
+         */
+        public boolean getIsHerbivore() {
+            return isHerbivore;
+        }
+
+        /**
+         * Checks if the organism is a carnivore.
+         *
+         * @return
+         * True if the organism is a carnivore, false otherwise.
+         */
+        public boolean getIsCarnivore() {
+            return isCarnivore;
+        }
+
+        /**
+         * Returns the prey of this node.
+         *
+         * @return
+         * A copy of the prey, in the order they were given.
+         */
+        public Node[] getPrey() {
+            return prey.clone();
+        }
+    }
+
+    /**
+     * Creates hash-consed food web nodes bottom-up.
+     *
+     * Each node is identified by its name, its type and diet, and the set of its prey. Since prey are themselves
+     * shared nodes, two sub-pyramids with the same structure resolve to the same node.
+     */
+    public static final class Builder {
+        private final Map<Key, Node> nodes = new HashMap<>();
+        private final List<Node> byId = new ArrayList<>();
+
+        private Builder(){}
+
+        /**
+         * Returns the plant with the given name, creating it if it does not exist yet.
+         *
+         * @param name
+         * The name of the plant.
+         * @return
+         * The shared plant node.
+         */
+        public Node plant(String name) {
+            return intern(name, true, false, false, Node.NONE);
+        }
+
+        /**
+         * Returns the animal with the given name, diet and prey, creating it if no identical node exists yet.
+         *
+         * @param name
+         * The name of the animal.
+         * @param isHerbivore
+         * True if the animal is a herbivore, false otherwise.
+         * @param isCarnivore
+         * True if the animal is a carnivore, false otherwise.
+         * @param prey
+         * Any number of prey, created earlier by this builder. Repeated prey are kept once.
+         * @return
+         * The shared animal node.
+         * @throws IllegalArgumentException
+         * If the animal is neither a herbivore nor a carnivore, or a prey was not created by this builder.
+         * @throws DietMismatchException
+         * If a prey does not match the animal's diet.
+         */
+        public Node animal(String name, boolean isHerbivore, boolean isCarnivore, Node... prey) throws IllegalArgumentException, DietMismatchException {
+            if (!isHerbivore && !isCarnivore) {
+                throw new IllegalArgumentException("ERROR: An animal must be a herbivore, a carnivore or both.");
+            }
+            for (Node p : prey) {
+                if ((p.isPlant && !isHerbivore) || (!p.isPlant && !isCarnivore)) {
+                    throw new DietMismatchException("ERROR: " + p.getName() + " does not match the diet of " + name + ".");
+                }
+            }
+            return intern(name, false, isHerbivore, isCarnivore, prey);
+        }
+
+        /**
+         * Finishes a web with the given apex predator. The builder may go on to build more webs that share nodes.
+         *
+         * @param apex
+         * The apex predator.
+         * @return
+         * The web of every node reachable from apex.
+         * @throws IllegalArgumentException
+         * If the apex predator is a plant.
+         */
+        public FoodWeb build(Node apex) throws IllegalArgumentException {
+            if (apex.isPlant) {
+                throw new IllegalArgumentException("Apex Predator must be an animal.");
+            }
+            if (apex.id >= byId.size() || byId.get(apex.id) != apex) {
+                throw new IllegalArgumentException("ERROR: " + apex.getName() + " was not created by this builder.");
+            }
+            return new FoodWeb(apex, byId.size());
+        }
+
+        /**
+         * Returns the number of distinct nodes created so far.
+         *
+         * @return
+         * The number of nodes.
+         */
+        public int size() {
+            return byId.size();
+        }
+
+        Node intern(String name, boolean isPlant, boolean isHerbivore, boolean isCarnivore, Node[] prey) {
+            Node[] distinct = distinct(prey);
+            // The node holds the entry, which keeps the id in the key from being reused.
+            NameDictionary.Entry entry = NameDictionary.shared().entry(name);
+            Key key = new Key(entry.id, isPlant, isHerbivore, isCarnivore, distinct);
+            Node node = nodes.get(key);
+            if (node == null) {
+                node = new Node(byId.size(), entry, isPlant, isHerbivore, isCarnivore, distinct);
+                nodes.put(key, node);
+                byId.add(node);
+            }
+            return node;
+        }
+
+        private Node[] distinct(Node[] prey) {
+            Node[] result = new Node[prey.length];
+            int count = 0;
+            for (Node p : prey) {
+                if (p.id >= byId.size() || byId.get(p.id) != p) {
+                    throw new IllegalArgumentException("ERROR: " + p.getName() + " was not created by this builder.");
+                }
+                boolean repeated = false;
+                for (int i = 0; i < count && !repeated; i++) {
+                    repeated = result[i] == p;
+                }
+                if (!repeated) {
+                    result[count++] = p;
+                }
+            }
+            return count == 0 ? Node.NONE : Arrays.copyOf(result, count);
+        }
+    }
+
+    /**
+     * The identity of a node for hash-consing: name, flags and the ids of its prey, compared as a set.
+     */
+    private static final class Key {
+        final int nameId;
+        final int flags;
+        final int[] preyIds;
+        private final int hash;
+
+        Key(int nameId, boolean isPlant, boolean isHerbivore, boolean isCarnivore, Node[] prey) {
+            this.nameId = nameId;
+            this.flags = (isPlant ? 1 : 0) | (isHerbivore ? 2 : 0) | (isCarnivore ? 4 : 0);
+            this.preyIds = new int[prey.length];
+            for (int i = 0; i < prey.length; i++) {
+                preyIds[i] = prey[i].id;
+            }
+            Arrays.sort(preyIds);
+            this.hash = (nameId * 31 + flags) * 31 + Arrays.hashCode(preyIds);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return hash == key.hash && nameId == key.nameId && flags == key.flags && Arrays.equals(preyIds, key.preyIds);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -3,4 +3,8 @@ public class IsPlantException extends Exception {
     public IsPlantException(String message) {
         super(message);
     }
+
+    public IsPlantException(String message, boolean writableStackTrace) {
+        super(message, null, writableStackTrace, writableStackTrace);
+    }
 }
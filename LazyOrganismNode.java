@@ -0,0 +1,106 @@
+/**
+ * An OrganismNode backed by a record in a memory-mapped snapshot.
+ * Its prey are materialized from the snapshot the first time they are accessed. Materialization is synchronized,
+ * so concurrent readers of a shared tree see each organism's prey created exactly once.
+ */
+class LazyOrganismNode extends OrganismNode {
+    private final OrganismTreeSnapshot.Source source;
+    private final int record;
+    private volatile boolean loaded;
+
+    /**
+     * Constructs a LazyOrganismNode for the given snapshot record.
+     * 
+     * @param source
+     * The snapshot the node was read from.
+     * @param record
+     * The index of the node's record in the snapshot's node table.
+     * @param name
+     * The name of the organism.
+     * @param isPlant
+     * True if the organism is a plant, false otherwise.
+     * @param isHerbivore
+     * True if the organism is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the organism is a carnivore, false otherwise.
+     */
+    LazyOrganismNode(OrganismTreeSnapshot.Source source, int record, String name, boolean isPlant, boolean isHerbivore, boolean isCarnivore) {
+        super(name, isPlant, isHerbivore, isCarnivore, null, null, null);
+        this.source = source;
+        this.record = record;
+    }
+
+    /**
+     * Returns the index of this node's record in the snapshot's node table.
+     * 
+     * @return
+     * The record index.
+     */
+    int getRecord() {
+        return record;
+    }
+
+    @Override
+    boolean hasLoadedChildren() {
+        return loaded;
+    }
+
+    /**
+     * Materializes the prey of this node from the snapshot if that has not happened yet.
+     */
+    private void ensureLoaded() {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    LazyOrganismNode[] children = source.loadChildren(this);
+                    super.setLeft(children[0]);
+                    super.setMiddle(children[1]);
+                    super.setRight(children[2]);
+                    loaded = true;
+                }
+            }
+        }
+    }
+
+    @Override
+    public OrganismNode getLeft() {
+        ensureLoaded();
+        return super.getLeft();
+    }
+
+    @Override
+    public void setLeft(OrganismNode left) {
+        ensureLoaded();
+        super.setLeft(left);
+    }
+
+    @Override
+    public OrganismNode getMiddle() {
+        ensureLoaded();
+        return super.getMiddle();
+    }
+
+    @Override
+    public void setMiddle(OrganismNode middle) {
+        ensureLoaded();
+        super.setMiddle(middle);
+    }
+
+    @Override
+    public OrganismNode getRight() {
+        ensureLoaded();
+        return super.getRight();
+    }
+
+    @Override
+    public void setRight(OrganismNode right) {
+        ensureLoaded();
+        super.setRight(right);
+    }
+
+    @Override
+    public OrganismResult tryAddPrey(OrganismNode preyNode) {
+        ensureLoaded();
+        return super.tryAddPrey(preyNode);
+    }
+}
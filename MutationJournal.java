@@ -0,0 +1,666 @@
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only binary log of the adds, removes, detaches and grafts made to an OrganismTree, for crash recovery.
+ *
+ * File layout, all values big-endian:
+ * <pre>
+ *   header   magic, version (ints), generation (long)
+ *   record   bodyLength, CRC-32 of the body (ints), then the body:
+ *            op (byte: 1 add animal, 2 add plant, 3 remove, 4 detach, 5 graft, 6 discard, 7 create detached),
+ *            flags (byte: plant, herbivore, carnivore as in snapshots),
+ *            base (int: -1 for the apex predator, otherwise the ticket of a detached subtree's root),
+ *            depth (int) and one slot byte per level (0 left, 1 middle, 2 right) from the base down to the
+ *            predator that changed, ticket (int: the detached subtree a graft or discard moves, otherwise -1),
+ *            then the name's byte length (int) and UTF-8 bytes
+ * </pre>
+ * Every detach, and every detached subtree recreated after a compaction, takes the next ticket, counted from 0 in
+ * each generation, so replay numbers the same subtrees the same way. Grafting a subtree this tree detached is one
+ * record naming its ticket, whatever the subtree's size, and edits made inside it while it is detached are
+ * journaled against its ticket. A subtree that was never detached from the tree is journaled as one add per
+ * organism in preorder, which replays exactly because graft only accepts such subtrees if they obey the add rules.
+ *
+ * Records are encoded into a memory buffer while the tree's write lock is held and written by group commit:
+ * whichever thread commits first writes every pending record with one FileChannel write and one force, so
+ * concurrent writers share an fsync. With a commit interval of 0 every add or remove waits for its record to
+ * reach the disk before returning; otherwise a background thread commits at that interval, and a crash loses at
+ * most the last interval of changes.
+ *
+ * Compaction saves the whole tree as a snapshot tagged with the next generation and only then empties the
+ * journal under that generation, starting it with the subtrees that are detached and so not in the snapshot. A
+ * journal whose generation differs from its snapshot's predates it and is not replayed, so a crash between the two
+ * steps neither loses nor repeats changes. A record torn by a crash fails its checksum and ends the replay.
+ */
+public final class MutationJournal implements MutationListener, Closeable {
+    static final int MAGIC = 0x46504A4C;
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 16;
+    static final byte ADD_ANIMAL = 1, ADD_PLANT = 2, REMOVE = 3, DETACH = 4, GRAFT = 5, DISCARD = 6, CREATE = 7;
+    /** The base of a record whose path starts at the apex predator, and the ticket of a record that moves nothing. */
+    static final int APEX = -1;
+
+    /** The journal size above which a journal opened without an explicit threshold compacts itself. */
+    public static final long DEFAULT_COMPACTION_BYTES = 64L << 20;
+
+    private static final int RECORD_HEADER_BYTES = 8;
+    /** The body of a record with an empty path and an empty name. */
+    private static final int MIN_BODY_BYTES = 2 + 4 + 4 + 4 + 4;
+
+    private final OrganismTree tree;
+    private final Path snapshotFile;
+    private final FileChannel channel;
+    private final long commitIntervalMillis, compactionBytes;
+    private final Object commitLock = new Object();
+    private final CRC32 crc = new CRC32();
+    private final Thread committer;
+
+    // Guarded by this: the records encoded since the last commit.
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private byte[] path = new byte[64];
+    private final Map<OrganismNode, Integer> tickets = new IdentityHashMap<>();
+    private int nextTicket;
+    private long appended;
+    private boolean closed;
+
+    // Guarded by commitLock: the buffer being written and where the journal ends on disk.
+    private ByteBuffer writing = ByteBuffer.allocate(1 << 16);
+    private long generation, end;
+
+    private volatile long durable, journalBytes;
+
+    private MutationJournal(OrganismTree tree, Path snapshotFile, FileChannel channel, long commitIntervalMillis, long compactionBytes) throws IOException {
+        this.tree = tree;
+        this.snapshotFile = snapshotFile;
+        this.channel = channel;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.compactionBytes = compactionBytes;
+        generation = Files.exists(snapshotFile) ? OrganismTreeSnapshot.readGeneration(snapshotFile) : 0;
+        committer = commitIntervalMillis > 0 ? new Thread(this::commitPeriodically, "mutation-journal") : null;
+    }
+
+    /**
+     * Starts journaling a tree with a commit interval of 0, so each change is on disk before it returns, and the
+     * default compaction threshold.
+     *
+     * @param tree
+     * The tree to journal.
+     * @param snapshotFile
+     * The snapshot compaction writes to.
+     * @param journalFile
+     * The journal file. It is created if missing and emptied by the initial compaction.
+     * @return
+     * The open journal.
+     * @throws IOException
+     * If the snapshot or the journal cannot be written.
+     * @custom.precondition
+     * No other journal is attached to tree, and tree already holds everything in journalFile, for example because
+     * it was returned by recover.
+     * @custom.postcondition
+     * snapshotFile holds the whole tree, journalFile is empty, and every later add or remove is journaled.
+     */
+    public static MutationJournal open(OrganismTree tree, Path snapshotFile, Path journalFile) throws IOException {
+        return open(tree, snapshotFile, journalFile, 0, DEFAULT_COMPACTION_BYTES);
+    }
+
+    /**
+     * Starts journaling a tree. The tree is compacted into the snapshot first, so the journal starts empty.
+     *
+     * @param tree
+     * The tree to journal.
+     * @param snapshotFile
+     * The snapshot compaction writes to.
+     * @param journalFile
+     * The journal file. It is created if missing and emptied by the initial compaction.
+     * @param commitIntervalMillis
+     * 0 to make every add or remove wait until it is on disk, or how often a background thread commits.
+     * @param compactionBytes
+     * The journal size above which it is compacted after a commit, or 0 to compact only when compact is called.
+     * @return
+     * The open journal.
+     * @throws IOException
+     * If the snapshot or the journal cannot be written.
+     * @custom.precondition
+     * No other journal is attached to tree, and tree already holds everything in journalFile.
+     * @custom.postcondition
+     * snapshotFile holds the whole tree, journalFile is empty, and every later add or remove is journaled.
+     */
+    public static MutationJournal open(OrganismTree tree, Path snapshotFile, Path journalFile, long commitIntervalMillis, long compactionBytes) throws IOException {
+        if (commitIntervalMillis < 0 || compactionBytes < 0) throw new IllegalArgumentException("The commit interval and compaction size cannot be negative.");
+        return open(tree, snapshotFile, FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE),
+                commitIntervalMillis, compactionBytes);
+    }
+
+    /**
+     * Starts journaling a tree into a channel that is already open, so tests can make its writes fail. The journal
+     * owns the channel and closes it.
+     */
+    static MutationJournal open(OrganismTree tree, Path snapshotFile, FileChannel channel, long commitIntervalMillis, long compactionBytes) throws IOException {
+        MutationJournal journal;
+        try {
+            journal = new MutationJournal(tree, snapshotFile, channel, commitIntervalMillis, compactionBytes);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        try {
+            // Attaching first means no change can slip in between the snapshot and the first record.
+            tree.setMutationListener(journal);
+            journal.compact();
+        } catch (IOException | RuntimeException e) {
+            tree.setMutationListener(null);
+            journal.channel.close();
+            throw e;
+        }
+        if (journal.committer != null) {
+            journal.committer.setDaemon(true);
+            journal.committer.start();
+        }
+        return journal;
+    }
+
+    /**
+     * Rebuilds a tree from a snapshot and the journal written after it, without going through the CLI.
+     *
+     * @param snapshotFile
+     * The snapshot written by compaction.
+     * @param journalFile
+     * The journal. A missing journal, or one older than the snapshot, adds nothing.
+     * @return
+     * The tree as it was after the last change that reached the journal.
+     * @throws IOException
+     * If a file cannot be read, or a record does not apply to the tree.
+     * @custom.precondition
+     * snapshotFile and journalFile are not null.
+     * @custom.postcondition
+     * The returned tree holds the snapshot with every complete journal record applied in order. Subtrees that were
+     * still detached at the end of the journal have been discarded. No journal is attached to it.
+     */
+    public static OrganismTree recover(Path snapshotFile, Path journalFile) throws IOException {
+        OrganismTree tree = OrganismTreeSnapshot.load(snapshotFile);
+        if (Files.exists(journalFile)) {
+            replay(tree, journalFile, OrganismTreeSnapshot.readGeneration(snapshotFile));
+        }
+        return tree;
+    }
+
+    /**
+     * Applies every complete record of a journal of the given generation to a tree.
+     *
+     * @param tree
+     * The tree the journal was written against, as it was when the journal was emptied.
+     * @param journalFile
+     * The journal.
+     * @param generation
+     * The generation of the snapshot the tree was loaded from.
+     * @return
+     * The number of records applied, 0 if the journal belongs to another generation.
+     * @throws IOException
+     * If the journal cannot be read or a record does not apply to the tree.
+     */
+    static long replay(OrganismTree tree, Path journalFile, long generation) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journalFile), 1 << 16))) {
+            byte[] header = new byte[HEADER_BYTES];
+            try {
+                in.readFully(header);
+            } catch (EOFException e) {
+                // The header itself was torn, so nothing after it was ever committed.
+                return 0;
+            }
+            ByteBuffer fields = ByteBuffer.wrap(header);
+            if (fields.getInt() != MAGIC || fields.getInt() != VERSION) {
+                throw new IOException("Not a food pyramid journal: " + journalFile);
+            }
+            if (fields.getLong() != generation) {
+                return 0;
+            }
+
+            CRC32 checksum = new CRC32();
+            byte[] body = new byte[256];
+            // The roots of the subtrees detached so far, by ticket; null once grafted or discarded.
+            List<OrganismNode> detached = new ArrayList<>();
+            long applied = 0;
+            while (true) {
+                int length, expected;
+                try {
+                    length = in.readInt();
+                    expected = in.readInt();
+                    if (length < MIN_BODY_BYTES) {
+                        break;
+                    }
+                    if (length > body.length) {
+                        body = new byte[Math.max(length, body.length * 2)];
+                    }
+                    in.readFully(body, 0, length);
+                } catch (EOFException e) {
+                    break;
+                }
+                checksum.reset();
+                checksum.update(body, 0, length);
+                if ((int) checksum.getValue() != expected) {
+                    break;
+                }
+                apply(tree, ByteBuffer.wrap(body, 0, length), applied, detached);
+                applied++;
+            }
+            // Nothing can graft a subtree left detached by a crash, so it is dropped rather than kept indexed.
+            for (OrganismNode subtree : detached) {
+                if (subtree != null) {
+                    tree.discard(subtree);
+                }
+            }
+            return applied;
+        }
+    }
+
+    private static void apply(OrganismTree tree, ByteBuffer record, long index, List<OrganismNode> detached) throws IOException {
+        byte op = record.get();
+        int flags = record.get();
+        int base = record.getInt();
+        int depth = record.getInt();
+        OrganismNode at = base == APEX ? tree.getRoot() : ticketed(detached, base);
+        for (int i = 0; i < depth; i++) {
+            byte slot = record.get();
+            if (at != null) {
+                at = slot == 0 ? at.getLeft() : slot == 1 ? at.getMiddle() : at.getRight();
+            }
+        }
+        int ticket = record.getInt();
+        byte[] name = new byte[record.getInt()];
+        record.get(name);
+        String decoded = new String(name, StandardCharsets.UTF_8);
+        boolean isPlant = (flags & OrganismTreeSnapshot.PLANT) != 0;
+        boolean isHerbivore = (flags & OrganismTreeSnapshot.HERBIVORE) != 0, isCarnivore = (flags & OrganismTreeSnapshot.CARNIVORE) != 0;
+
+        if (op == CREATE) {
+            detached.add(tree.newDetached(decoded, isPlant, isHerbivore, isCarnivore));
+            return;
+        }
+        OrganismNode moved = null;
+        if (op == GRAFT || op == DISCARD) {
+            moved = ticketed(detached, ticket);
+            if (moved == null) {
+                throw new IOException("Journal record " + index + " names a detached subtree that does not exist.");
+            }
+            detached.set(ticket, null);
+        }
+        if (op == DISCARD) {
+            tree.discard(moved);
+            return;
+        }
+        if (at == null) {
+            throw new IOException("Journal record " + index + " names a predator that is not in the tree.");
+        }
+
+        OrganismResult result;
+        try {
+            if (op == DETACH) {
+                detached.add(tree.detachChild(at, decoded));
+                return;
+            } else if (op == GRAFT) {
+                tree.graft(at, moved);
+                return;
+            } else if (op == REMOVE) {
+                result = tree.tryRemoveChild(at, decoded);
+            } else {
+                result = tree.tryAddChild(at, decoded, op == ADD_PLANT, isHerbivore, isCarnivore);
+            }
+        } catch (IllegalArgumentException | IsPlantException | DietMismatchException | PositionNotAvailableException e) {
+            throw new IOException("Journal record " + index + " does not apply: " + e.getMessage(), e);
+        }
+        if (!result.isOk()) {
+            throw new IOException("Journal record " + index + " does not apply: " + result.getMessage());
+        }
+    }
+
+    private static OrganismNode ticketed(List<OrganismNode> detached, int ticket) {
+        return ticket >= 0 && ticket < detached.size() ? detached.get(ticket) : null;
+    }
+
+    /**
+     * Returns the journal's generation, which matches the generation of the snapshot it continues.
+     *
+     * @return
+     * The generation.
+     */
+    public long getGeneration() {
+        synchronized (commitLock) {
+            return generation;
+        }
+    }
+
+    /**
+     * Returns the number of records that are on disk, counted since the journal was opened.
+     *
+     * @return
+     * The number of durable records.
+     */
+    public long getDurableCount() {
+        return durable;
+    }
+
+    /**
+     * Returns the size of the journal file as of the last commit or compaction.
+     *
+     * @return
+     * The size in bytes.
+     */
+    public long getJournalBytes() {
+        return journalBytes;
+    }
+
+    @Override
+    public synchronized void childAdded(OrganismNode at, OrganismNode child) {
+        // A prebuilt subtree is journaled as one add per organism, in preorder, so each predator exists on replay.
+        OrganismTraversal.preorder(child, (node, depth) -> {
+            append(node.getIsPlant() ? ADD_PLANT : ADD_ANIMAL, flags(node), node.getParent(), APEX, node.getName());
+            return OrganismVisitor.Result.CONTINUE;
+        });
+    }
+
+    @Override
+    public synchronized void childRemoved(OrganismNode at, OrganismNode child) {
+        append(REMOVE, 0, at, APEX, child.getName());
+    }
+
+    @Override
+    public synchronized void childDetached(OrganismNode at, OrganismNode child) {
+        if (append(DETACH, 0, at, APEX, child.getName())) {
+            tickets.put(child, nextTicket++);
+        }
+    }
+
+    @Override
+    public synchronized void childGrafted(OrganismNode at, OrganismNode child) {
+        Integer ticket = tickets.remove(child);
+        if (ticket == null) {
+            // Detached inside a subtree this journal never saw, so replay has nothing to move.
+            childAdded(at, child);
+        } else {
+            append(GRAFT, 0, at, ticket, "");
+        }
+    }
+
+    @Override
+    public synchronized void subtreeDiscarded(OrganismNode child) {
+        Integer ticket = tickets.remove(child);
+        if (ticket != null) {
+            append(DISCARD, 0, null, ticket, "");
+        }
+    }
+
+    /**
+     * Waits for the change that was just made when the commit interval is 0, and compacts if the journal has grown
+     * past its threshold.
+     *
+     * @throws UncheckedIOException
+     * If the journal cannot be written. The change stays in the tree.
+     */
+    @Override
+    public void afterMutation() {
+        if (committer != null) {
+            return;
+        }
+        try {
+            sync();
+            compactIfLarge();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Waits until every change made so far is on disk, committing the pending records if no other thread is.
+     *
+     * @throws IOException
+     * If the journal cannot be written. The records stay pending, and the next commit writes them again at the same
+     * offset.
+     * @custom.precondition
+     * The journal has not been closed.
+     * @custom.postcondition
+     * Every change reported to this journal before the call is in the journal file or the snapshot.
+     */
+    public void sync() throws IOException {
+        long target;
+        synchronized (this) {
+            target = appended;
+        }
+        if (durable < target) {
+            synchronized (commitLock) {
+                // The commit that ran while this thread waited for commitLock may already have covered target.
+                if (durable < target) {
+                    commit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Saves the whole tree as a snapshot of the next generation and empties the journal.
+     *
+     * @throws IOException
+     * If the snapshot or the journal cannot be written.
+     * @custom.precondition
+     * The journal has not been closed.
+     * @custom.postcondition
+     * The snapshot holds the whole tree and the journal holds no records. Adds and removes wait until this returns.
+     */
+    public void compact() throws IOException {
+        tree.readLocked(() -> {
+            synchronized (commitLock) {
+                long next = generation + 1;
+                Path temporary = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+                OrganismTreeSnapshot.save(tree, temporary, next);
+                try (FileChannel written = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                    written.force(true);
+                }
+                Files.move(temporary, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                // Truncating before the new header is written keeps the old generation on a crash in between.
+                channel.truncate(0);
+                channel.force(true);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(next);
+                header.flip();
+                writeFully(header, 0);
+                channel.force(true);
+
+                generation = next;
+                end = HEADER_BYTES;
+                journalBytes = HEADER_BYTES;
+                synchronized (this) {
+                    // The read lock keeps new records out, and everything pending is now in the snapshot.
+                    pending.clear();
+                    writing.clear();
+                    durable = appended;
+                    // Detached subtrees are not in the snapshot, so the new generation starts by recreating them.
+                    tickets.clear();
+                    nextTicket = 0;
+                    for (OrganismNode subtree : tree.detachedSubtrees()) {
+                        append(CREATE, flags(subtree), null, APEX, subtree.getName());
+                        tickets.put(subtree, nextTicket++);
+                        for (OrganismNode prey : new OrganismNode[] { subtree.getLeft(), subtree.getMiddle(), subtree.getRight() }) {
+                            if (prey != null) {
+                                childAdded(subtree, prey);
+                            }
+                        }
+                    }
+                }
+                if (durable < appended) {
+                    commit();
+                }
+            }
+        });
+    }
+
+    /**
+     * Commits everything pending, stops journaling and closes the journal file. Later changes to the tree are not
+     * journaled.
+     *
+     * @throws IOException
+     * If the final commit or closing the file fails.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        if (committer != null) {
+            committer.interrupt();
+            try {
+                committer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            if (tree.getMutationListener() == this) {
+                tree.setMutationListener(null);
+            }
+            sync();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Encodes one record into the pending buffer. The caller holds this journal's monitor.
+     *
+     * @param at
+     * The predator the record applies to, or null for a record without a path.
+     * @return
+     * False if at is inside a subtree this journal has no ticket for, so nothing was journaled.
+     */
+    private boolean append(byte op, int flags, OrganismNode at, int ticket, String name) {
+        int depth = 0, base = APEX;
+        if (at != null) {
+            OrganismNode top = at;
+            for (; top.getParent() != null; top = top.getParent()) {
+                depth++;
+            }
+            if (top != tree.getRoot()) {
+                Integer detached = tickets.get(top);
+                if (detached == null) {
+                    return false;
+                }
+                base = detached;
+            }
+            if (depth > path.length) {
+                path = new byte[Math.max(depth, path.length * 2)];
+            }
+            int level = depth;
+            for (OrganismNode node = at; node.getParent() != null; node = node.getParent()) {
+                OrganismNode predator = node.getParent();
+                path[--level] = (byte) (predator.getLeft() == node ? 0 : predator.getMiddle() == node ? 1 : 2);
+            }
+        }
+
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        int length = MIN_BODY_BYTES + depth + encoded.length;
+        if (pending.remaining() < RECORD_HEADER_BYTES + length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + RECORD_HEADER_BYTES + length));
+            pending.flip();
+            pending = grown.put(pending);
+        }
+        int start = pending.position();
+        pending.putInt(length).putInt(0).put(op).put((byte) flags).putInt(base).putInt(depth).put(path, 0, depth)
+                .putInt(ticket).putInt(encoded.length).put(encoded);
+        crc.reset();
+        crc.update(pending.array(), start + RECORD_HEADER_BYTES, length);
+        pending.putInt(start + 4, (int) crc.getValue());
+        appended++;
+        return true;
+    }
+
+    private static int flags(OrganismNode node) {
+        return (node.getIsPlant() ? OrganismTreeSnapshot.PLANT : 0) | (node.getIsHerbivore() ? OrganismTreeSnapshot.HERBIVORE : 0)
+                | (node.getIsCarnivore() ? OrganismTreeSnapshot.CARNIVORE : 0);
+    }
+
+    /**
+     * Writes and forces every pending record. The caller holds commitLock. If the write fails, the batch is kept and
+     * the next commit writes it again from the same offset, followed by whatever was appended in between, so the
+     * journal never has a gap.
+     */
+    private void commit() throws IOException {
+        long target;
+        synchronized (this) {
+            if (writing.position() == 0) {
+                ByteBuffer swap = pending;
+                pending = writing;
+                writing = swap;
+            } else {
+                // A failed batch is still waiting, so the newer records go after it.
+                pending.flip();
+                if (writing.remaining() < pending.remaining()) {
+                    ByteBuffer grown = ByteBuffer.allocate(Math.max(writing.capacity() * 2, writing.position() + pending.remaining()));
+                    writing.flip();
+                    writing = grown.put(writing);
+                }
+                writing.put(pending);
+                pending.clear();
+            }
+            target = appended;
+        }
+        writing.flip();
+        int bytes = writing.remaining();
+        try {
+            writeFully(writing, end);
+            channel.force(false);
+        } catch (IOException e) {
+            // Whatever part reached the file is overwritten by the retry.
+            writing.limit(writing.capacity()).position(bytes);
+            throw e;
+        }
+        writing.clear();
+        end += bytes;
+        journalBytes = end;
+        durable = target;
+    }
+
+    private void compactIfLarge() throws IOException {
+        if (compactionBytes > 0 && journalBytes > compactionBytes) {
+            compact();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private void commitPeriodically() {
+        while (true) {
+            try {
+                Thread.sleep(commitIntervalMillis);
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                sync();
+                compactIfLarge();
+            } catch (IOException e) {
+                // Nothing is lost: the records stay pending and the next round, or the next sync, retries them.
+            }
+        }
+    }
+}
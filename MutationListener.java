@@ -0,0 +1,70 @@
+/**
+ * Callback an OrganismTree notifies after each successful change to its structure.
+ *
+ * The change callbacks run while the tree's write lock is held, in the order the changes were made, so
+ * they must be quick and must not call back into the tree. afterMutation runs on the same thread once the lock
+ * has been released, and is where slow follow-up work such as waiting for a disk write belongs.
+ */
+public interface MutationListener {
+
+    /**
+     * Called when a node has been added as prey of a predator.
+     *
+     * @param at
+     * The predator.
+     * @param child
+     * The new prey, already linked into the tree.
+     */
+    void childAdded(OrganismNode at, OrganismNode child);
+
+    /**
+     * Called when a node has been removed from a predator.
+     *
+     * @param at
+     * The predator.
+     * @param child
+     * The removed prey, already unlinked from the tree.
+     */
+    void childRemoved(OrganismNode at, OrganismNode child);
+
+    /**
+     * Called when a subtree has been detached from a predator to be grafted elsewhere later. Its organisms stay
+     * known to the tree until it is grafted or discarded. By default this is reported as childRemoved.
+     *
+     * @param at
+     * The predator.
+     * @param child
+     * The root of the detached subtree, already unlinked from the tree.
+     */
+    default void childDetached(OrganismNode at, OrganismNode child) {
+        childRemoved(at, child);
+    }
+
+    /**
+     * Called when a subtree that was reported to childDetached has been grafted under a predator. A subtree that
+     * was never detached from the tree is reported to childAdded instead. By default this is reported as childAdded.
+     *
+     * @param at
+     * The new predator.
+     * @param child
+     * The root of the grafted subtree, already linked into the tree.
+     */
+    default void childGrafted(OrganismNode at, OrganismNode child) {
+        childAdded(at, child);
+    }
+
+    /**
+     * Called when a subtree that was reported to childDetached has been discarded instead of grafted.
+     *
+     * @param child
+     * The root of the discarded subtree.
+     */
+    default void subtreeDiscarded(OrganismNode child) {
+    }
+
+    /**
+     * Called after any of the other callbacks, once the tree's write lock has been released.
+     */
+    default void afterMutation() {
+    }
+}
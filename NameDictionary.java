@@ -0,0 +1,298 @@
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns each distinct organism name an int id, so a species that appears under many predators is stored once
+ * and names can be compared as ints.
+ *
+ * Every name has an exact id, and every id also maps to a case-folded id that is shared by all names equal
+ * ignoring case. Comparing exact ids matches String.equals, and comparing folded ids matches
+ * String.equalsIgnoreCase. Lookups are lock-free; adding a name is synchronized.
+ *
+ * The shared dictionary reclaims names: an OrganismNode holds its name's Entry, and once no organism holds an
+ * entry any more, the garbage collector clears it and a later add frees its id for reuse. So a long-running
+ * process that creates and removes organisms under ever new names keeps only the names still in use. An id is
+ * only valid while its entry is reachable, so code that keeps an id keeps the organism or the entry with it.
+ * A dictionary made with the constructor keeps every name until it is dropped; a CompactOrganismTree owns one and
+ * rebuilds it once most of its names have been removed.
+ *
+ * Only building an organism interns its name. Queries and adds that are rejected use lookup, so the dictionary
+ * holds the names of organisms that were actually created rather than every name ever asked about.
+ */
+public final class NameDictionary {
+    /** The id of no name. */
+    public static final int NONE = -1;
+
+    private static final NameDictionary SHARED = new NameDictionary(true);
+
+    /**
+     * A name and its exact id. Whoever holds the entry keeps the id from being reused.
+     */
+    static final class Entry {
+        final String name;
+        final int id;
+        final long hash;
+
+        private Entry(String name, int id, long hash) {
+            this.name = name;
+            this.id = id;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * The dictionary's reference to an entry: weak in a dictionary that reclaims names, strong otherwise. It
+     * remembers what to free once the entry is collected.
+     */
+    private static final class Slot extends WeakReference<Entry> {
+        final String name, foldedName;
+        final int id, foldedId;
+        final Entry pinned;
+
+        Slot(Entry entry, String foldedName, int foldedId, ReferenceQueue<Entry> queue, boolean reclaims) {
+            super(entry, queue);
+            this.name = entry.name;
+            this.foldedName = foldedName;
+            this.id = entry.id;
+            this.foldedId = foldedId;
+            this.pinned = reclaims ? null : entry;
+        }
+    }
+
+    private final boolean reclaims;
+    private final ReferenceQueue<Entry> collected = new ReferenceQueue<>();
+    private final ConcurrentHashMap<String, Slot> ids = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Integer> foldedIds = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private volatile int[] folded = new int[64];
+    private volatile long[] hashes = new long[64];
+
+    // Guarded by this: the ids handed out so far, and those freed for reuse.
+    private int highWater, foldedHighWater, size;
+    private int[] freeIds = new int[16], freeFoldedIds = new int[16];
+    private int freeCount, freeFoldedCount;
+    private int[] foldedUses = new int[64];
+
+    /**
+     * Constructs an empty dictionary that keeps every name it is given.
+     */
+    public NameDictionary() {
+        this(false);
+    }
+
+    private NameDictionary(boolean reclaims) {
+        this.reclaims = reclaims;
+    }
+
+    /**
+     * Returns the dictionary shared by every OrganismNode. It reclaims the ids of names no organism uses any more.
+     *
+     * @return
+     * The shared dictionary.
+     */
+    public static NameDictionary shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the id of the given name, adding the name if it is new.
+     *
+     * @param name
+     * The name.
+     * @return
+     * The exact id of the name. In the shared dictionary it stays valid only while an organism with the name exists.
+     * @custom.precondition
+     * name is not null.
+     * @custom.postcondition
+     * The name is in the dictionary and name(id) returns an equal String.
+     */
+    public int intern(String name) {
+        return entry(name).id;
+    }
+
+    /**
+     * Returns the entry of the given name, adding the name if it is new. Holding the entry keeps its id valid.
+     *
+     * @param name
+     * The name.
+     * @return
+     * The entry of the name.
+     */
+    Entry entry(String name) {
+        Slot slot = ids.get(name);
+        Entry entry = slot == null ? null : slot.get();
+        return entry != null ? entry : add(name);
+    }
+
+    /**
+     * Returns the id of the given name without adding it.
+     *
+     * @param name
+     * The name.
+     * @return
+     * The exact id of the name, or NONE if no organism has it.
+     */
+    public int lookup(String name) {
+        Slot slot = ids.get(name);
+        return slot == null || slot.get() == null ? NONE : slot.id;
+    }
+
+    /**
+     * Returns the case-folded id of the given name without adding it.
+     *
+     * @param name
+     * The name.
+     * @return
+     * The id shared by every interned name equal to name ignoring case, or NONE if there is none.
+     */
+    public int lookupFolded(String name) {
+        Slot slot = ids.get(name);
+        if (slot != null && slot.get() != null) {
+            return slot.foldedId;
+        }
+        Integer foldedId = foldedIds.get(fold(name));
+        return foldedId == null ? NONE : foldedId;
+    }
+
+    /**
+     * Returns the name with the given id.
+     *
+     * @param id
+     * An exact id returned by intern, or NONE.
+     * @return
+     * The canonical String for the id, or null for NONE.
+     */
+    public String name(int id) {
+        return id == NONE ? null : names[id];
+    }
+
+    /**
+     * Returns the case-folded id of the name with the given exact id.
+     *
+     * @param id
+     * An exact id returned by intern, or NONE.
+     * @return
+     * The folded id, or NONE for NONE.
+     */
+    public int foldedId(int id) {
+        return id == NONE ? NONE : folded[id];
+    }
+
+    /**
+     * Returns a 64-bit hash of the name with the given id, computed from its characters so it is the same in every
+     * dictionary and every run.
+     *
+     * @param id
+     * An exact id returned by intern, or NONE.
+     * @return
+     * The hash, or 0 for NONE.
+     */
+    public long nameHash(int id) {
+        return id == NONE ? 0 : hashes[id];
+    }
+
+    /**
+     * Returns the number of distinct names whose ids are in use.
+     *
+     * @return
+     * The number of exact ids handed out and not yet freed.
+     */
+    public synchronized int size() {
+        freeCollected();
+        return size;
+    }
+
+    private synchronized Entry add(String name) {
+        freeCollected();
+        Slot existing = ids.get(name);
+        Entry entry = existing == null ? null : existing.get();
+        if (entry != null) {
+            return entry;
+        }
+        String key = fold(name);
+        Integer foldedId = foldedIds.get(key);
+        if (foldedId == null) {
+            foldedId = freeFoldedCount > 0 ? freeFoldedIds[--freeFoldedCount] : foldedHighWater++;
+            if (foldedId == foldedUses.length) {
+                foldedUses = Arrays.copyOf(foldedUses, foldedId * 2);
+            }
+            foldedIds.put(key, foldedId);
+        }
+        foldedUses[foldedId]++;
+
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            id = highWater++;
+            if (id == names.length) {
+                names = Arrays.copyOf(names, id * 2);
+                folded = Arrays.copyOf(folded, id * 2);
+                hashes = Arrays.copyOf(hashes, id * 2);
+            }
+        }
+        entry = new Entry(name, id, hash(name));
+        names[id] = name;
+        folded[id] = foldedId;
+        hashes[id] = entry.hash;
+        size++;
+        // Publishing the id after the slot is written lets lock-free readers that found the id read the slot.
+        ids.put(name, new Slot(entry, key, foldedId, collected, reclaims));
+        return entry;
+    }
+
+    /**
+     * Frees the ids of the entries the garbage collector has cleared. The caller holds this dictionary's monitor.
+     */
+    private void freeCollected() {
+        for (Slot slot; (slot = (Slot) collected.poll()) != null; ) {
+            // The name may have been added again since, under a new slot that must stay.
+            ids.remove(slot.name, slot);
+            names[slot.id] = null;
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+            }
+            freeIds[freeCount++] = slot.id;
+            size--;
+            if (--foldedUses[slot.foldedId] == 0) {
+                foldedIds.remove(slot.foldedName);
+                if (freeFoldedCount == freeFoldedIds.length) {
+                    freeFoldedIds = Arrays.copyOf(freeFoldedIds, freeFoldedCount * 2);
+                }
+                freeFoldedIds[freeFoldedCount++] = slot.foldedId;
+            }
+        }
+    }
+
+    /**
+     * FNV-1a over the UTF-16 code units, followed by a 64-bit finalizer so that short names spread over all bits.
+     */
+    static long hash(String name) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h = (h ^ name.charAt(i)) * 0x100000001b3L;
+        }
+        return OrganismNode.mix(h);
+    }
+
+    /**
+     * Folds each code point the way String.equalsIgnoreCase compares them.
+     */
+    private static String fold(String name) {
+        StringBuilder key = null;
+        for (int i = 0; i < name.length(); ) {
+            int codePoint = name.codePointAt(i);
+            int foldedPoint = Character.toLowerCase(Character.toUpperCase(codePoint));
+            if (foldedPoint != codePoint && key == null) {
+                key = new StringBuilder(name.length()).append(name, 0, i);
+            }
+            if (key != null) {
+                key.appendCodePoint(foldedPoint);
+            }
+            i += Character.charCount(codePoint);
+        }
+        return key == null ? name : key.toString();
+    }
+}
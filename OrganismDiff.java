@@ -0,0 +1,288 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The differences between two food pyramids, found by walking both together and skipping every pair of subtrees
+ * whose structural hashes are equal.
+ *
+ * The apex predators are compared with each other, and below them prey are matched by name. A prey only in the
+ * first pyramid is reported as REMOVED and one only in the second as ADDED, once for its whole subtree; a matched
+ * pair whose diet differs, or apex predators with different names, are reported as CHANGED. Since only pairs with different hashes are opened, the cost is
+ * proportional to the number of changes times their depth rather than to the size of the pyramids, and a pyramid
+ * loaded lazily from a snapshot only materializes the paths to the changes.
+ */
+public final class OrganismDiff {
+    /**
+     * How an organism differs between the two pyramids.
+     */
+    public enum Kind {
+        /** The organism and its prey are only in the second pyramid. */
+        ADDED,
+        /** The organism and its prey are only in the first pyramid. */
+        REMOVED,
+        /** The organism is in both pyramids with a different diet, or the apex predators have different names. */
+        CHANGED
+    }
+
+    /**
+     * One difference between the two pyramids.
+     */
+    public static final class Change {
+        private final Kind kind;
+        private final OrganismNode before, after;
+
+        Change(Kind kind, OrganismNode before, OrganismNode after) {
+            this.kind = kind;
+            this.before = before;
+            this.after = after;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        /**
+         * Returns the organism in the first pyramid.
+         *
+         * @return
+         * The organism, or null if it was ADDED.
+         */
+        public OrganismNode getBefore() {
+            return before;
+        }
+
+        /**
+         * Returns the organism in the second pyramid.
+         *
+         * @return
+         * The organism, or null if it was REMOVED.
+         */
+        public OrganismNode getAfter() {
+            return after;
+        }
+
+        /**
+         * Returns the food chain from the apex predator to the organism, in the second pyramid unless it was REMOVED.
+         *
+         * @return
+         * The names along the chain, separated by " -> ".
+         */
+        public String getPath() {
+            OrganismNode node = after != null ? after : before;
+            List<String> names = new ArrayList<>();
+            for (; node != null; node = node.getParent()) {
+                names.add(node.getName());
+            }
+            Collections.reverse(names);
+            return String.join(" -> ", names);
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case ADDED:
+                    return "+ " + getPath() + (after.getSubtreeSize() > 1 ? " (" + after.getSubtreeSize() + " organisms)" : "");
+                case REMOVED:
+                    return "- " + getPath() + (before.getSubtreeSize() > 1 ? " (" + before.getSubtreeSize() + " organisms)" : "");
+                default:
+                    // Only the apex predators are matched regardless of name, so only they can be renamed.
+                    StringBuilder change = new StringBuilder("~ ").append(getPath()).append(" (");
+                    boolean renamed = before.getNameId() != after.getNameId();
+                    if (renamed) {
+                        change.append("renamed from ").append(before.getName());
+                    }
+                    String oldDiet = diet(before), newDiet = diet(after);
+                    if (!renamed || !oldDiet.equals(newDiet)) {
+                        change.append(renamed ? ", " : "").append(oldDiet).append(" -> ").append(newDiet);
+                    }
+                    return change.append(')').toString();
+            }
+        }
+
+        private static String diet(OrganismNode node) {
+            if (node.getIsPlant()) {
+                return "plant";
+            }
+            return node.getIsHerbivore() && node.getIsCarnivore() ? "omnivore" : node.getIsHerbivore() ? "herbivore" : "carnivore";
+        }
+    }
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final List<Change> changes = new ArrayList<>();
+    private long compared;
+
+    private OrganismDiff(){}
+
+    /**
+     * Compares two pyramids, holding both trees' read locks while it runs.
+     *
+     * @param a
+     * The first pyramid, for example yesterday's snapshot.
+     * @param b
+     * The second pyramid.
+     * @return
+     * The differences, ordered by a preorder walk of the second pyramid.
+     * @custom.precondition
+     * a and b are not null.
+     * @custom.postcondition
+     * Neither tree has changed.
+     */
+    public static OrganismDiff diff(OrganismTree a, OrganismTree b) {
+        OrganismDiff result = new OrganismDiff();
+        if (a == b) {
+            a.readLocked(() -> result.compare(a.getRoot(), b.getRoot()));
+            return result;
+        }
+        // A fixed lock order keeps two opposite diffs from deadlocking behind waiting writers.
+        OrganismTree first = System.identityHashCode(a) <= System.identityHashCode(b) ? a : b;
+        OrganismTree second = first == a ? b : a;
+        first.readLocked(() -> second.readLocked(() -> result.compare(a.getRoot(), b.getRoot())));
+        return result;
+    }
+
+    /**
+     * Compares two subtrees whose roots are matched with each other.
+     *
+     * @param a
+     * The root of the first subtree.
+     * @param b
+     * The root of the second subtree.
+     * @return
+     * The differences.
+     */
+    static OrganismDiff diff(OrganismNode a, OrganismNode b) {
+        OrganismDiff result = new OrganismDiff();
+        result.compare(a, b);
+        return result;
+    }
+
+    /**
+     * Returns every difference.
+     *
+     * @return
+     * An unmodifiable list of the differences.
+     */
+    public List<Change> getChanges() {
+        return Collections.unmodifiableList(changes);
+    }
+
+    /**
+     * Returns the differences of one kind.
+     *
+     * @param kind
+     * The kind of difference.
+     * @return
+     * The differences of that kind, in the same order as getChanges.
+     */
+    public List<Change> getChanges(Kind kind) {
+        List<Change> matching = new ArrayList<>();
+        for (Change change : changes) {
+            if (change.kind == kind) {
+                matching.add(change);
+            }
+        }
+        return matching;
+    }
+
+    /**
+     * Returns whether the two pyramids are the same up to the order of prey.
+     *
+     * @return
+     * True if there are no differences.
+     */
+    public boolean isEmpty() {
+        return changes.isEmpty();
+    }
+
+    /**
+     * Returns how many pairs of organisms had to be opened, which is what the diff cost.
+     *
+     * @return
+     * The number of compared pairs with different hashes.
+     */
+    public long getComparedCount() {
+        return compared;
+    }
+
+    /**
+     * Writes one line per difference: + for added, - for removed and ~ for changed organisms.
+     *
+     * @param out
+     * The sink for the lines.
+     * @throws IOException
+     * If out fails to accept the output.
+     */
+    public void print(Appendable out) throws IOException {
+        if (changes.isEmpty()) {
+            out.append("The food pyramids are identical.").append(LINE_SEPARATOR);
+        }
+        for (Change change : changes) {
+            out.append(change.toString()).append(LINE_SEPARATOR);
+        }
+    }
+
+    private void compare(OrganismNode a, OrganismNode b) {
+        OrganismNode[] pending = new OrganismNode[32];
+        int size = 0;
+        pending[size++] = a;
+        pending[size++] = b;
+        while (size > 0) {
+            OrganismNode after = pending[--size];
+            OrganismNode before = pending[--size];
+            if (before.getHash() == after.getHash()) {
+                continue;
+            }
+            compared++;
+            if (before.getNameId() != after.getNameId() || before.getIsPlant() != after.getIsPlant()
+                    || before.getIsHerbivore() != after.getIsHerbivore() || before.getIsCarnivore() != after.getIsCarnivore()) {
+                changes.add(new Change(Kind.CHANGED, before, after));
+            }
+
+            OrganismNode[] oldPrey = { before.getLeft(), before.getMiddle(), before.getRight() };
+            OrganismNode[] newPrey = { after.getLeft(), after.getMiddle(), after.getRight() };
+            // Pairs are pushed in reverse so that they pop in slot order, keeping the report in preorder.
+            int pushed = size;
+            for (OrganismNode prey : newPrey) {
+                if (prey == null) {
+                    continue;
+                }
+                OrganismNode match = null;
+                for (int i = 0; i < oldPrey.length && match == null; i++) {
+                    if (oldPrey[i] != null && oldPrey[i].getNameId() == prey.getNameId()) {
+                        match = oldPrey[i];
+                        oldPrey[i] = null;
+                    }
+                }
+                if (match == null) {
+                    changes.add(new Change(Kind.ADDED, null, prey));
+                    continue;
+                }
+                if (size + 2 > pending.length) {
+                    pending = Arrays.copyOf(pending, pending.length * 2);
+                }
+                pending[size++] = match;
+                pending[size++] = prey;
+            }
+            reversePairs(pending, pushed, size);
+            for (OrganismNode prey : oldPrey) {
+                if (prey != null) {
+                    changes.add(new Change(Kind.REMOVED, prey, null));
+                }
+            }
+        }
+    }
+
+    private static void reversePairs(OrganismNode[] pairs, int from, int to) {
+        for (int i = from, j = to - 2; i < j; i += 2, j -= 2) {
+            OrganismNode before = pairs[i], after = pairs[i + 1];
+            pairs[i] = pairs[j];
+            pairs[i + 1] = pairs[j + 1];
+            pairs[j] = before;
+            pairs[j + 1] = after;
+        }
+    }
+}
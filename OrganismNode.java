@@ -1,10 +1,23 @@
+import java.util.Arrays;
+
 /**
  * Represents a node in an OrganismTree, modeling a simple food pyramid.
+ * The name is held as an entry of the shared NameDictionary, so each species name is held once however many nodes use it,
+ * and its id is freed once no node uses it any more.
+ *
+ * The setters are raw field writes: they do not refresh the cached subtree size, plant count, height or hash of
+ * this node or its predators. addPrey and tryAddPrey refresh those, but neither they nor the setters know about an
+ * OrganismTree, so they do not take its lock, bump its version, update its name index or caches, or reach its
+ * journal. Use them to build a sub-pyramid before it is grafted; once a node is in a tree, change it through the
+ * OrganismTree, or the tree's counts, lookups and journal go stale.
  */
 public class OrganismNode {
-    private String name;
+    private NameDictionary.Entry name;
     private boolean isPlant, isHerbivore, isCarnivore;
     private OrganismNode left, middle, right;
+    private OrganismNode parent;
+    private int subtreeSize = 1, plantCount, height = 1;
+    private long hash;
 
     /**
      * Constructs an empty OrganismNode object. 
@@ -30,13 +43,14 @@ public class OrganismNode {
      * The right child node.
      */
     public OrganismNode(String name, boolean isPlant, boolean isHerbivore, boolean isCarnivore, OrganismNode left, OrganismNode mid, OrganismNode right){
-        this.name = name;
+        setName(name);
         this.isPlant = isPlant;
         this.isHerbivore = isHerbivore;
         this.isCarnivore = isCarnivore;
         this.left = left;
         this.middle = mid;
         this.right = right;
+        computeAggregates(left, mid, right);
     }
 
     /**
@@ -45,7 +59,16 @@ public class OrganismNode {
      * The name of the organism.
      */
     public String getName() {
-        return name;
+        return name == null ? null : name.name;
+    }
+
+    /**
+     * Get the id of the organism's name in the shared NameDictionary.
+     * @return 
+     * The exact name id, or NameDictionary.NONE if the organism has no name.
+     */
+    int getNameId() {
+        return name == null ? NameDictionary.NONE : name.id;
     }
 
     /**
@@ -54,7 +77,7 @@ public class OrganismNode {
      * The new name of the organism.
      */
     public void setName(String name) {
-        this.name = name;
+        this.name = name == null ? null : NameDictionary.shared().entry(name);
     }
 
     /**
@@ -165,6 +188,165 @@ public class OrganismNode {
         this.right = right;
     }
 
+    /**
+     * Get the parent (predator) node.
+     * @return 
+     * The parent node, or null if this node is the apex predator or detached.
+     */
+    public OrganismNode getParent() {
+        return parent;
+    }
+
+    /**
+     * Set the parent (predator) node.
+     * @param parent 
+     * The new parent node.
+     */
+    void setParent(OrganismNode parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Get the number of organisms in the subtree rooted at this node, including this node.
+     * The value is cached and kept up to date by addPrey and by OrganismTree.
+     * @return 
+     * The size of the subtree.
+     */
+    public int getSubtreeSize() {
+        return subtreeSize;
+    }
+
+    /**
+     * Get the number of plants in the subtree rooted at this node, including this node.
+     * The value is cached and kept up to date by addPrey and by OrganismTree.
+     * @return 
+     * The number of plants supporting this organism.
+     */
+    public int getPlantCount() {
+        return plantCount;
+    }
+
+    /**
+     * Get the number of levels in the subtree rooted at this node, where a node with no prey has height 1.
+     * The value is cached and kept up to date by addPrey and by OrganismTree.
+     * @return 
+     * The height of the subtree.
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the structural hash of the subtree rooted at this node. It covers the name, the diet flags and the hashes
+     * of the prey, combined without regard to their slot order, so equal hashes mean equal sub-pyramids up to the
+     * order of prey, barring a 64-bit collision.
+     * The value is cached and kept up to date by addPrey and by OrganismTree.
+     * @return 
+     * The hash of the subtree.
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Sets the cached aggregates directly, for nodes whose subtree is not in memory yet.
+     * @param subtreeSize 
+     * The size of the subtree.
+     * @param plantCount 
+     * The number of plants in the subtree.
+     * @param height 
+     * The height of the subtree.
+     * @param hash 
+     * The structural hash of the subtree.
+     */
+    void setAggregates(int subtreeSize, int plantCount, int height, long hash) {
+        this.subtreeSize = subtreeSize;
+        this.plantCount = plantCount;
+        this.height = height;
+        this.hash = hash;
+    }
+
+    /**
+     * Recomputes this node's cached aggregates from its own type and its direct children's cached aggregates.
+     */
+    void refreshAggregates() {
+        computeAggregates(getLeft(), getMiddle(), getRight());
+    }
+
+    private void computeAggregates(OrganismNode... prey) {
+        int size = 1, plants = isPlant ? 1 : 0, tallest = 0, count = 0;
+        long preyHashes = 0;
+        for (OrganismNode child : prey) {
+            if (child != null) {
+                size += child.subtreeSize;
+                plants += child.plantCount;
+                tallest = Math.max(tallest, child.height);
+                // A sum of mixed hashes does not depend on which slot each prey is in.
+                preyHashes += mix(child.hash);
+                count++;
+            }
+        }
+        subtreeSize = size;
+        plantCount = plants;
+        height = tallest + 1;
+        int flags = (isPlant ? 1 : 0) | (isHerbivore ? 2 : 0) | (isCarnivore ? 4 : 0);
+        long self = mix((name == null ? 0 : name.hash) + flags * 0x9e3779b97f4a7c15L);
+        hash = mix(self ^ (preyHashes * 0xbf58476d1ce4e5b9L + count));
+    }
+
+    /**
+     * The SplitMix64 finalizer, which spreads every input bit over the whole result.
+     */
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Recomputes the cached aggregates of this node and of every predator above it, in O(depth).
+     */
+    void refreshAggregatesToRoot() {
+        for (OrganismNode node = this; node != null; node = node.getParent()) {
+            node.refreshAggregates();
+        }
+    }
+
+    /**
+     * Recomputes the cached aggregates of every node in the subtree rooted at start, children before predators.
+     * Used after a subtree has been linked together with the raw setters. Nodes whose prey are not in memory keep
+     * the aggregates they were loaded with.
+     * @param start 
+     * The root of the subtree.
+     */
+    static void refreshSubtreeAggregates(OrganismNode start) {
+        OrganismNode[][] order = { new OrganismNode[64] };
+        int[] size = { 0 };
+        OrganismTraversal.preorder(start, (node, depth) -> {
+            if (size[0] == order[0].length) {
+                order[0] = Arrays.copyOf(order[0], size[0] * 2);
+            }
+            if (!node.hasLoadedChildren()) {
+                return OrganismVisitor.Result.SKIP_CHILDREN;
+            }
+            order[0][size[0]++] = node;
+            return OrganismVisitor.Result.CONTINUE;
+        });
+        for (int i = size[0] - 1; i >= 0; i--) {
+            order[0][i].refreshAggregates();
+        }
+    }
+
+    /**
+     * Checks whether the children of this node are present in memory.
+     * Nodes loaded lazily from a snapshot return false until their prey are first accessed.
+     * @return 
+     * True if the children have been loaded, false otherwise.
+     */
+    boolean hasLoadedChildren() {
+        return true;
+    }
+
     /**
      * Adds a prey node as a child to this OrganismNode.
      * 
@@ -177,13 +359,44 @@ public class OrganismNode {
      * @throws DietMismatchException 
      * If the preyNode's type (plant/animal) is incompatible with this OrganismNode's diet.
      * @custom.precondition 
-     * This OrganismNode must not represent a plant. The preyNode must be compatible with the diet of this OrganismNode. There must be space available for a new child node.
+     * This OrganismNode is not in an OrganismTree; see the class comment. This OrganismNode must not represent a plant. The preyNode must be compatible with the diet of this OrganismNode. There must be space available for a new child node.
      * @custom.postcondition 
-     * The preyNode is added as a child of this OrganismNode.
+     * The preyNode is added as a child of this OrganismNode and its parent is set to this OrganismNode. The cached aggregates of this OrganismNode and every predator above it are updated.
      */
     public void addPrey(OrganismNode preyNode) throws IsPlantException, PositionNotAvailableException, DietMismatchException{
-        if (this.getIsPlant() == true) throw new IsPlantException("Plant nodes cannot have children.");
-        if ((preyNode.getIsPlant() && !getIsHerbivore()) || (!preyNode.getIsPlant() && !getIsCarnivore())) throw new DietMismatchException("ERROR: This prey cannot be added as it does not match the diet of the predator.");
+        tryAddPrey(preyNode).throwIfRejected(true);
+    }
+
+    /**
+     * Checks whether tryAddPrey would accept a prey of the given kind, without building the prey.
+     * 
+     * @param isPlant
+     * True if the prey would be a plant, false if it would be an animal.
+     * @return 
+     * OK if there is room for such a prey, otherwise IS_PLANT, DIET_MISMATCH or POSITION_NOT_AVAILABLE, checked in that order.
+     */
+    OrganismResult checkPrey(boolean isPlant) {
+        if (getIsPlant()) return OrganismResult.IS_PLANT;
+        if ((isPlant && !getIsHerbivore()) || (!isPlant && !getIsCarnivore())) return OrganismResult.DIET_MISMATCH;
+        if (getLeft() != null && getMiddle() != null && getRight() != null) return OrganismResult.POSITION_NOT_AVAILABLE;
+        return OrganismResult.OK;
+    }
+
+    /**
+     * Adds a prey node as a child to this OrganismNode, reporting a rejection as a result instead of an exception.
+     * 
+     * @param preyNode 
+     * The OrganismNode representing the prey.
+     * @return 
+     * OK if the prey was added, otherwise IS_PLANT, DIET_MISMATCH or POSITION_NOT_AVAILABLE, checked in that order.
+     * @custom.precondition 
+     * preyNode is not null, and this OrganismNode is not in an OrganismTree.
+     * @custom.postcondition 
+     * If OK is returned, the preyNode is added as a child of this OrganismNode exactly as addPrey would; otherwise nothing has changed.
+     */
+    public OrganismResult tryAddPrey(OrganismNode preyNode) {
+        if (this.getIsPlant() == true) return OrganismResult.IS_PLANT;
+        if ((preyNode.getIsPlant() && !getIsHerbivore()) || (!preyNode.getIsPlant() && !getIsCarnivore())) return OrganismResult.DIET_MISMATCH;
         
         if (left == null){
             left = preyNode;
@@ -192,9 +405,11 @@ public class OrganismNode {
         } else if (right == null){
             right = preyNode;
         } else {
-            throw new PositionNotAvailableException("ERROR: There is no more room for more prey for this predator.");
+            return OrganismResult.POSITION_NOT_AVAILABLE;
         }
-        
+        preyNode.setParent(this);
+        refreshAggregatesToRoot();
+        return OrganismResult.OK;
     }
 
     
@@ -0,0 +1,78 @@
+/**
+ * The outcome of an operation on a food pyramid that reports rejections as a value instead of throwing.
+ *
+ * Each rejection carries a message, and throwIfRejected turns it into the exception the throwing variant of the
+ * operation would raise.
+ */
+public enum OrganismResult {
+    /** The operation was applied. */
+    OK(null),
+    /** The predator is a plant, and plants cannot have prey. */
+    IS_PLANT("Plant nodes cannot have children."),
+    /** The prey does not match the predator's diet. */
+    DIET_MISMATCH("ERROR: This prey cannot be added as it does not match the diet of the predator."),
+    /** The predator already has three prey. */
+    POSITION_NOT_AVAILABLE("ERROR: There is no more room for more prey for this predator."),
+    /** The predator already has a prey with the same name. */
+    DUPLICATE_NAME("ERROR: This prey already exists for this predator."),
+    /** No prey of the predator has the given name. */
+    NOT_FOUND("ERROR: This prey does not exist for this predator."),
+    /** The predator is no longer in the food pyramid, for example because another session removed it. */
+    NOT_IN_PYRAMID("ERROR: The cursor is no longer in the food pyramid.");
+
+    private final String message;
+
+    OrganismResult(String message) {
+        this.message = message;
+    }
+
+    /**
+     * Returns the message describing this result.
+     *
+     * @return
+     * The message, or null for OK.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * Throws the exception matching this result, unless it is OK.
+     *
+     * @param withStackTrace
+     * False to skip capturing a stack trace and recording suppressed exceptions, for callers that only report the
+     * message. True gives an ordinary exception. IllegalArgumentException always captures a stack trace.
+     * @throws IsPlantException
+     * For IS_PLANT.
+     * @throws DietMismatchException
+     * For DIET_MISMATCH.
+     * @throws PositionNotAvailableException
+     * For POSITION_NOT_AVAILABLE.
+     * @throws IllegalArgumentException
+     * For DUPLICATE_NAME, NOT_FOUND and NOT_IN_PYRAMID.
+     */
+    public void throwIfRejected(boolean withStackTrace) throws IsPlantException, DietMismatchException, PositionNotAvailableException, IllegalArgumentException {
+        switch (this) {
+            case OK:
+                return;
+            case IS_PLANT:
+                throw new IsPlantException(message, withStackTrace);
+            case DIET_MISMATCH:
+                throw new DietMismatchException(message, withStackTrace);
+            case POSITION_NOT_AVAILABLE:
+                throw new PositionNotAvailableException(message, withStackTrace);
+            default:
+                throw new IllegalArgumentException(message);
+        }
+    }
+
+    /**
+     * Checks whether the operation was applied.
+     *
+     * @return
+     * True for OK, false for every rejection.
+     */
+    public boolean isOk() {
+        return this == OK;
+    }
+}
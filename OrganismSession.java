@@ -0,0 +1,372 @@
+import java.io.IOException;
+import java.util.stream.Stream;
+
+/**
+ * A cursor into a shared OrganismTree.
+ * 
+ * Each thread or user browses the tree through its own session, so cursors do not interfere with each other.
+ * A session itself is not meant to be shared between threads. If another session removes the subtree the cursor
+ * is in, the cursor stays on the removed organism until it is reset or moved elsewhere, and every add, remove or
+ * detach at it is rejected with NOT_IN_PYRAMID.
+ */
+public class OrganismSession {
+    private final OrganismTree tree;
+    private OrganismNode cursor;
+
+    /**
+     * Constructs a session on the given tree with its cursor at the root.
+     * 
+     * @param tree
+     * The shared tree.
+     */
+    OrganismSession(OrganismTree tree) {
+        this.tree = tree;
+        this.cursor = tree.getRoot();
+    }
+
+    /**
+     * Returns the tree this session browses.
+     * 
+     * @return
+     * The shared tree.
+     */
+    public OrganismTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Returns the cursor.
+     * 
+     * @return
+     * The cursor.
+     */
+    public OrganismNode getCursor() {
+        return cursor;
+    }
+
+    /**
+     * Resets the cursor to the root of the tree.
+     * 
+     * @custom.postcondition
+     * The cursor has been reset to the root of the tree.
+     */
+    public void cursorReset() {
+        cursor = tree.getRoot();
+    }
+
+    /**
+     * Moves the cursor to the child with the given name.
+     * 
+     * @param name
+     * The name of the child to move the cursor to.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the cursor's children.
+     */
+    public void moveCursor(String name) throws IllegalArgumentException {
+        cursor = tree.child(cursor, name);
+    }
+
+    /**
+     * Moves the cursor to the child with the given name, reporting a missing child as a result instead of an exception.
+     * 
+     * @param name
+     * The name of the child to move the cursor to.
+     * @return
+     * OK if the cursor moved, NOT_FOUND otherwise.
+     */
+    public OrganismResult tryMoveCursor(String name) {
+        OrganismNode found = tree.findChild(cursor, name);
+        if (found == null) {
+            return OrganismResult.NOT_FOUND;
+        }
+        cursor = found;
+        return OrganismResult.OK;
+    }
+
+    /**
+     * Moves the cursor directly to the organism with the given name, anywhere in the tree.
+     * 
+     * @param name
+     * The name of the organism to move the cursor to.
+     * @throws IllegalArgumentException
+     * If no organism in the tree has the given name.
+     */
+    public void jumpCursor(String name) throws IllegalArgumentException {
+        cursor = tree.find(name);
+    }
+
+    /**
+     * Returns a string representation of the prey of the cursor.
+     * 
+     * @return
+     * A string representation of the prey of the cursor.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     */
+    public String listPrey() throws IsPlantException {
+        return tree.listPrey(cursor);
+    }
+
+    /**
+     * Returns a string representation of the food chain from the apex predator to the cursor.
+     * 
+     * @return
+     * A string representation of the food chain from the apex predator to the cursor.
+     */
+    public String listFoodChain() {
+        return tree.listFoodChain(cursor);
+    }
+
+    /**
+     * Returns a string representation of all the plants in the tree that support the cursor.
+     * 
+     * @return
+     * A string representation of all the plants in the tree that support the cursor.
+     */
+    public String listAllPlants() {
+        return tree.listAllPlants(cursor);
+    }
+
+    /**
+     * Writes the names of all the plants that support the cursor to the given sink, separated by commas.
+     * 
+     * @param out
+     * The sink to write the plant names to.
+     * @return
+     * The number of plants written.
+     * @throws IOException
+     * If the sink fails to accept the output.
+     */
+    public int listAllPlants(Appendable out) throws IOException {
+        return tree.listAllPlants(cursor, out);
+    }
+
+    /**
+     * Writes the tree with the cursor as the root to the given sink.
+     * 
+     * @param out
+     * The sink to write the tree to. It is not flushed or closed.
+     * @throws IOException
+     * If the sink fails to accept the output.
+     */
+    public void printOrganismTree(Appendable out) throws IOException {
+        tree.printOrganismTree(cursor, out);
+    }
+
+    /**
+     * Checks if the cursor has three children.
+     * 
+     * @return
+     * True if the cursor has three children, false otherwise.
+     */
+    public boolean isFull() {
+        return tree.isFull(cursor);
+    }
+
+    /**
+     * Counts the organisms under the cursor, including the cursor, in constant time.
+     * 
+     * @return
+     * The number of organisms in the cursor's subtree.
+     */
+    public int countOrganisms() {
+        return tree.countOrganisms(cursor);
+    }
+
+    /**
+     * Counts the plants supporting the cursor in constant time.
+     * 
+     * @return
+     * The number of plants in the cursor's subtree.
+     */
+    public int countPlants() {
+        return tree.countPlants(cursor);
+    }
+
+    /**
+     * Returns the height of the subtree under the cursor in constant time.
+     * 
+     * @return
+     * The number of levels in the cursor's subtree, 1 if the cursor has no prey.
+     */
+    public int subtreeHeight() {
+        return tree.subtreeHeight(cursor);
+    }
+
+    /**
+     * Returns a lazy stream of the cursor and every organism under it, in preorder.
+     * 
+     * @return
+     * The stream.
+     */
+    public Stream<OrganismNode> streamSubtree() {
+        return tree.streamSubtree(cursor);
+    }
+
+    /**
+     * Returns a lazy stream of the plants supporting the cursor.
+     * 
+     * @return
+     * The stream.
+     */
+    public Stream<OrganismNode> streamPlants() {
+        return tree.streamPlants(cursor);
+    }
+
+    /**
+     * Returns a lazy stream of the food chain from the apex predator down to the cursor.
+     * 
+     * @return
+     * The stream.
+     */
+    public Stream<OrganismNode> streamFoodChain() {
+        return tree.streamFoodChain(cursor);
+    }
+
+    /**
+     * Computes counts and summaries of the subtree under the cursor in parallel.
+     * 
+     * @return
+     * The statistics of the subtree under the cursor.
+     */
+    public OrganismStats aggregateStats() {
+        return tree.aggregateStats(cursor);
+    }
+
+    /**
+     * Adds an animal child under the cursor.
+     * 
+     * @param name
+     * The name of the animal child.
+     * @param isHerbivore
+     * True if the animal child is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the animal child is a carnivore, false otherwise.
+     * @throws IllegalArgumentException
+     * If the given name is already taken by a sibling.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three children.
+     * @throws DietMismatchException
+     * If the animal child's diet is incompatible with the cursor's diet.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     */
+    public void addAnimalChild(String name, boolean isHerbivore, boolean isCarnivore) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException {
+        tree.tryAddChild(cursor, name, false, isHerbivore, isCarnivore).throwIfRejected(true);
+    }
+
+    /**
+     * Adds an animal child to the cursor, reporting a rejection as a result instead of an exception.
+     * 
+     * @param name
+     * The name of the animal child.
+     * @param isHerbivore
+     * True if the animal child is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the animal child is a carnivore, false otherwise.
+     * @return
+     * OK if the child was added, otherwise the reason addAnimalChild would have thrown.
+     */
+    public OrganismResult tryAddAnimalChild(String name, boolean isHerbivore, boolean isCarnivore) {
+        return tree.tryAddChild(cursor, name, false, isHerbivore, isCarnivore);
+    }
+
+    /**
+     * Adds a plant child under the cursor.
+     * 
+     * @param name
+     * The name of the plant child.
+     * @throws IllegalArgumentException
+     * If the given name is already taken by a sibling.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three children.
+     * @throws DietMismatchException
+     * If the cursor does not eat plants.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     */
+    public void addPlantChild(String name) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException {
+        tree.tryAddChild(cursor, name, true, false, false).throwIfRejected(true);
+    }
+
+    /**
+     * Adds a plant child to the cursor, reporting a rejection as a result instead of an exception.
+     * 
+     * @param name
+     * The name of the plant child.
+     * @return
+     * OK if the child was added, otherwise the reason addPlantChild would have thrown.
+     */
+    public OrganismResult tryAddPlantChild(String name) {
+        return tree.tryAddChild(cursor, name, true, false, false);
+    }
+
+    /**
+     * Removes the child with the given name, and all of its prey, from the tree.
+     * 
+     * @param name
+     * The name of the child to remove.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the cursor's children.
+     */
+    public void removeChild(String name) throws IllegalArgumentException {
+        tree.removeChild(cursor, name);
+    }
+
+    /**
+     * Removes the child with the given name, reporting a missing child as a result instead of an exception.
+     * 
+     * @param name
+     * The name of the child to remove.
+     * @return
+     * OK if the child was removed, NOT_FOUND otherwise.
+     */
+    public OrganismResult tryRemoveChild(String name) {
+        return tree.tryRemoveChild(cursor, name);
+    }
+
+    /**
+     * Detaches the child with the given name, and all of its prey, so it can be grafted elsewhere.
+     * 
+     * @param name
+     * The name of the child to detach.
+     * @return
+     * The detached subtree's root.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the cursor's children.
+     */
+    public OrganismNode detachChild(String name) throws IllegalArgumentException {
+        return tree.detachChild(cursor, name);
+    }
+
+    /**
+     * Grafts a detached subtree under the cursor, checking the diet, capacity and sibling name rules there, and for
+     * a subtree not detached from this tree the add rules throughout it as well.
+     * 
+     * @param subtree
+     * The root of the subtree.
+     * @throws IllegalArgumentException
+     * If subtree is not detached, contains the cursor, shares an organism with a pyramid, or breaks the sibling name rule.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three children, or a new subtree leaves a slot empty before a prey.
+     * @throws DietMismatchException
+     * If the cursor, or a predator in a new subtree, does not eat its prey.
+     * @throws IsPlantException
+     * If the cursor, or a plant in a new subtree, has prey.
+     */
+    public void graft(OrganismNode subtree) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException {
+        tree.graft(cursor, subtree);
+    }
+
+    /**
+     * Drops a subtree detached from the tree for good, removing its organisms from the name index.
+     * 
+     * @param subtree
+     * The root of the subtree, as returned by detachChild.
+     * @throws IllegalArgumentException
+     * If subtree is not a subtree detached from the tree, or has already been grafted or discarded.
+     */
+    public void discard(OrganismNode subtree) throws IllegalArgumentException {
+        tree.discard(subtree);
+    }
+}
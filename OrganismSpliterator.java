@@ -0,0 +1,211 @@
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Lazily walks the organisms of a subtree in preorder, or only its plants, for use as a Stream source.
+ *
+ * Nothing is traversed until the first element is requested. Pending work is a stack whose entries are either a
+ * whole subtree or a single organism, and the remaining size is the sum of the entries' cached subtree sizes (or
+ * plant counts), so the size is exact from the start and splits know their sizes without counting. A split hands
+ * the next half of the pending entries to the new spliterator; a single pending subtree is first opened into its
+ * root and its prey.
+ *
+ * The tree must not be modified while a spliterator is in use. OrganismTree's streams check this at every step and
+ * fail with a ConcurrentModificationException when it is.
+ */
+final class OrganismSpliterator implements Spliterator<OrganismNode> {
+    private static final int CHARACTERISTICS = ORDERED | NONNULL | SIZED | SUBSIZED;
+
+    private final boolean plantsOnly;
+    private OrganismNode[] nodes;
+    private boolean[] whole;
+    private int size;
+    private long remaining;
+
+    private OrganismSpliterator(boolean plantsOnly, OrganismNode[] nodes, boolean[] whole, int size, long remaining) {
+        this.plantsOnly = plantsOnly;
+        this.nodes = nodes;
+        this.whole = whole;
+        this.size = size;
+        this.remaining = remaining;
+    }
+
+    /**
+     * Creates a spliterator over every organism under start, start included, in preorder.
+     *
+     * @param start
+     * The root of the subtree.
+     * @return
+     * The spliterator.
+     */
+    static Spliterator<OrganismNode> subtree(OrganismNode start) {
+        return new OrganismSpliterator(false, new OrganismNode[]{ start }, new boolean[]{ true }, 1, start.getSubtreeSize());
+    }
+
+    /**
+     * Creates a spliterator over the plants under start, start included, in preorder. Subtrees without plants are
+     * never entered.
+     *
+     * @param start
+     * The root of the subtree.
+     * @return
+     * The spliterator.
+     */
+    static Spliterator<OrganismNode> plants(OrganismNode start) {
+        return new OrganismSpliterator(true, new OrganismNode[]{ start }, new boolean[]{ true }, 1, start.getPlantCount());
+    }
+
+    /**
+     * Creates a spliterator over the organisms from the top of end's tree down to end. The path is collected
+     * when the first element or the size is requested.
+     *
+     * @param end
+     * The last organism of the chain.
+     * @return
+     * The spliterator.
+     */
+    static Spliterator<OrganismNode> chain(OrganismNode end) {
+        return new Chain(end);
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super OrganismNode> action) {
+        while (size > 0) {
+            OrganismNode node = nodes[--size];
+            boolean open = whole[size];
+            nodes[size] = null;
+            if (open) {
+                push(node.getRight());
+                push(node.getMiddle());
+                push(node.getLeft());
+            }
+            if (!plantsOnly || node.getIsPlant()) {
+                remaining--;
+                action.accept(node);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<OrganismNode> trySplit() {
+        if (size == 1 && whole[0]) {
+            OrganismNode node = nodes[0];
+            size = 0;
+            push(node.getRight());
+            push(node.getMiddle());
+            push(node.getLeft());
+            if (size == 0) {
+                nodes[0] = node;
+                size = 1;
+                return null;
+            }
+            // The root comes before its prey, so it goes back on top as a single organism.
+            pushEntry(node, false);
+        }
+        if (size < 2) {
+            return null;
+        }
+
+        int keep = size / 2;
+        int moved = size - keep;
+        OrganismNode[] prefixNodes = Arrays.copyOfRange(nodes, keep, size);
+        boolean[] prefixWhole = Arrays.copyOfRange(whole, keep, size);
+        long prefixRemaining = 0;
+        for (int i = 0; i < moved; i++) {
+            prefixRemaining += weight(prefixNodes[i], prefixWhole[i]);
+        }
+        Arrays.fill(nodes, keep, size, null);
+        size = keep;
+        remaining -= prefixRemaining;
+        return new OrganismSpliterator(plantsOnly, prefixNodes, prefixWhole, moved, prefixRemaining);
+    }
+
+    @Override
+    public long estimateSize() {
+        return remaining;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+    private long weight(OrganismNode node, boolean subtree) {
+        if (plantsOnly) {
+            return subtree ? node.getPlantCount() : node.getIsPlant() ? 1 : 0;
+        }
+        return subtree ? node.getSubtreeSize() : 1;
+    }
+
+    private void push(OrganismNode child) {
+        if (child != null && (!plantsOnly || child.getPlantCount() > 0)) {
+            pushEntry(child, true);
+        }
+    }
+
+    private void pushEntry(OrganismNode node, boolean subtree) {
+        if (size == nodes.length) {
+            int capacity = Math.max(8, size * 2);
+            nodes = Arrays.copyOf(nodes, capacity);
+            whole = Arrays.copyOf(whole, capacity);
+        }
+        nodes[size] = node;
+        whole[size++] = subtree;
+    }
+
+    /**
+     * The organisms from the top of the tree down to a given organism, collected on first use.
+     */
+    private static final class Chain implements Spliterator<OrganismNode> {
+        private final OrganismNode end;
+        private Spliterator<OrganismNode> path;
+
+        Chain(OrganismNode end) {
+            this.end = end;
+        }
+
+        private Spliterator<OrganismNode> path() {
+            if (path == null) {
+                int depth = 0;
+                for (OrganismNode node = end; node != null; node = node.getParent()) {
+                    depth++;
+                }
+                OrganismNode[] chain = new OrganismNode[depth];
+                for (OrganismNode node = end; node != null; node = node.getParent()) {
+                    chain[--depth] = node;
+                }
+                path = Spliterators.spliterator(chain, CHARACTERISTICS);
+            }
+            return path;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super OrganismNode> action) {
+            return path().tryAdvance(action);
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super OrganismNode> action) {
+            path().forEachRemaining(action);
+        }
+
+        @Override
+        public Spliterator<OrganismNode> trySplit() {
+            return path().trySplit();
+        }
+
+        @Override
+        public long estimateSize() {
+            return path().estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return CHARACTERISTICS;
+        }
+    }
+}
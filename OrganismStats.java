@@ -0,0 +1,204 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts and summaries over the organisms of a subtree.
+ * 
+ * Statistics are computed in parallel on a ForkJoinPool. Each task walks its part of the subtree iteratively
+ * and, once it has visited SPLIT_THRESHOLD organisms, forks the subtrees still waiting on its stack as new tasks.
+ * Small subtrees are therefore counted sequentially, while large or uneven ones spread across all workers.
+ */
+public final class OrganismStats {
+    /** The number of organisms a task visits before it hands the rest of its subtree to other workers. */
+    static final int SPLIT_THRESHOLD = 4096;
+
+    private final long organisms, plants, herbivores, carnivores, omnivores, leaves;
+    private final int maxDepth;
+
+    private OrganismStats(long organisms, long plants, long herbivores, long carnivores, long omnivores, long leaves, int maxDepth) {
+        this.organisms = organisms;
+        this.plants = plants;
+        this.herbivores = herbivores;
+        this.carnivores = carnivores;
+        this.omnivores = omnivores;
+        this.leaves = leaves;
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Computes the statistics of the subtree rooted at start on the common pool.
+     * 
+     * @param start
+     * The root of the subtree.
+     * @return
+     * The statistics of the subtree.
+     */
+    public static OrganismStats of(OrganismNode start) {
+        return of(start, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Computes the statistics of the subtree rooted at start on the given pool.
+     * 
+     * @param start
+     * The root of the subtree.
+     * @param pool
+     * The pool to run on.
+     * @return
+     * The statistics of the subtree.
+     * @custom.precondition
+     * start and pool are not null, and the subtree is not modified while the statistics are computed.
+     */
+    public static OrganismStats of(OrganismNode start, ForkJoinPool pool) {
+        return pool.invoke(new Task(start, 1));
+    }
+
+    /**
+     * Returns the number of organisms, including the root of the subtree.
+     * @return
+     * The number of organisms.
+     */
+    public long getOrganisms() {
+        return organisms;
+    }
+
+    /**
+     * Returns the number of plants.
+     * @return
+     * The number of plants.
+     */
+    public long getPlants() {
+        return plants;
+    }
+
+    /**
+     * Returns the number of animals that eat only plants.
+     * @return
+     * The number of herbivores.
+     */
+    public long getHerbivores() {
+        return herbivores;
+    }
+
+    /**
+     * Returns the number of animals that eat only animals.
+     * @return
+     * The number of carnivores.
+     */
+    public long getCarnivores() {
+        return carnivores;
+    }
+
+    /**
+     * Returns the number of animals that eat both plants and animals.
+     * @return
+     * The number of omnivores.
+     */
+    public long getOmnivores() {
+        return omnivores;
+    }
+
+    /**
+     * Returns the number of organisms with no prey.
+     * @return
+     * The number of leaves.
+     */
+    public long getLeaves() {
+        return leaves;
+    }
+
+    /**
+     * Returns the number of trophic levels in the subtree, where the root alone counts as one level.
+     * @return
+     * The maximum trophic depth.
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    @Override
+    public String toString() {
+        return "Organisms: " + organisms + ", plants: " + plants + ", herbivores: " + herbivores + ", carnivores: " + carnivores
+                + ", omnivores: " + omnivores + ", leaves: " + leaves + ", trophic levels: " + maxDepth;
+    }
+
+    /**
+     * Counts one subtree, forking the rest of its subtree once it has visited SPLIT_THRESHOLD organisms.
+     */
+    private static final class Task extends RecursiveTask<OrganismStats> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient OrganismNode start;
+        private final int startDepth;
+
+        Task(OrganismNode start, int startDepth) {
+            this.start = start;
+            this.startDepth = startDepth;
+        }
+
+        @Override
+        protected OrganismStats compute() {
+            long organisms = 0, plants = 0, herbivores = 0, carnivores = 0, omnivores = 0, leaves = 0;
+            int maxDepth = 0;
+
+            OrganismNode[] nodes = new OrganismNode[32];
+            int[] depths = new int[32];
+            int size = 0;
+            nodes[size] = start;
+            depths[size++] = startDepth;
+
+            while (size > 0 && organisms < SPLIT_THRESHOLD) {
+                OrganismNode node = nodes[--size];
+                int depth = depths[size];
+                organisms++;
+                maxDepth = Math.max(maxDepth, depth);
+                if (node.getIsPlant()) {
+                    plants++;
+                } else if (node.getIsHerbivore() && node.getIsCarnivore()) {
+                    omnivores++;
+                } else if (node.getIsHerbivore()) {
+                    herbivores++;
+                } else {
+                    carnivores++;
+                }
+
+                OrganismNode left = node.getLeft(), middle = node.getMiddle(), right = node.getRight();
+                if (left == null && middle == null && right == null) {
+                    leaves++;
+                    continue;
+                }
+                if (size + 3 > nodes.length) {
+                    nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                    depths = Arrays.copyOf(depths, depths.length * 2);
+                }
+                if (right != null) { nodes[size] = right; depths[size++] = depth + 1; }
+                if (middle != null) { nodes[size] = middle; depths[size++] = depth + 1; }
+                if (left != null) { nodes[size] = left; depths[size++] = depth + 1; }
+            }
+
+            OrganismStats own = new OrganismStats(organisms, plants, herbivores, carnivores, omnivores, leaves, maxDepth);
+            if (size == 0) {
+                return own;
+            }
+
+            Task[] forked = new Task[size];
+            for (int i = 0; i < size; i++) {
+                forked[i] = new Task(nodes[i], depths[i]);
+                if (i > 0) {
+                    forked[i].fork();
+                }
+            }
+            OrganismStats total = merge(own, forked[0].compute());
+            for (int i = size - 1; i > 0; i--) {
+                total = merge(total, forked[i].join());
+            }
+            return total;
+        }
+    }
+
+    private static OrganismStats merge(OrganismStats a, OrganismStats b) {
+        return new OrganismStats(a.organisms + b.organisms, a.plants + b.plants, a.herbivores + b.herbivores,
+                a.carnivores + b.carnivores, a.omnivores + b.omnivores, a.leaves + b.leaves, Math.max(a.maxDepth, b.maxDepth));
+    }
+}
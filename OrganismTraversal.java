@@ -0,0 +1,140 @@
+import java.util.Arrays;
+
+/**
+ * Iterative traversals over OrganismNode subtrees.
+ * 
+ * The traversals keep their own array-backed stack instead of recursing, so they work at any tree depth.
+ */
+public final class OrganismTraversal {
+    private static final int INITIAL_CAPACITY = 32;
+
+    private OrganismTraversal(){}
+
+    /**
+     * Visits the subtree rooted at start in preorder: a node first, then its left, middle and right subtrees.
+     * 
+     * @param <X>
+     * The checked exception type the visitor may throw.
+     * @param start
+     * The root of the subtree to visit. May be null, in which case nothing is visited.
+     * @param visitor
+     * The visitor to call for each node.
+     * @return
+     * True if the visitor terminated the traversal early, false if every node was visited.
+     * @throws X
+     * If the visitor fails.
+     * @custom.precondition
+     * visitor is not null.
+     * @custom.postcondition
+     * The visitor has been called for every node of the subtree in preorder, or until it returned TERMINATE.
+     */
+    public static <X extends Exception> boolean preorder(OrganismNode start, OrganismVisitor<X> visitor) throws X {
+        if (start == null) {
+            return false;
+        }
+
+        OrganismNode[] nodes = new OrganismNode[INITIAL_CAPACITY];
+        int[] depths = new int[INITIAL_CAPACITY];
+        int size = 0;
+        nodes[size] = start;
+        depths[size++] = 0;
+
+        while (size > 0) {
+            OrganismNode node = nodes[--size];
+            int depth = depths[size];
+            nodes[size] = null;
+
+            OrganismVisitor.Result result = visitor.visit(node, depth);
+            if (result == OrganismVisitor.Result.TERMINATE) {
+                return true;
+            }
+            if (result == OrganismVisitor.Result.SKIP_CHILDREN) {
+                continue;
+            }
+
+            if (size + 3 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            OrganismNode child = node.getRight();
+            if (child != null) {
+                nodes[size] = child;
+                depths[size++] = depth + 1;
+            }
+            child = node.getMiddle();
+            if (child != null) {
+                nodes[size] = child;
+                depths[size++] = depth + 1;
+            }
+            child = node.getLeft();
+            if (child != null) {
+                nodes[size] = child;
+                depths[size++] = depth + 1;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A preorder walk that hands out one node at a time, so a caller can stop between any two nodes, release a lock
+     * and carry on later from the same place. Children are only walked if the caller expands their predator.
+     */
+    static final class Walk {
+        private OrganismNode[] nodes = new OrganismNode[INITIAL_CAPACITY];
+        private int[] depths = new int[INITIAL_CAPACITY];
+        private int size, depth;
+
+        /**
+         * Starts a walk at start, which may be null for an empty walk.
+         */
+        Walk(OrganismNode start) {
+            if (start != null) {
+                nodes[size++] = start;
+            }
+        }
+
+        /**
+         * Checks whether any node is left to walk.
+         */
+        boolean hasNext() {
+            return size > 0;
+        }
+
+        /**
+         * Returns the next node in preorder. The caller checked hasNext.
+         */
+        OrganismNode next() {
+            OrganismNode node = nodes[--size];
+            depth = depths[size];
+            nodes[size] = null;
+            return node;
+        }
+
+        /**
+         * Returns the depth of the node last returned by next, where the start node has depth 0.
+         */
+        int depth() {
+            return depth;
+        }
+
+        /**
+         * Walks the children of the node last returned by next before anything else left.
+         */
+        void expand(OrganismNode node) {
+            if (size + 3 > nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodes.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            push(node.getRight());
+            push(node.getMiddle());
+            push(node.getLeft());
+        }
+
+        private void push(OrganismNode child) {
+            if (child != null) {
+                nodes[size] = child;
+                depths[size++] = depth + 1;
+            }
+        }
+    }
+}
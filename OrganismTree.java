@@ -1,9 +1,122 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
 /**
  * Represents a tree structure for organizing organisms in a simple food pyramid.
+ *
+ * The tree is safe for many concurrent readers and occasional writers. Each reader or user should browse it
+ * through its own OrganismSession from openSession(); the tree's own cursor methods are kept for single-threaded
+ * use. Short queries run under an optimistic read and are retried under a read lock only if a writer interfered,
+ * so readers do not contend with each other.
  */
 public class OrganismTree {
-    private OrganismNode root;
+    private final OrganismNode root;
     private OrganismNode cursor;
+    private final Map<String, OrganismNode[]> nameIndex = new ConcurrentHashMap<>();
+    private final Set<OrganismNode> detached = ConcurrentHashMap.newKeySet();
+    private final StampedLock lock = new StampedLock();
+    private OrganismTreeSnapshot.Source snapshotSource;
+    private volatile MutationListener listener;
+    private volatile QueryCache queryCache;
+    private volatile long version;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    /** How many characters of a listing are rendered under one hold of the read lock before they go to the sink. */
+    private static final int STREAM_CHUNK_CHARS = 1 << 16;
+
+    // Guarded by the class: the buffered writer shared by every print to the console, and the stream it wraps.
+    private static PrintStream stdoutTarget;
+    private static Writer stdout;
+
+    /**
+     * Returns the root of the tree, the apex predator.
+     * 
+     * @return
+     * The root of the tree.
+     */
+    public OrganismNode getRoot() {
+        return root;
+    }
+
+    /**
+     * Returns the tree's version, which every successful add or remove increases by one.
+     * 
+     * @return
+     * The number of changes made since the tree was constructed or loaded.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the cache that listPrey, listFoodChain, listAllPlants and printOrganismTree results are kept in.
+     * 
+     * @return
+     * The cache, or null if results are not cached.
+     */
+    public QueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Sets the cache for query results, so repeated queries at the same organism are answered from memory until
+     * the tree changes.
+     * 
+     * @param queryCache
+     * The cache, or null to stop caching. It must not be shared with another tree.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * Later queries, through the tree or any of its sessions, use queryCache.
+     */
+    public void setQueryCache(QueryCache queryCache) {
+        this.queryCache = queryCache;
+    }
+
+    /**
+     * Returns the listener notified of changes to the tree.
+     * 
+     * @return
+     * The listener, or null if there is none.
+     */
+    public MutationListener getMutationListener() {
+        return listener;
+    }
+
+    /**
+     * Sets the listener notified after each successful add or remove, replacing any previous listener.
+     * 
+     * @param listener
+     * The listener, or null to stop notifying.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * Every later successful add or remove, through the tree or any of its sessions, is reported to listener.
+     */
+    public void setMutationListener(MutationListener listener) {
+        long stamp = lock.writeLock();
+        try {
+            this.listener = listener;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
 
     /**
      * Returns the cursor.
@@ -35,13 +148,45 @@ public class OrganismTree {
      * @custom.precondition
      * apexPredator is not null and apexPredator is not a plant.
      * @custom.postcondition
-     * This OrganismTree has been initialized with apexPredator as its root and cursor.
+     * This OrganismTree has been initialized with apexPredator as its root and cursor, every organism under apexPredator has been indexed by name, and every node's cached aggregates are up to date.
      */
     public OrganismTree(OrganismNode apexPredator) throws IsPlantException{
         if (apexPredator.getIsPlant()) throw new IsPlantException("Apex Predator must be an animal.");
 
         root = apexPredator;
         cursor = root;
+        OrganismNode.refreshSubtreeAggregates(root);
+        indexSubtree(root);
+    }
+
+    /**
+     * Constructs an OrganismTree over a snapshot whose nodes are materialized lazily.
+     * Only the apex predator is indexed up front; other organisms are indexed as the snapshot materializes them.
+     * 
+     * @param apexPredator
+     * The apex predator, loaded from the snapshot.
+     * @param source
+     * The snapshot the nodes are loaded from.
+     */
+    OrganismTree(OrganismNode apexPredator, OrganismTreeSnapshot.Source source) {
+        root = apexPredator;
+        cursor = root;
+        snapshotSource = source;
+        indexLoaded(root);
+    }
+
+    /**
+     * Opens a new session with its own cursor, starting at the root.
+     * 
+     * @return
+     * The new session.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * A session whose cursor is at the root has been returned. Sessions may be used from different threads at the same time.
+     */
+    public OrganismSession openSession() {
+        return new OrganismSession(this);
     }
 
     /**
@@ -69,16 +214,184 @@ public class OrganismTree {
      * The cursor will be moved to the child with the given name.
      */
     public void moveCursor(String name) throws IllegalArgumentException{
+        cursor = child(cursor, name);
+    }
 
-        if (cursor.getLeft() != null && cursor.getLeft().getName().equals(name)){
-            cursor = cursor.getLeft();
-        } else if (cursor.getMiddle() != null && cursor.getMiddle().getName().equals(name)){
-            cursor = cursor.getMiddle();
-        } else if (cursor.getRight() != null && cursor.getRight().getName().equals(name)){
-            cursor = cursor.getRight();
-        } else{
-            throw new IllegalArgumentException("ERROR: This prey does not exist for this predator.");
+    /**
+     * Moves the cursor to the child with the given name, reporting a missing child as a result instead of an exception.
+     * 
+     * @param name
+     * The name of the child to move the cursor to.
+     * @return
+     * OK if the cursor moved, NOT_FOUND if the given name does not match any of the cursor's children.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * If OK is returned, the cursor has been moved to the child with the given name; otherwise it has not moved.
+     */
+    public OrganismResult tryMoveCursor(String name){
+        OrganismNode found = findChild(cursor, name);
+        if (found == null) {
+            return OrganismResult.NOT_FOUND;
+        }
+        cursor = found;
+        return OrganismResult.OK;
+    }
+
+    /**
+     * Returns the child of the given node with the given name.
+     * 
+     * @param at
+     * The node whose children are searched.
+     * @param name
+     * The name of the child.
+     * @return
+     * The child with the given name.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the node's children.
+     */
+    OrganismNode child(OrganismNode at, String name) throws IllegalArgumentException{
+        OrganismNode found = findChild(at, name);
+        if (found == null) {
+            throw new IllegalArgumentException(OrganismResult.NOT_FOUND.getMessage());
+        }
+        return found;
+    }
+
+    /**
+     * Returns the child of the given node with the given name, or null if there is none.
+     * 
+     * @param at
+     * The node whose children are searched.
+     * @param name
+     * The name of the child.
+     * @return
+     * The child with the given name, or null.
+     */
+    OrganismNode findChild(OrganismNode at, String name){
+        // Looked up under the lock: a name no organism in the tree holds may be collected and its id reused, but not
+        // by an organism added to this tree while the lock keeps writers out.
+        return read(() -> {
+            int nameId = NameDictionary.shared().lookup(name);
+            return nameId == NameDictionary.NONE ? null : childWithNameId(at, nameId);
+        });
+    }
+
+    /**
+     * Returns the child of the given node whose name has the given id.
+     * 
+     * @param at
+     * The node whose children are searched.
+     * @param nameId
+     * The exact name id.
+     * @return
+     * The child, or null if no child has that name.
+     */
+    private static OrganismNode childWithNameId(OrganismNode at, int nameId) {
+        OrganismNode left = at.getLeft(), middle = at.getMiddle(), right = at.getRight();
+        if (left != null && left.getNameId() == nameId) return left;
+        if (middle != null && middle.getNameId() == nameId) return middle;
+        if (right != null && right.getNameId() == nameId) return right;
+        return null;
+    }
+
+    /**
+     * Moves the cursor directly to the organism with the given name, anywhere in the tree.
+     * 
+     * @param name
+     * The name of the organism to move the cursor to.
+     * @throws IllegalArgumentException
+     * If no organism in the tree has the given name.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The cursor will be moved to the organism with the given name. If several organisms share the name, the one that was added first is chosen.
+     * For a tree loaded from a snapshot, organisms the cursor has not reached yet are located by scanning the snapshot.
+     */
+    public void jumpCursor(String name) throws IllegalArgumentException{
+        cursor = find(name);
+    }
+
+    /**
+     * Returns the organism with the given name, anywhere in the tree.
+     * 
+     * @param name
+     * The name of the organism.
+     * @return
+     * The organism with the given name.
+     * @throws IllegalArgumentException
+     * If no organism in the tree has the given name.
+     */
+    OrganismNode find(String name) throws IllegalArgumentException{
+        OrganismNode[] nodes = nameIndex.get(name);
+        if (nodes != null) {
+            for (OrganismNode node : nodes) {
+                if (isAttached(node)) {
+                    return node;
+                }
+            }
+        }
+        OrganismNode found = snapshotSource == null ? null : snapshotSource.find(root, name);
+        if (found == null) {
+            throw new IllegalArgumentException("ERROR: This organism does not exist in the food pyramid.");
         }
+        return found;
+    }
+
+    /**
+     * Adds a single organism that has just been materialized from a snapshot to the name index.
+     * 
+     * @param node
+     * The organism to index.
+     */
+    void indexLoaded(OrganismNode node) {
+        nameIndex.merge(node.getName(), new OrganismNode[]{ node }, OrganismTree::appendIndexed);
+    }
+
+    /**
+     * Adds every organism in the subtree rooted at start to the name index.
+     * 
+     * @param start
+     * The root of the subtree to index.
+     */
+    private void indexSubtree(OrganismNode start) {
+        OrganismTraversal.preorder(start, (node, depth) -> {
+            indexLoaded(node);
+            return OrganismVisitor.Result.CONTINUE;
+        });
+    }
+
+    /**
+     * Removes every organism in the subtree rooted at start from the name index.
+     * Snapshot nodes whose prey were never materialized are not descended into, since their prey were never indexed.
+     * 
+     * @param start
+     * The root of the subtree to remove from the index.
+     */
+    private void unindexSubtree(OrganismNode start) {
+        OrganismTraversal.preorder(start, (node, depth) -> {
+            nameIndex.computeIfPresent(node.getName(), (name, nodes) -> {
+                for (int i = 0; i < nodes.length; i++) {
+                    if (nodes[i] == node) {
+                        if (nodes.length == 1) {
+                            return null;
+                        }
+                        OrganismNode[] rest = new OrganismNode[nodes.length - 1];
+                        System.arraycopy(nodes, 0, rest, 0, i);
+                        System.arraycopy(nodes, i + 1, rest, i, rest.length - i);
+                        return rest;
+                    }
+                }
+                return nodes;
+            });
+            return node.hasLoadedChildren() ? OrganismVisitor.Result.CONTINUE : OrganismVisitor.Result.SKIP_CHILDREN;
+        });
+    }
+
+    private static OrganismNode[] appendIndexed(OrganismNode[] nodes, OrganismNode[] added) {
+        OrganismNode[] all = Arrays.copyOf(nodes, nodes.length + 1);
+        all[nodes.length] = added[0];
+        return all;
     }
 
     /**
@@ -94,18 +407,33 @@ public class OrganismTree {
      * The string representation of the cursor's prey will be returned.
      */
     public String listPrey() throws IsPlantException{
-        if (cursor.getIsPlant()) throw new IsPlantException("Cursor is a plant.");
-        OrganismNode right = cursor.getRight(), left = cursor.getLeft(), mid = cursor.getMiddle();
-        String temp = "";
-        if (right != null){
-            temp = cursor.getName() + " -> " + left.getName() + ", " + mid.getName() + ", "  + right.getName();
-        } else if (mid != null){
-            temp = cursor.getName() + " -> " + left.getName() + ", " + mid.getName();
-        } else if (left != null){
-            temp = cursor.getName() + " -> " + left.getName();
-        }
+        return listPrey(cursor);
+    }
 
-        return temp;
+    /**
+     * Returns a string representation of the prey of the given node.
+     * 
+     * @param at
+     * The predator whose prey are listed.
+     * @return
+     * A string representation of the prey of the node.
+     * @throws IsPlantException
+     * If the node is a plant.
+     */
+    String listPrey(OrganismNode at) throws IsPlantException{
+        if (at.getIsPlant()) throw new IsPlantException("Cursor is a plant.");
+        return cached(QueryCache.Query.PREY, at, () -> read(() -> {
+            OrganismNode right = at.getRight(), left = at.getLeft(), mid = at.getMiddle();
+            String temp = "";
+            if (right != null){
+                temp = at.getName() + " -> " + left.getName() + ", " + mid.getName() + ", "  + right.getName();
+            } else if (mid != null){
+                temp = at.getName() + " -> " + left.getName() + ", " + mid.getName();
+            } else if (left != null){
+                temp = at.getName() + " -> " + left.getName();
+            }
+            return temp;
+        }));
     }
 
     /**
@@ -119,53 +447,85 @@ public class OrganismTree {
      * The string representation of the food chain from the apex predator to the cursor will be returned.
      */
     public String listFoodChain() {
-        OrganismNode nameToFind = cursor;
-        String path = SearchListFoodChain(root, "", nameToFind); 
-    
-        if (path != null) {
-            return path.substring(2); 
-        } else {
-            return "Cursor not found in the tree.";
-        }
+        return listFoodChain(cursor);
+    }
+
+    /**
+     * Returns a string representation of the food chain from the apex predator to the given node.
+     * 
+     * @param at
+     * The last organism in the chain.
+     * @return
+     * A string representation of the food chain.
+     */
+    String listFoodChain(OrganismNode at) {
+        return cached(QueryCache.Query.FOOD_CHAIN, at, () -> read(() -> {
+            int depth = 0, length = 0;
+            OrganismNode top = null;
+            for (OrganismNode node = at; node != null; node = node.getParent()){
+                depth++;
+                length += node.getName().length() + 3;
+                top = node;
+            }
+
+            if (top != root) {
+                return "Cursor not found in the tree.";
+            }
+
+            OrganismNode[] chain = new OrganismNode[depth];
+            OrganismNode node = at;
+            for (int i = depth - 1; i >= 0; i--){
+                chain[i] = node;
+                node = node.getParent();
+            }
+
+            StringBuilder path = new StringBuilder(length);
+            path.append(' ').append(chain[0].getName());
+            for (int i = 1; i < depth; i++){
+                path.append("-> ").append(chain[i].getName());
+            }
+            return path.toString();
+        }));
     }
-    
+
     /**
-     * Helper method for listFoodChain().
+     * Searches the subtree rooted at currentNode for toFind and returns the food chain leading to it.
      * 
      * @param currentNode
-     * The current node.
+     * The root of the subtree to search.
      * @param path
      * The path from the apex predator to the current node.
      * @param toFind
      * The node to find.
      * @return
-     * The path from the apex predator to the node to find.
+     * The path from the apex predator to the node to find, or null if it is not in the subtree.
      */
     public String SearchListFoodChain(OrganismNode currentNode, String path, OrganismNode toFind) {
-        if (currentNode == toFind) {
-            return path + "-> " + currentNode.getName(); 
-        }
-    
-        if (currentNode == null) {
-            return null; 
-        }
-    
-        String leftPath = SearchListFoodChain(currentNode.getLeft(), path + "-> " + currentNode.getName(), toFind);
-        if (leftPath != null) {
-            return leftPath; 
-        }
-    
-        String middlePath = SearchListFoodChain(currentNode.getMiddle(), path + "-> " + currentNode.getName(), toFind);
-        if (middlePath != null) {
-            return middlePath; 
-        }
-    
-        String rightPath = SearchListFoodChain(currentNode.getRight(), path + "-> " + currentNode.getName(), toFind);
-        if (rightPath != null) {
-            return rightPath;
-        }
-    
-        return null; 
+        return read(() -> {
+            OrganismNode[][] chain = { new OrganismNode[16] };
+            int[] found = { -1 };
+            OrganismTraversal.preorder(currentNode, (node, depth) -> {
+                if (depth >= chain[0].length) {
+                    chain[0] = Arrays.copyOf(chain[0], chain[0].length * 2);
+                }
+                chain[0][depth] = node;
+                if (node == toFind) {
+                    found[0] = depth;
+                    return OrganismVisitor.Result.TERMINATE;
+                }
+                return OrganismVisitor.Result.CONTINUE;
+            });
+
+            if (found[0] < 0) {
+                return null;
+            }
+
+            StringBuilder result = new StringBuilder(path);
+            for (int i = 0; i <= found[0]; i++) {
+                result.append("-> ").append(chain[0][i].getName());
+            }
+            return result.toString();
+        });
     }
 
     /**
@@ -179,41 +539,155 @@ public class OrganismTree {
      * The string representation of all the plants in the tree that support the cursor will be returned.
      */
     public String listAllPlants() {
-        String plantList = printPlantsHelper(cursor, "");
-        if (plantList.isEmpty()) {
-            return "No plants found supporting the cursor.";
-        } else {
-            return plantList.substring(1);
-        }
+        return listAllPlants(cursor);
+    }
+
+    /**
+     * Returns a string representation of all the plants that support the given node.
+     * 
+     * @param at
+     * The root of the subtree to search.
+     * @return
+     * A string representation of all the plants that support the node.
+     */
+    String listAllPlants(OrganismNode at) {
+        String plants = cached(QueryCache.Query.PLANTS, at, () -> read(() -> {
+            StringBuilder plantList = new StringBuilder();
+            appendPlants(new OrganismTraversal.Walk(at), plantList, 0, Integer.MAX_VALUE);
+            return plantList.toString();
+        }));
+        return plants.isEmpty() ? "No plants found supporting the cursor." : plants;
+    }
+
+    /**
+     * Writes the names of all the plants that support the cursor to the given sink, separated by commas.
+     * 
+     * @param out
+     * The sink to write the plant names to.
+     * @return
+     * The number of plants written.
+     * @throws IOException
+     * If the sink fails to accept the output.
+     * @throws ConcurrentModificationException
+     * If a list too long to render at once is changed while it is being written.
+     * @custom.precondition
+     * This OrganismTree has been instantiated and out is not null.
+     * @custom.postcondition
+     * The names of all the plants that support the cursor will have been appended to out.
+     */
+    public int listAllPlants(Appendable out) throws IOException {
+        return listAllPlants(cursor, out);
     }
-    
+
     /**
-     * Helper method for getAllPlants().
+     * Writes the names of all the plants that support the given node to the sink. The names are gathered a chunk at
+     * a time under a read lock, and each chunk is written to the sink after the lock is released.
      * 
-     * @param curNode
-     * The current node.
-     * @param temp
-     * The string representation of all the plants in the tree that support the cursor.
+     * @param at
+     * The root of the subtree to search.
+     * @param out
+     * The sink to write the plant names to.
+     * @return
+     * The number of plants written.
+     * @throws IOException
+     * If the sink fails to accept the output.
+     * @throws ConcurrentModificationException
+     * If the tree is changed between two chunks.
+     */
+    int listAllPlants(OrganismNode at, Appendable out) throws IOException {
+        QueryCache cache = queryCache;
+        if (cache != null && cache.admits(16L * at.getPlantCount())) {
+            // Every plant under at is listed, so its plant count is the number of names in the list, as long as both
+            // are read from the same version of the tree. The read lock keeps the optimistic read inside
+            // listAllPlants from ever falling back to a second read lock.
+            String plants;
+            int count;
+            long stamp = lock.readLock();
+            try {
+                plants = listAllPlants(at);
+                count = at.getPlantCount();
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            if (count > 0) {
+                out.append(plants);
+            }
+            return count;
+        }
+        if (out instanceof StringBuilder) {
+            long stamp = lock.readLock();
+            try {
+                return appendPlants(new OrganismTraversal.Walk(at), (StringBuilder) out, 0, Integer.MAX_VALUE);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+        // The list is rendered a chunk at a time under the lock and each chunk written after it, so a slow sink never
+        // holds up writers and a long list is never held in memory whole.
+        OrganismTraversal.Walk walk = new OrganismTraversal.Walk(at);
+        StringBuilder chunk = new StringBuilder();
+        int count = 0;
+        boolean first = true;
+        long expected = 0;
+        do {
+            long stamp = lock.readLock();
+            try {
+                expected = checkUnchanged(first, expected);
+                count = appendPlants(walk, chunk, count, STREAM_CHUNK_CHARS);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            first = false;
+            out.append(chunk);
+            chunk.setLength(0);
+        } while (walk.hasNext());
+        return count;
+    }
+
+    /**
+     * Appends plant names from the walk to the buffer, under a read lock, until the walk ends or the buffer holds
+     * limit characters.
+     *
+     * @param count
+     * The number of plants already listed, so the next name knows whether it needs a comma.
      * @return
-     * The string representation of all the plants in the tree that support the cursor.
+     * The number of plants listed, including count.
      */
-    private String printPlantsHelper(OrganismNode curNode, String temp) {
-        if (curNode == null) { 
-            return "";
+    private static int appendPlants(OrganismTraversal.Walk walk, StringBuilder out, int count, int limit) {
+        while (walk.hasNext() && out.length() < limit) {
+            OrganismNode node = walk.next();
+            if (node.getIsPlant()) {
+                if (count > 0) {
+                    out.append(',');
+                }
+                out.append(node.getName());
+                count++;
+            } else if (node.getPlantCount() > 0) {
+                walk.expand(node);
+            }
         }
-    
-        if (curNode.getIsPlant()) {
-            temp += "," + curNode.getName();
+        return count;
+    }
+
+    /**
+     * Checks, under the read lock, that a listing streamed in chunks still reads the version it started on.
+     *
+     * @param first
+     * True for the first chunk, whose version every later chunk is checked against.
+     * @param expected
+     * The version the first chunk read.
+     * @return
+     * The version the listing reads.
+     * @throws ConcurrentModificationException
+     * If the tree changed since the first chunk.
+     */
+    private long checkUnchanged(boolean first, long expected) {
+        if (!first && version != expected) {
+            throw new ConcurrentModificationException("The food pyramid was modified while it was being streamed.");
         }
-    
-        temp += printPlantsHelper(curNode.getLeft(), "");
-        temp += printPlantsHelper(curNode.getMiddle(), "");
-        temp += printPlantsHelper(curNode.getRight(), "");
-    
-        return temp;
+        return version;
     }
-    
-    
+
     /**
      * Prints the tree with the cursor as the root.
      * 
@@ -223,8 +697,65 @@ public class OrganismTree {
      * The tree will be printed to the console.
      */
     public void printOrganismTree(){
-        OrganismNode node = cursor;
-        printOrganismTreeHelper("", node);
+        Writer out = stdout();
+        try {
+            printOrganismTree(out);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns the buffered writer every print to the console shares, made anew only when System.out is replaced.
+     */
+    private static synchronized Writer stdout() {
+        if (stdoutTarget != System.out) {
+            stdoutTarget = System.out;
+            stdout = new BufferedWriter(new OutputStreamWriter(stdoutTarget), 1 << 16);
+        }
+        return stdout;
+    }
+
+    /**
+     * Writes the tree with the cursor as the root to the given sink.
+     * 
+     * @param out
+     * The sink to write the tree to. It is not flushed or closed.
+     * @throws IOException
+     * If the sink fails to accept the output.
+     * @throws ConcurrentModificationException
+     * If a tree too large to render at once is changed while it is being written.
+     * @custom.precondition
+     * This OrganismTree has been instantiated and out is not null.
+     * @custom.postcondition
+     * The tree will have been appended to out, one organism per line.
+     */
+    public void printOrganismTree(Appendable out) throws IOException {
+        printOrganismTree(cursor, out);
+    }
+
+    /**
+     * Writes the tree with the given node as the root to the sink, a chunk at a time unless the query cache holds it.
+     * 
+     * @param at
+     * The root of the subtree to print.
+     * @param out
+     * The sink to write the tree to.
+     * @throws IOException
+     * If the sink fails to accept the output.
+     */
+    void printOrganismTree(OrganismNode at, Appendable out) throws IOException {
+        QueryCache cache = queryCache;
+        if (cache == null || !cache.admits(16L * at.getSubtreeSize())) {
+            printOrganismTreeHelper(out, "", at);
+            return;
+        }
+        out.append(cached(QueryCache.Query.PYRAMID, at, () -> {
+            StringBuilder pyramid = new StringBuilder();
+            renderOrganismTree(pyramid, "", at);
+            return pyramid.toString();
+        }));
     }
 
     /**
@@ -236,25 +767,115 @@ public class OrganismTree {
      * The node to print.
      */
     public void printOrganismTreeHelper(String indents, OrganismNode node){
-        String temp = "-";
-        if (node.getIsPlant()){
-            System.out.println(indents + temp + node.getName());
+        Writer out = stdout();
+        try {
+            printOrganismTreeHelper(out, indents, node);
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Helper method for printOrganismTree(Appendable). The tree is rendered a chunk at a time under the read lock and
+     * each chunk is written to out after the lock is released, so a slow sink never holds up writers and a large tree
+     * is never held in memory whole. A StringBuilder sink is filled under a single hold of the lock.
+     * 
+     * @param out
+     * The sink to write the tree to.
+     * @param prefix
+     * The text to print at the start of every line, before the indents.
+     * @param start
+     * The root of the subtree to print.
+     * @throws IOException
+     * If the sink fails to accept the output.
+     * @throws ConcurrentModificationException
+     * If the tree is changed between two chunks.
+     */
+    private void printOrganismTreeHelper(Appendable out, String prefix, OrganismNode start) throws IOException {
+        if (out instanceof StringBuilder) {
+            renderOrganismTree((StringBuilder) out, prefix, start);
             return;
-        } else {
-            System.out.println(indents + "|- " + node.getName());
         }
+        OrganismTraversal.Walk walk = new OrganismTraversal.Walk(start);
+        StringBuilder chunk = new StringBuilder();
+        char[] indentBuffer = new char[0];
+        boolean first = true;
+        long expected = 0;
+        do {
+            long stamp = lock.readLock();
+            try {
+                expected = checkUnchanged(first, expected);
+                indentBuffer = renderOrganismTree(walk, chunk, prefix, indentBuffer, STREAM_CHUNK_CHARS);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            first = false;
+            out.append(chunk);
+            chunk.setLength(0);
+        } while (walk.hasNext());
+    }
 
-        if (node.getLeft() != null){
-            printOrganismTreeHelper(indents + "\t", node.getLeft());
+    /**
+     * Appends the tree with the given node as the root to the buffer, under a read lock.
+     * 
+     * @param out
+     * The buffer to append the tree to.
+     * @param prefix
+     * The text to print at the start of every line, before the indents.
+     * @param start
+     * The root of the subtree to print.
+     */
+    private void renderOrganismTree(StringBuilder out, String prefix, OrganismNode start) {
+        long stamp = lock.readLock();
+        try {
+            renderOrganismTree(new OrganismTraversal.Walk(start), out, prefix, new char[0], Integer.MAX_VALUE);
+        } finally {
+            lock.unlockRead(stamp);
         }
+    }
 
-        if (node.getMiddle() != null){
-            printOrganismTreeHelper(indents + "\t", node.getMiddle());
+    /**
+     * Appends one line per organism from the walk to the buffer, until the walk ends or the buffer holds limit
+     * characters. The caller holds the read lock.
+     * 
+     * @return
+     * The indentation buffer to pass to the next call.
+     */
+    private static char[] renderOrganismTree(OrganismTraversal.Walk walk, StringBuilder out, String prefix, char[] indentBuffer, int limit) {
+        while (walk.hasNext() && out.length() < limit) {
+            OrganismNode node = walk.next();
+            out.append(prefix);
+            indentBuffer = appendIndents(out, indentBuffer, walk.depth());
+            if (node.getIsPlant()){
+                out.append('-').append(node.getName()).append(LINE_SEPARATOR);
+            } else {
+                out.append("|- ").append(node.getName()).append(LINE_SEPARATOR);
+                walk.expand(node);
+            }
         }
+        return indentBuffer;
+    }
 
-        if (node.getRight() != null){
-            printOrganismTreeHelper(indents + "\t", node.getRight());
+    /**
+     * Appends the given number of tab characters to the buffer from an indentation buffer reused for the whole print.
+     * 
+     * @param out
+     * The buffer to append to.
+     * @param indentBuffer
+     * The buffer of tabs used so far.
+     * @param depth
+     * The number of tabs to write.
+     * @return
+     * The buffer to use for the next line, grown if it was too short.
+     */
+    private static char[] appendIndents(StringBuilder out, char[] indentBuffer, int depth) {
+        if (depth > indentBuffer.length) {
+            indentBuffer = new char[Math.max(depth, indentBuffer.length * 2)];
+            Arrays.fill(indentBuffer, '\t');
         }
+        out.append(indentBuffer, 0, depth);
+        return indentBuffer;
     }
 
     /**
@@ -268,47 +889,312 @@ public class OrganismTree {
      * True will be returned if the cursor has three children, false otherwise.
      */
     public boolean isFull(){
-        if (cursor.getLeft() != null && cursor.getMiddle() != null && cursor.getRight() != null){
-            return true;
-        }
-        return false;
+        return isFull(cursor);
     }
 
     /**
-     * Adds an animal child to the tree.
+     * Checks if the given node has three children.
      * 
-     * @param name
-     * The name of the animal child.
-     * @param isHerbivore
-     * True if the animal child is a herbivore, false otherwise.
-     * @param isCarnivore
-     * True if the animal child is a carnivore, false otherwise.
-     * @throws IllegalArgumentException
-     * If the given name is already taken by a sibling.
-     * @throws PositionNotAvailableException
-     * If the cursor already has three children.
-     * @throws DietMismatchException
-     * If the animal child's diet is incompatible with the cursor's diet.
-     * @throws IsPlantException
-     * If the cursor is a plant.
+     * @param at
+     * The node to check.
+     * @return
+     * True if the node has three children, false otherwise.
+     */
+    boolean isFull(OrganismNode at){
+        return read(() -> at.getLeft() != null && at.getMiddle() != null && at.getRight() != null);
+    }
+
+    /**
+     * Counts the organisms under the cursor, including the cursor, from the cached subtree size.
+     * 
+     * @return
+     * The number of organisms in the cursor's subtree.
      * @custom.precondition
      * This OrganismTree has been instantiated.
      * @custom.postcondition
-     * The animal child will be added to the tree.
+     * The size of the cursor's subtree will be returned in constant time.
      */
-    public void addAnimalChild(String name, boolean isHerbivore, boolean isCarnivore) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException{
-        if ((cursor.getLeft() != null && cursor.getLeft().getName().equals(name)) || (cursor.getMiddle() != null && cursor.getMiddle().getName().equals(name)) || (cursor.getRight() != null && cursor.getRight().getName().equals(name))){
-            throw new IllegalArgumentException("ERROR: This prey already exists for this predator.");
-        }
+    public int countOrganisms(){
+        return countOrganisms(cursor);
+    }
 
-        OrganismNode newNode = new OrganismNode(name, false, isHerbivore, isCarnivore, null, null, null);
-        cursor.addPrey(newNode);
+    int countOrganisms(OrganismNode at){
+        return read(at::getSubtreeSize);
     }
 
     /**
-     * Adds a plant child to the tree.
+     * Counts the plants supporting the cursor, from the cached plant count.
      * 
-     * @param name
+     * @return
+     * The number of plants in the cursor's subtree, including the cursor if it is a plant.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The number of plants supporting the cursor will be returned in constant time.
+     */
+    public int countPlants(){
+        return countPlants(cursor);
+    }
+
+    int countPlants(OrganismNode at){
+        return read(at::getPlantCount);
+    }
+
+    /**
+     * Returns the height of the subtree under the cursor, from the cached height.
+     * 
+     * @return
+     * The number of levels in the cursor's subtree, 1 if the cursor has no prey.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The height of the cursor's subtree will be returned in constant time.
+     */
+    public int subtreeHeight(){
+        return subtreeHeight(cursor);
+    }
+
+    int subtreeHeight(OrganismNode at){
+        return read(at::getHeight);
+    }
+
+    /**
+     * Returns a lazy stream of the cursor and every organism under it, in preorder.
+     * 
+     * @return
+     * The stream. It is sized from the cached subtree size and splits for parallel use.
+     * @throws ConcurrentModificationException
+     * From the stream's terminal operation, if the tree is modified while the stream runs.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * Nothing has been traversed; organisms are visited only as the stream consumes them.
+     */
+    public Stream<OrganismNode> streamSubtree(){
+        return streamSubtree(cursor);
+    }
+
+    Stream<OrganismNode> streamSubtree(OrganismNode at){
+        return failFast(() -> OrganismSpliterator.subtree(at));
+    }
+
+    /**
+     * Returns a lazy stream of the plants supporting the cursor, in the order listAllPlants lists them.
+     * 
+     * @return
+     * The stream. It is sized from the cached plant count, skips subtrees without plants and splits for parallel use.
+     * @throws ConcurrentModificationException
+     * From the stream's terminal operation, if the tree is modified while the stream runs.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * Nothing has been traversed; organisms are visited only as the stream consumes them.
+     */
+    public Stream<OrganismNode> streamPlants(){
+        return streamPlants(cursor);
+    }
+
+    Stream<OrganismNode> streamPlants(OrganismNode at){
+        return failFast(() -> OrganismSpliterator.plants(at));
+    }
+
+    /**
+     * Returns a lazy stream of the food chain from the apex predator down to the cursor.
+     * 
+     * @return
+     * The stream.
+     * @throws ConcurrentModificationException
+     * From the stream's terminal operation, if the tree is modified while the stream runs.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * Nothing has been traversed; the chain is collected when the stream starts.
+     */
+    public Stream<OrganismNode> streamFoodChain(){
+        return streamFoodChain(cursor);
+    }
+
+    Stream<OrganismNode> streamFoodChain(OrganismNode at){
+        return failFast(() -> OrganismSpliterator.chain(at));
+    }
+
+    /**
+     * Streams organisms without holding a lock while the stream runs. Every step is validated against an optimistic
+     * read stamp taken when the stream was created, so an add or remove in the meantime surfaces as a
+     * ConcurrentModificationException instead of organisms from a half-edited tree.
+     */
+    private Stream<OrganismNode> failFast(Supplier<Spliterator<OrganismNode>> source) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp == 0) {
+            // A writer holds the lock; wait for it to finish, then start from the tree it left.
+            stamp = lock.tryConvertToOptimisticRead(lock.readLock());
+        }
+        return StreamSupport.stream(new FailFastSpliterator(source.get(), stamp), false);
+    }
+
+    /**
+     * A spliterator that hands an organism to the stream only once it has checked that the tree was not modified
+     * since the stream's stamp was taken.
+     */
+    private final class FailFastSpliterator implements Spliterator<OrganismNode> {
+        private final Spliterator<OrganismNode> walk;
+        private final long stamp;
+        private OrganismNode next;
+
+        FailFastSpliterator(Spliterator<OrganismNode> walk, long stamp) {
+            this.walk = walk;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super OrganismNode> action) {
+            boolean advanced;
+            try {
+                advanced = walk.tryAdvance(node -> next = node);
+            } catch (RuntimeException e) {
+                check();
+                throw e;
+            }
+            check();
+            if (!advanced) {
+                return false;
+            }
+            OrganismNode node = next;
+            next = null;
+            action.accept(node);
+            return true;
+        }
+
+        @Override
+        public Spliterator<OrganismNode> trySplit() {
+            Spliterator<OrganismNode> split;
+            try {
+                split = walk.trySplit();
+            } catch (RuntimeException e) {
+                check();
+                throw e;
+            }
+            check();
+            return split == null ? null : new FailFastSpliterator(split, stamp);
+        }
+
+        @Override
+        public long estimateSize() {
+            return walk.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            return walk.characteristics();
+        }
+
+        private void check() {
+            if (!lock.validate(stamp)) {
+                throw new ConcurrentModificationException("The food pyramid was modified while it was being streamed.");
+            }
+        }
+    }
+
+    /**
+     * Computes counts and summaries of the subtree under the cursor in parallel on the common ForkJoinPool.
+     * 
+     * @return
+     * The statistics of the subtree under the cursor.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The statistics of the cursor and everything it preys on, directly or indirectly, will be returned.
+     */
+    public OrganismStats aggregateStats() {
+        return aggregateStats(cursor);
+    }
+
+    /**
+     * Computes counts and summaries of the subtree under the given node, holding the read lock while workers run.
+     * 
+     * @param at
+     * The root of the subtree.
+     * @return
+     * The statistics of the subtree.
+     */
+    OrganismStats aggregateStats(OrganismNode at) {
+        long stamp = lock.readLock();
+        try {
+            return OrganismStats.of(at);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Creates a population simulation over a copy of the whole tree, holding the read lock while it is copied.
+     *
+     * @return
+     * A simulation of every organism in the tree, at step 0.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The tree is unchanged, and later edits to it do not affect the returned simulation.
+     */
+    public PopulationSimulation simulatePopulation() {
+        long stamp = lock.readLock();
+        try {
+            return new PopulationSimulation(root);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Builds an index for constant-time food chain and lowest common predator queries over a copy of the whole
+     * tree, holding the read lock while it is built.
+     *
+     * @return
+     * An index of every organism in the tree.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The tree is unchanged, and later edits to it do not affect the returned index.
+     */
+    public AncestryIndex ancestryIndex() {
+        long stamp = lock.readLock();
+        try {
+            return new AncestryIndex(root);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Adds an animal child to the tree.
+     * 
+     * @param name
+     * The name of the animal child.
+     * @param isHerbivore
+     * True if the animal child is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the animal child is a carnivore, false otherwise.
+     * @throws IllegalArgumentException
+     * If the given name is already taken by a sibling.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three children.
+     * @throws DietMismatchException
+     * If the animal child's diet is incompatible with the cursor's diet.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The animal child will be added to the tree.
+     */
+    public void addAnimalChild(String name, boolean isHerbivore, boolean isCarnivore) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException{
+        tryAddChild(cursor, name, false, isHerbivore, isCarnivore).throwIfRejected(true);
+    }
+
+    /**
+     * Adds a plant child to the tree.
+     * 
+     * @param name
      * The name of the plant child.
      * @throws IllegalArgumentException
      * If the given name is already taken by a sibling.
@@ -324,12 +1210,120 @@ public class OrganismTree {
      * The plant child will be added to the tree.
      */
     public void addPlantChild(String name) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException{
-        if ((cursor.getLeft() != null && cursor.getLeft().getName().equals(name)) || (cursor.getMiddle() != null && cursor.getMiddle().getName().equals(name)) || (cursor.getRight() != null && cursor.getRight().getName().equals(name))){
-            throw new IllegalArgumentException("ERROR: This prey already exists for this predator.");
-        }
+        tryAddChild(cursor, name, true, false, false).throwIfRejected(true);
+    }
+
+    /**
+     * Adds an animal child to the cursor, reporting a rejection as a result instead of an exception.
+     * 
+     * @param name
+     * The name of the animal child.
+     * @param isHerbivore
+     * True if the animal child is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the animal child is a carnivore, false otherwise.
+     * @return
+     * OK if the child was added, otherwise the reason addAnimalChild would have thrown.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * If OK is returned, the animal child has been added to the tree; otherwise the tree has not changed.
+     */
+    public OrganismResult tryAddAnimalChild(String name, boolean isHerbivore, boolean isCarnivore){
+        return tryAddChild(cursor, name, false, isHerbivore, isCarnivore);
+    }
 
-        OrganismNode newNode = new OrganismNode(name, true, false, false, null, null, null);
-        cursor.addPrey(newNode);
+    /**
+     * Adds a plant child to the cursor, reporting a rejection as a result instead of an exception.
+     * 
+     * @param name
+     * The name of the plant child.
+     * @return
+     * OK if the child was added, otherwise the reason addPlantChild would have thrown.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * If OK is returned, the plant child has been added to the tree; otherwise the tree has not changed.
+     */
+    public OrganismResult tryAddPlantChild(String name){
+        return tryAddChild(cursor, name, true, false, false);
+    }
+
+    /**
+     * Adds a new node as prey of the given predator, under the write lock, reporting a rejection as a result.
+     * 
+     * @param at
+     * The predator.
+     * @param newNode
+     * The new prey node.
+     * @return
+     * OK if the node was added, DUPLICATE_NAME if a sibling has its name, otherwise the result of tryAddPrey.
+     */
+    OrganismResult tryAddChild(OrganismNode at, OrganismNode newNode){
+        return tryAddChild(at, newNode, newNode.getName(), newNode.getIsPlant(), newNode.getIsHerbivore(), newNode.getIsCarnivore());
+    }
+
+    /**
+     * Adds a new organism as prey of the given predator, under the write lock, reporting a rejection as a result.
+     * The node is only built, and its name only interned, once every check has passed.
+     * 
+     * @param at
+     * The predator.
+     * @param name
+     * The name of the new prey.
+     * @param isPlant
+     * True if the new prey is a plant, false otherwise.
+     * @param isHerbivore
+     * True if the new prey is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the new prey is a carnivore, false otherwise.
+     * @return
+     * OK if the organism was added, otherwise the same result tryAddChild(at, newNode) gives.
+     */
+    OrganismResult tryAddChild(OrganismNode at, String name, boolean isPlant, boolean isHerbivore, boolean isCarnivore){
+        return tryAddChild(at, null, name, isPlant, isHerbivore, isCarnivore);
+    }
+
+    /**
+     * Checks the duplicate name and addPrey rules against the predator, then links newNode, or a node built from the
+     * other arguments if it is null.
+     */
+    private OrganismResult tryAddChild(OrganismNode at, OrganismNode newNode, String name, boolean isPlant, boolean isHerbivore, boolean isCarnivore){
+        MutationListener notified = null;
+        long stamp = lock.writeLock();
+        try {
+            if (!isInPyramid(at)) {
+                return OrganismResult.NOT_IN_PYRAMID;
+            }
+            int nameId = NameDictionary.shared().lookup(name);
+            if (nameId != NameDictionary.NONE && childWithNameId(at, nameId) != null){
+                return OrganismResult.DUPLICATE_NAME;
+            }
+            OrganismResult result = at.checkPrey(isPlant);
+            if (!result.isOk()) {
+                return result;
+            }
+
+            if (newNode == null) {
+                newNode = new OrganismNode(name, isPlant, isHerbivore, isCarnivore, null, null, null);
+            }
+            OrganismNode.refreshSubtreeAggregates(newNode);
+            result = at.tryAddPrey(newNode);
+            if (result.isOk()) {
+                indexSubtree(newNode);
+                version++;
+                notified = listener;
+                if (notified != null) {
+                    notified.childAdded(at, newNode);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlockWrite(stamp);
+            if (notified != null) {
+                notified.afterMutation();
+            }
+        }
     }
 
     /**
@@ -342,20 +1336,507 @@ public class OrganismTree {
      * @custom.precondition
      * This OrganismTree has been instantiated.
      * @custom.postcondition
-     * The child with the given name will be removed from the tree.
+     * The child with the given name will be removed from the tree and its parent link cleared. The child and all of its prey are dropped from the name index, and the cached aggregates of the cursor and its predators are updated.
      */
     public void removeChild(String name) throws IllegalArgumentException{
-        if (cursor.getLeft() != null && cursor.getLeft().getName().equalsIgnoreCase(name)){
-            cursor.setLeft(cursor.getMiddle());
-            cursor.setMiddle(cursor.getRight());
-            cursor.setRight(null);
-        } else if (cursor.getMiddle() != null &&cursor.getMiddle().getName().equalsIgnoreCase(name)){
-            cursor.setMiddle(cursor.getRight());
-            cursor.setRight(null);
-        } else if (cursor.getRight() != null && cursor.getRight().getName().equalsIgnoreCase(name)){
-            cursor.setRight(null);
-        } else{
+        removeChild(cursor, name);
+    }
+
+    /**
+     * Removes the child with the given name from the tree, reporting a missing child as a result instead of an exception.
+     * 
+     * @param name
+     * The name of the child to remove.
+     * @return
+     * OK if the child was removed, NOT_FOUND if the given name does not match any of the cursor's children.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * If OK is returned, the child has been removed exactly as removeChild would; otherwise the tree has not changed.
+     */
+    public OrganismResult tryRemoveChild(String name){
+        return tryRemoveChild(cursor, name);
+    }
+
+    /**
+     * Removes the child with the given name from the given predator, under the write lock.
+     * 
+     * @param at
+     * The predator.
+     * @param name
+     * The name of the child to remove.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the predator's children.
+     */
+    void removeChild(OrganismNode at, String name) throws IllegalArgumentException{
+        OrganismResult result = tryRemoveChild(at, name);
+        if (result == OrganismResult.NOT_FOUND) {
             throw new IllegalArgumentException("Name does not reference a direct, valid child of cursor");
         }
+        if (!result.isOk()) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+    }
+
+    /**
+     * Removes the child with the given name from the given predator, under the write lock, reporting a missing child as a result.
+     * 
+     * @param at
+     * The predator.
+     * @param name
+     * The name of the child to remove.
+     * @return
+     * OK if the child was removed, NOT_IN_PYRAMID if the predator has been removed from the tree, NOT_FOUND otherwise.
+     */
+    OrganismResult tryRemoveChild(OrganismNode at, String name){
+        MutationListener notified = null;
+        OrganismNode removed;
+        long stamp = lock.writeLock();
+        try {
+            if (!isInPyramid(at)) {
+                return OrganismResult.NOT_IN_PYRAMID;
+            }
+            removed = unlinkChild(at, name);
+            if (removed == null){
+                return OrganismResult.NOT_FOUND;
+            }
+            unindexSubtree(removed);
+            notified = listener;
+            if (notified != null) {
+                notified.childRemoved(at, removed);
+            }
+            return OrganismResult.OK;
+        } finally {
+            lock.unlockWrite(stamp);
+            if (notified != null) {
+                notified.afterMutation();
+            }
+        }
+    }
+
+    /**
+     * Detaches the child with the given name from the cursor and returns it with all of its prey, so it can be
+     * grafted elsewhere.
+     * 
+     * @param name
+     * The name of the child to detach.
+     * @return
+     * The detached subtree's root, whose parent is now null.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the cursor's children.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The child has been unlinked in constant time and the aggregates of the cursor and its predators updated. The
+     * subtree keeps its name index entries, but jumpCursor skips them until the subtree is grafted back or discarded.
+     */
+    public OrganismNode detachChild(String name) throws IllegalArgumentException{
+        return detachChild(cursor, name);
+    }
+
+    /**
+     * Detaches the child with the given name from the given predator, under the write lock.
+     * 
+     * @param at
+     * The predator.
+     * @param name
+     * The name of the child to detach.
+     * @return
+     * The detached subtree's root.
+     * @throws IllegalArgumentException
+     * If the predator has been removed from the tree, or the given name does not match any of its children.
+     */
+    OrganismNode detachChild(OrganismNode at, String name) throws IllegalArgumentException{
+        MutationListener notified = null;
+        OrganismNode removed;
+        long stamp = lock.writeLock();
+        try {
+            if (!isInPyramid(at)) {
+                throw new IllegalArgumentException(OrganismResult.NOT_IN_PYRAMID.getMessage());
+            }
+            removed = unlinkChild(at, name);
+            if (removed == null){
+                throw new IllegalArgumentException("Name does not reference a direct, valid child of cursor");
+            }
+            detached.add(removed);
+            notified = listener;
+            if (notified != null) {
+                notified.childDetached(at, removed);
+            }
+            return removed;
+        } finally {
+            lock.unlockWrite(stamp);
+            if (notified != null) {
+                notified.afterMutation();
+            }
+        }
+    }
+
+    /**
+     * Grafts a subtree under the cursor. For a subtree detached from this tree only the rules at the splice point are
+     * checked: the cursor must be an animal with a free slot, no sibling may share the subtree root's name, and the
+     * cursor must eat the subtree root. Any other subtree must also obey the add rules throughout, exactly as if it
+     * had been built with addAnimalChild and addPlantChild.
+     * 
+     * @param subtree
+     * The root of the subtree, as returned by detachChild or built from new nodes.
+     * @throws IllegalArgumentException
+     * If subtree still has a predator, is the apex predator, contains the cursor, shares an organism with another
+     * pyramid, or has two prey of one predator with the same name, or if its root's name is taken by a sibling.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three children, or a predator in a new subtree has an empty slot before a prey.
+     * @throws DietMismatchException
+     * If the cursor does not eat the subtree root, or a predator in a new subtree does not eat one of its prey.
+     * @throws IsPlantException
+     * If the cursor is a plant, or a plant in a new subtree has prey.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The subtree is prey of the cursor and the aggregates of the cursor and its predators are updated. A subtree
+     * detached from this tree is relinked in constant time without touching the name index; any other subtree is
+     * checked and indexed node by node.
+     */
+    public void graft(OrganismNode subtree) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException{
+        graft(cursor, subtree);
+    }
+
+    /**
+     * Grafts a subtree under the given predator, under the write lock.
+     * 
+     * @param at
+     * The predator.
+     * @param subtree
+     * The root of the subtree.
+     * @throws IllegalArgumentException
+     * If subtree still has a predator, is the apex predator, contains at, shares an organism with another pyramid, or
+     * breaks the sibling name rule.
+     * @throws PositionNotAvailableException
+     * If the predator already has three children, or a new subtree leaves a slot empty before a prey.
+     * @throws DietMismatchException
+     * If the predator, or a predator in a new subtree, does not eat its prey.
+     * @throws IsPlantException
+     * If the predator, or a plant in a new subtree, has prey.
+     */
+    void graft(OrganismNode at, OrganismNode subtree) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException{
+        MutationListener notified = null;
+        OrganismResult result;
+        long stamp = lock.writeLock();
+        try {
+            if (subtree.getParent() != null || subtree == root) {
+                throw new IllegalArgumentException("ERROR: Only a detached subtree can be grafted.");
+            }
+            // A predator that does not lead up to the apex predator is inside a detached subtree, possibly this one.
+            if (!isAttached(at)) {
+                throw new IllegalArgumentException("ERROR: The cursor is not in the food pyramid.");
+            }
+            boolean own = detached.contains(subtree);
+            if (childWithNameId(at, subtree.getNameId()) != null) {
+                result = OrganismResult.DUPLICATE_NAME;
+            } else {
+                result = own ? OrganismResult.OK : checkNewSubtree(subtree);
+            }
+            if (result.isOk()) {
+                result = at.checkPrey(subtree.getIsPlant());
+            }
+            if (result.isOk()) {
+                if (own) {
+                    detached.remove(subtree);
+                } else {
+                    OrganismNode.refreshSubtreeAggregates(subtree);
+                }
+                at.tryAddPrey(subtree);
+                if (!own) {
+                    indexSubtree(subtree);
+                }
+                version++;
+                notified = listener;
+                if (notified != null) {
+                    // A subtree this tree detached is moved as a whole; any other subtree is new to the tree.
+                    if (own) {
+                        notified.childGrafted(at, subtree);
+                    } else {
+                        notified.childAdded(at, subtree);
+                    }
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+            if (notified != null) {
+                notified.afterMutation();
+            }
+        }
+        result.throwIfRejected(true);
+    }
+
+    /**
+     * Drops a subtree detached from this tree for good, removing its organisms from the name index so they no longer
+     * slow down or answer jumpCursor.
+     * 
+     * @param subtree
+     * The root of the subtree, as returned by detachChild.
+     * @throws IllegalArgumentException
+     * If subtree is not a subtree detached from this tree, or has already been grafted or discarded.
+     * @custom.precondition
+     * This OrganismTree has been instantiated.
+     * @custom.postcondition
+     * The subtree is no longer detached from this tree and none of its organisms are in the name index.
+     */
+    public void discard(OrganismNode subtree) throws IllegalArgumentException{
+        MutationListener notified = null;
+        long stamp = lock.writeLock();
+        try {
+            if (!detached.remove(subtree)) {
+                throw new IllegalArgumentException("ERROR: Only a subtree detached from this food pyramid can be discarded.");
+            }
+            unindexSubtree(subtree);
+            notified = listener;
+            if (notified != null) {
+                notified.subtreeDiscarded(subtree);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+            if (notified != null) {
+                notified.afterMutation();
+            }
+        }
+    }
+
+    /**
+     * Returns the roots of the subtrees detached from this tree that have been neither grafted nor discarded.
+     * The caller holds the read or write lock.
+     * 
+     * @return
+     * An unmodifiable view of the detached subtree roots.
+     */
+    Set<OrganismNode> detachedSubtrees() {
+        return Collections.unmodifiableSet(detached);
+    }
+
+    /**
+     * Creates a single organism as a detached subtree of this tree, so prey can be added under it and it can later be
+     * grafted or discarded like any subtree detached from this tree. Journal replay uses it to rebuild subtrees that
+     * were detached when the journal was compacted.
+     * 
+     * @param name
+     * The name of the organism.
+     * @param isPlant
+     * True if the organism is a plant, false otherwise.
+     * @param isHerbivore
+     * True if the organism is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the organism is a carnivore, false otherwise.
+     * @return
+     * The new detached organism.
+     */
+    OrganismNode newDetached(String name, boolean isPlant, boolean isHerbivore, boolean isCarnivore) {
+        long stamp = lock.writeLock();
+        try {
+            OrganismNode node = new OrganismNode(name, isPlant, isHerbivore, isCarnivore, null, null, null);
+            indexLoaded(node);
+            detached.add(node);
+            return node;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Checks that a subtree not detached from this tree obeys the rules addAnimalChild and addPlantChild enforce,
+     * so that it is the same as if it had been built one add at a time, and points every prey in it back at its
+     * predator as the OrganismNode constructor does not. The caller holds the write lock.
+     * 
+     * @param subtree
+     * The root of the subtree.
+     * @return
+     * OK if every predator in the subtree could have had its prey added in slot order, otherwise the first rule broken.
+     * @throws IllegalArgumentException
+     * If an organism in the subtree is already part of this or another pyramid, or appears twice in the subtree.
+     */
+    private OrganismResult checkNewSubtree(OrganismNode subtree) throws IllegalArgumentException {
+        OrganismResult[] broken = { OrganismResult.OK };
+        OrganismTraversal.preorder(subtree, (node, depth) -> {
+            OrganismNode left = node.getLeft(), middle = node.getMiddle(), right = node.getRight();
+            if ((left == null && middle != null) || (middle == null && right != null)) {
+                broken[0] = OrganismResult.POSITION_NOT_AVAILABLE;
+                return OrganismVisitor.Result.TERMINATE;
+            }
+            for (OrganismNode prey : new OrganismNode[] { left, middle, right }) {
+                if (prey == null) {
+                    break;
+                }
+                if (node.getIsPlant()) {
+                    broken[0] = OrganismResult.IS_PLANT;
+                } else if ((prey.getIsPlant() && !node.getIsHerbivore()) || (!prey.getIsPlant() && !node.getIsCarnivore())) {
+                    broken[0] = OrganismResult.DIET_MISMATCH;
+                } else if ((prey == middle && middle.getNameId() == left.getNameId())
+                        || (prey == right && (right.getNameId() == left.getNameId() || right.getNameId() == middle.getNameId()))) {
+                    broken[0] = OrganismResult.DUPLICATE_NAME;
+                }
+                if (!broken[0].isOk()) {
+                    return OrganismVisitor.Result.TERMINATE;
+                }
+                // An organism already linked elsewhere, or reached twice, would end up with two predators.
+                if ((prey.getParent() != null && prey.getParent() != node) || prey == root || detached.contains(prey)) {
+                    throw new IllegalArgumentException("ERROR: The subtree shares an organism with a food pyramid.");
+                }
+                prey.setParent(node);
+            }
+            return OrganismVisitor.Result.CONTINUE;
+        });
+        return broken[0];
+    }
+
+    /**
+     * Unlinks the child with the given name from a predator, shifting the later prey left. The caller holds the
+     * write lock.
+     * 
+     * @param at
+     * The predator.
+     * @param name
+     * The name of the child, compared ignoring case.
+     * @return
+     * The unlinked child, or null if the predator has no child with that name.
+     */
+    private OrganismNode unlinkChild(OrganismNode at, String name) {
+        NameDictionary names = NameDictionary.shared();
+        int folded = names.lookupFolded(name);
+        OrganismNode removed;
+        if (folded == NameDictionary.NONE){
+            return null;
+        } else if (at.getLeft() != null && names.foldedId(at.getLeft().getNameId()) == folded){
+            removed = at.getLeft();
+            at.setLeft(at.getMiddle());
+            at.setMiddle(at.getRight());
+            at.setRight(null);
+        } else if (at.getMiddle() != null && names.foldedId(at.getMiddle().getNameId()) == folded){
+            removed = at.getMiddle();
+            at.setMiddle(at.getRight());
+            at.setRight(null);
+        } else if (at.getRight() != null && names.foldedId(at.getRight().getNameId()) == folded){
+            removed = at.getRight();
+            at.setRight(null);
+        } else{
+            return null;
+        }
+        removed.setParent(null);
+        at.refreshAggregatesToRoot();
+        version++;
+        return removed;
+    }
+
+    /**
+     * Returns whether a node leads up to this tree's apex predator, rather than to the root of a detached subtree.
+     */
+    private boolean isAttached(OrganismNode node) {
+        return topOf(node) == root;
+    }
+
+    /**
+     * Returns whether a node can still be edited through this tree: it leads up to the apex predator or to a subtree
+     * detached from this tree, rather than to a subtree that was removed. A session whose cursor was removed by
+     * another session must not add to it, since nothing added there would be reachable or journaled. The caller
+     * holds the write lock.
+     */
+    private boolean isInPyramid(OrganismNode node) {
+        OrganismNode top = topOf(node);
+        return top == root || detached.contains(top);
+    }
+
+    private static OrganismNode topOf(OrganismNode node) {
+        OrganismNode top = node;
+        while (top.getParent() != null) {
+            top = top.getParent();
+        }
+        return top;
+    }
+
+    /**
+     * An action run while the tree is read-locked.
+     *
+     * @param <X>
+     * The checked exception type the action may throw, or RuntimeException if it throws none.
+     */
+    interface LockedAction<X extends Exception> {
+        void run() throws X;
+    }
+
+    /**
+     * Runs an action under the read lock, so no add or remove can happen, and no listener is notified, until it returns.
+     * 
+     * @param <X>
+     * The checked exception type of the action.
+     * @param action
+     * The action. It must not modify the tree.
+     * @throws X
+     * If the action fails.
+     */
+    <X extends Exception> void readLocked(LockedAction<X> action) throws X {
+        long stamp = lock.readLock();
+        try {
+            action.run();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Answers a query from the query cache when it holds a result for the tree's current version, and otherwise
+     * computes the result and caches it if no add or remove happened in the meantime.
+     * 
+     * @param query
+     * The query.
+     * @param at
+     * The organism the query runs at.
+     * @param compute
+     * Computes the result, taking whatever lock it needs.
+     * @return
+     * The result.
+     */
+    private String cached(QueryCache.Query query, OrganismNode at, Supplier<String> compute) {
+        QueryCache cache = queryCache;
+        if (cache == null) {
+            return compute.get();
+        }
+        long before = version;
+        String result = cache.get(query, at, before);
+        if (result == null) {
+            result = compute.get();
+            if (version == before) {
+                cache.put(query, at, before, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs a read-only query, first under an optimistic read and then, if a writer interfered, under a read lock.
+     * 
+     * @param <T>
+     * The result type.
+     * @param query
+     * The query. It must not have side effects, since it may run twice.
+     * @return
+     * The query's result.
+     */
+    private <T> T read(Supplier<T> query) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                T result = query.get();
+                if (lock.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return query.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 }
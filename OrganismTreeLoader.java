@@ -0,0 +1,233 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds an OrganismTree in one pass from a predator to prey edge list.
+ *
+ * Each line is one edge, as comma separated fields:
+ * <pre>
+ *   predator,prey,type[,diet]
+ * </pre>
+ * type is A for an animal or P for a plant, and diet is H, C or O for animals. The apex predator is given by a
+ * line with an empty predator, for example {@code ,lion,A,C}. Each name identifies one organism in the file, and
+ * edges may appear in any order. Blank lines, lines starting with # and a leading header line are ignored.
+ *
+ * Nodes are linked directly as lines are read. The rules addPrey enforces (plants have no prey, prey match the
+ * predator's diet, at most three prey) are checked once over the finished tree. Nodes are only given their names,
+ * which interns them in the shared NameDictionary, once the whole file has been accepted.
+ */
+public final class OrganismTreeLoader {
+    private static final String HEADER = "predator,prey,type,diet";
+
+    private final Map<String, OrganismNode> nodes = new HashMap<>();
+    private OrganismNode apex;
+    private int lineNumber;
+
+    private OrganismTreeLoader(){}
+
+    /**
+     * Loads a tree from an edge list file.
+     *
+     * @param file
+     * The edge list file, UTF-8 encoded.
+     * @return
+     * The tree, with its cursor at the apex predator.
+     * @throws IOException
+     * If the file cannot be read.
+     * @throws IllegalArgumentException
+     * If a line is malformed, an organism is defined twice or never defined, or the edges do not form a single tree.
+     * @throws IsPlantException
+     * If a plant has prey or the apex predator is a plant.
+     * @throws DietMismatchException
+     * If a prey does not match its predator's diet.
+     * @throws PositionNotAvailableException
+     * If a predator has more than three prey.
+     */
+    public static OrganismTree load(Path file) throws IOException, IllegalArgumentException, IsPlantException, DietMismatchException, PositionNotAvailableException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return load(in);
+        }
+    }
+
+    /**
+     * Loads a tree from an edge list read line by line from the given reader.
+     *
+     * @param in
+     * The edge list.
+     * @return
+     * The tree, with its cursor at the apex predator.
+     * @throws IOException
+     * If the reader fails.
+     * @throws IllegalArgumentException
+     * If a line is malformed, an organism is defined twice or never defined, or the edges do not form a single tree.
+     * @throws IsPlantException
+     * If a plant has prey or the apex predator is a plant.
+     * @throws DietMismatchException
+     * If a prey does not match its predator's diet.
+     * @throws PositionNotAvailableException
+     * If a predator has more than three prey.
+     * @custom.precondition
+     * in is not null.
+     * @custom.postcondition
+     * The returned tree holds every organism in the edge list and satisfies the addPrey rules.
+     */
+    public static OrganismTree load(BufferedReader in) throws IOException, IllegalArgumentException, IsPlantException, DietMismatchException, PositionNotAvailableException {
+        OrganismTreeLoader loader = new OrganismTreeLoader();
+        String line;
+        while ((line = in.readLine()) != null) {
+            loader.lineNumber++;
+            loader.readEdge(line);
+        }
+        return loader.finish();
+    }
+
+    private void readEdge(String line) throws PositionNotAvailableException {
+        String trimmed = line.trim();
+        if (trimmed.isEmpty() || trimmed.charAt(0) == '#' || (lineNumber == 1 && trimmed.equalsIgnoreCase(HEADER))) {
+            return;
+        }
+
+        String[] fields = new String[4];
+        int count = 0, start = 0;
+        while (count < 4) {
+            int comma = trimmed.indexOf(',', start);
+            fields[count++] = (comma < 0 ? trimmed.substring(start) : trimmed.substring(start, comma)).trim();
+            if (comma < 0) break;
+            start = comma + 1;
+        }
+        if (count < 3 || fields[1].isEmpty()) {
+            throw error("Expected predator,prey,type[,diet]");
+        }
+
+        boolean isPlant;
+        boolean isHerbivore = false, isCarnivore = false;
+        if (fields[2].equalsIgnoreCase("P")) {
+            isPlant = true;
+        } else if (fields[2].equalsIgnoreCase("A")) {
+            isPlant = false;
+            String diet = count > 3 ? fields[3] : "";
+            isHerbivore = diet.equalsIgnoreCase("H") || diet.equalsIgnoreCase("O");
+            isCarnivore = diet.equalsIgnoreCase("C") || diet.equalsIgnoreCase("O");
+            if (!isHerbivore && !isCarnivore) throw error("Invalid diet: " + diet + ". Expected H, C or O.");
+        } else {
+            throw error("Invalid type: " + fields[2] + ". Expected A or P.");
+        }
+
+        OrganismNode prey = nodes.computeIfAbsent(fields[1], name -> placeholder());
+        if (isDefined(prey)) {
+            throw error(fields[1] + " is defined more than once.");
+        }
+        prey.setPlant(isPlant);
+        prey.setHerbivore(isHerbivore);
+        prey.setCarnivore(isCarnivore);
+
+        if (fields[0].isEmpty()) {
+            if (apex != null) throw error("Only one apex predator may be given.");
+            apex = prey;
+            return;
+        }
+
+        OrganismNode predator = nodes.computeIfAbsent(fields[0], name -> placeholder());
+        if (predator.getLeft() == null) {
+            predator.setLeft(prey);
+        } else if (predator.getMiddle() == null) {
+            predator.setMiddle(prey);
+        } else if (predator.getRight() == null) {
+            predator.setRight(prey);
+        } else {
+            throw new PositionNotAvailableException("line " + lineNumber + ": ERROR: There is no more room for more prey for " + fields[0] + ".");
+        }
+        prey.setParent(predator);
+    }
+
+    private OrganismTree finish() throws IllegalArgumentException, IsPlantException, DietMismatchException {
+        for (Map.Entry<String, OrganismNode> entry : nodes.entrySet()) {
+            if (!isDefined(entry.getValue())) {
+                throw new IllegalArgumentException(entry.getKey() + " is a predator but is never defined.");
+            }
+            if (apex == null && entry.getValue().getParent() == null) {
+                apex = entry.getValue();
+            }
+        }
+        if (apex == null) {
+            throw new IllegalArgumentException("The edge list has no apex predator.");
+        }
+        if (apex.getParent() != null) {
+            throw new IllegalArgumentException(nameOf(apex) + " is the apex predator but is also prey.");
+        }
+
+        Validator validator = new Validator();
+        OrganismTraversal.preorder(apex, validator);
+        if (validator.brokenPredator != null && validator.brokenPredator.getIsPlant()) {
+            throw new IsPlantException("Plant nodes cannot have children: " + nameOf(validator.brokenPredator));
+        }
+        if (validator.brokenPredator != null) {
+            throw new DietMismatchException("ERROR: " + nameOf(validator.brokenPrey) + " does not match the diet of " + nameOf(validator.brokenPredator) + ".");
+        }
+        if (validator.visited != nodes.size()) {
+            throw new IllegalArgumentException("The edge list does not form a single food pyramid under " + nameOf(apex) + ".");
+        }
+
+        for (Map.Entry<String, OrganismNode> entry : nodes.entrySet()) {
+            entry.getValue().setName(entry.getKey());
+        }
+        return new OrganismTree(apex);
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException("line " + lineNumber + ": " + message);
+    }
+
+    /**
+     * Checks whether a node has been given its type and diet. Placeholders created for predators that have not
+     * been defined yet have every flag cleared, which no defined organism has.
+     */
+    private static boolean isDefined(OrganismNode node) {
+        return node.getIsPlant() || node.getIsHerbivore() || node.getIsCarnivore();
+    }
+
+    private static OrganismNode placeholder() {
+        return new OrganismNode(null, false, false, false, null, null, null);
+    }
+
+    /**
+     * Finds the name of a node that has not been given it yet. Only used to report an error.
+     */
+    private String nameOf(OrganismNode node) {
+        for (Map.Entry<String, OrganismNode> entry : nodes.entrySet()) {
+            if (entry.getValue() == node) {
+                return entry.getKey();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks the addPrey rules for every predator-prey link in one traversal, stopping at the first link that breaks
+     * them.
+     */
+    private static final class Validator implements OrganismVisitor<RuntimeException> {
+        int visited;
+        OrganismNode brokenPredator, brokenPrey;
+
+        @Override
+        public Result visit(OrganismNode node, int depth) {
+            visited++;
+            OrganismNode[] prey = { node.getLeft(), node.getMiddle(), node.getRight() };
+            for (OrganismNode child : prey) {
+                if (child == null) continue;
+                if (node.getIsPlant() || (child.getIsPlant() && !node.getIsHerbivore()) || (!child.getIsPlant() && !node.getIsCarnivore())) {
+                    brokenPredator = node;
+                    brokenPrey = child;
+                    return Result.TERMINATE;
+                }
+            }
+            return Result.CONTINUE;
+        }
+    }
+}
@@ -0,0 +1,449 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves an OrganismTree to a compact binary file and loads it back through a memory mapping.
+ *
+ * File layout, all values big-endian:
+ * <pre>
+ *   header         magic, version, nodeCount, nameCount (ints), nodeTableOffset, nameOffsetsOffset, generation,
+ *                  firstRecordsOffset (longs)
+ *   node table     nodeCount records in preorder, the apex predator first:
+ *                  nameId, parent, left, middle, right (ints, -1 for none),
+ *                  subtreeSize, plantCount, height (ints), structural hash (long), flags (byte)
+ *   name index     nameCount longs, the file offset of each name
+ *   first records  nameCount ints, the first record in preorder with each name
+ *   name pool      per distinct name: byte length (int) followed by the UTF-8 bytes
+ * </pre>
+ * Name ids are assigned in the unsigned byte order of the UTF-8 names, so a name is found by binary search over
+ * the name index, and its first record leads straight to the organism.
+ * Loading maps the file and creates only the apex predator. Every other node is materialized the first time
+ * its predator's prey are accessed, so opening a large snapshot does not depend on its size. The stored subtree
+ * aggregates let a node answer size, plant count and height queries before its prey are materialized.
+ */
+public final class OrganismTreeSnapshot {
+    static final int MAGIC = 0x46505952;
+    static final int VERSION = 5;
+    static final int HEADER_BYTES = 48;
+    static final int RECORD_BYTES = 41;
+    static final int PLANT = 1, HERBIVORE = 2, CARNIVORE = 4;
+
+    private static final int NONE = -1;
+    private static final int CHUNK_SHIFT = 30;
+    private static final long CHUNK_BYTES = 1L << CHUNK_SHIFT;
+
+    private OrganismTreeSnapshot(){}
+
+    /**
+     * Writes the whole tree, from its apex predator, to the given file. The tree's read lock is held while it is
+     * written, so adds and removes wait and the snapshot is of one consistent tree.
+     *
+     * @param tree
+     * The tree to save.
+     * @param file
+     * The file to write. It is created or truncated.
+     * @throws IOException
+     * If the file cannot be written.
+     * @custom.precondition
+     * tree and file are not null.
+     * @custom.postcondition
+     * The file holds a snapshot of every organism in the tree.
+     */
+    public static void save(OrganismTree tree, Path file) throws IOException {
+        tree.readLocked(() -> save(tree, file, 0));
+    }
+
+    /**
+     * Writes the whole tree to the given file, tagged with a generation number. MutationJournal uses the generation
+     * to tell whether its records were written before or after the snapshot. The caller holds the tree's read lock.
+     *
+     * @param tree
+     * The tree to save.
+     * @param file
+     * The file to write. It is created or truncated.
+     * @param generation
+     * The generation to store in the header.
+     * @throws IOException
+     * If the file cannot be written.
+     */
+    static void save(OrganismTree tree, Path file, long generation) throws IOException {
+        TableBuilder table = new TableBuilder();
+        OrganismTraversal.preorder(tree.getRoot(), table);
+
+        int nameCount = table.names.size();
+        byte[][] encoded = new byte[nameCount][];
+        Integer[] sorted = new Integer[nameCount];
+        for (int id = 0; id < nameCount; id++) {
+            encoded[id] = table.names.get(id).getBytes(StandardCharsets.UTF_8);
+            sorted[id] = id;
+        }
+        Arrays.sort(sorted, (a, b) -> Arrays.compareUnsigned(encoded[a], encoded[b]));
+        int[] newIds = new int[nameCount];
+        for (int id = 0; id < nameCount; id++) {
+            newIds[sorted[id]] = id;
+        }
+        int[] firstRecords = new int[nameCount];
+        Arrays.fill(firstRecords, NONE);
+        for (int record = table.size - 1; record >= 0; record--) {
+            firstRecords[newIds[table.nameIds[record]]] = record;
+        }
+
+        long nodeTableOffset = HEADER_BYTES;
+        long nameOffsetsOffset = nodeTableOffset + (long) RECORD_BYTES * table.size;
+        long firstRecordsOffset = nameOffsetsOffset + 8L * nameCount;
+        long poolOffset = firstRecordsOffset + 4L * nameCount;
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(table.size);
+            out.writeInt(nameCount);
+            out.writeLong(nodeTableOffset);
+            out.writeLong(nameOffsetsOffset);
+            out.writeLong(generation);
+            out.writeLong(firstRecordsOffset);
+
+            for (int i = 0; i < table.size; i++) {
+                out.writeInt(newIds[table.nameIds[i]]);
+                out.writeInt(table.parents[i]);
+                out.writeInt(table.children[i * 3]);
+                out.writeInt(table.children[i * 3 + 1]);
+                out.writeInt(table.children[i * 3 + 2]);
+                out.writeInt(table.aggregates[i * 3]);
+                out.writeInt(table.aggregates[i * 3 + 1]);
+                out.writeInt(table.aggregates[i * 3 + 2]);
+                out.writeLong(table.hashes[i]);
+                out.writeByte(table.flags[i]);
+            }
+
+            long offset = poolOffset;
+            for (int id : sorted) {
+                out.writeLong(offset);
+                offset += 4 + encoded[id].length;
+            }
+            for (int record : firstRecords) {
+                out.writeInt(record);
+            }
+            for (int id : sorted) {
+                out.writeInt(encoded[id].length);
+                out.write(encoded[id]);
+            }
+        }
+    }
+
+    /**
+     * Opens a snapshot written by save().
+     *
+     * @param file
+     * The snapshot file.
+     * @return
+     * A tree whose apex predator is loaded and whose other organisms are loaded as the cursor reaches them.
+     * @throws IOException
+     * If the file cannot be read or is not a valid snapshot.
+     * @custom.precondition
+     * file is not null.
+     * @custom.postcondition
+     * The file is memory-mapped and the returned tree's cursor is at the apex predator.
+     */
+    public static OrganismTree load(Path file) throws IOException {
+        MappedByteBuffer[] chunks;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) {
+                throw new IOException("Not a food pyramid snapshot: " + file);
+            }
+            chunks = new MappedByteBuffer[(int) ((size + CHUNK_BYTES - 1) >>> CHUNK_SHIFT)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << CHUNK_SHIFT;
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(CHUNK_BYTES, size - start));
+            }
+        }
+
+        Source source = new Source(chunks);
+        if (source.getInt(0) != MAGIC || source.getInt(4) != VERSION || source.nodeCount < 1) {
+            throw new IOException("Not a food pyramid snapshot: " + file);
+        }
+        LazyOrganismNode apex = source.node(0);
+        if (apex.getIsPlant()) {
+            throw new IOException("Apex Predator must be an animal.");
+        }
+        OrganismTree tree = new OrganismTree(apex, source);
+        source.tree = tree;
+        return tree;
+    }
+
+    /**
+     * Reads the generation stored in a snapshot's header without mapping the rest of the file.
+     *
+     * @param file
+     * The snapshot file.
+     * @return
+     * The generation the snapshot was saved with, 0 if it was saved by save(tree, file).
+     * @throws IOException
+     * If the file cannot be read or is not a valid snapshot.
+     */
+    static long readGeneration(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends.
+            }
+            if (header.hasRemaining() || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a food pyramid snapshot: " + file);
+            }
+            return header.getLong(32);
+        }
+    }
+
+    /**
+     * Collects the node table and name dictionary of a tree during a preorder traversal.
+     */
+    private static final class TableBuilder implements OrganismVisitor<RuntimeException> {
+        int size;
+        int[] nameIds = new int[64], parents = new int[64], children = new int[64 * 3], aggregates = new int[64 * 3];
+        long[] hashes = new long[64];
+        byte[] flags = new byte[64];
+        final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> nameToId = new HashMap<>();
+        private OrganismNode[] pathNodes = new OrganismNode[16];
+        private int[] pathRecords = new int[16];
+
+        @Override
+        public Result visit(OrganismNode node, int depth) {
+            if (size == nameIds.length) {
+                int capacity = size * 2;
+                nameIds = Arrays.copyOf(nameIds, capacity);
+                flags = Arrays.copyOf(flags, capacity);
+                parents = Arrays.copyOf(parents, capacity);
+                children = Arrays.copyOf(children, capacity * 3);
+                aggregates = Arrays.copyOf(aggregates, capacity * 3);
+                hashes = Arrays.copyOf(hashes, capacity);
+            }
+            if (depth == pathNodes.length) {
+                pathNodes = Arrays.copyOf(pathNodes, depth * 2);
+                pathRecords = Arrays.copyOf(pathRecords, depth * 2);
+            }
+
+            int record = size++;
+            int parent = NONE;
+            if (depth > 0) {
+                parent = pathRecords[depth - 1];
+                OrganismNode predator = pathNodes[depth - 1];
+                int slot = predator.getLeft() == node ? 0 : predator.getMiddle() == node ? 1 : 2;
+                children[parent * 3 + slot] = record;
+            }
+
+            Integer nameId = nameToId.get(node.getName());
+            if (nameId == null) {
+                nameId = names.size();
+                names.add(node.getName());
+                nameToId.put(node.getName(), nameId);
+            }
+            nameIds[record] = nameId;
+            flags[record] = (byte) ((node.getIsPlant() ? PLANT : 0) | (node.getIsHerbivore() ? HERBIVORE : 0) | (node.getIsCarnivore() ? CARNIVORE : 0));
+            parents[record] = parent;
+            children[record * 3] = children[record * 3 + 1] = children[record * 3 + 2] = NONE;
+            aggregates[record * 3] = node.getSubtreeSize();
+            aggregates[record * 3 + 1] = node.getPlantCount();
+            aggregates[record * 3 + 2] = node.getHeight();
+            hashes[record] = node.getHash();
+
+            pathNodes[depth] = node;
+            pathRecords[depth] = record;
+            return Result.CONTINUE;
+        }
+    }
+
+    /**
+     * A memory-mapped snapshot that materializes LazyOrganismNodes on demand.
+     */
+    static final class Source {
+        private final MappedByteBuffer[] chunks;
+        private final int nodeCount, nameCount;
+        private final long nodeTableOffset, nameOffsetsOffset, firstRecordsOffset;
+        private final String[] nameCache;
+        volatile OrganismTree tree;
+
+        private Source(MappedByteBuffer[] chunks) {
+            this.chunks = chunks;
+            nodeCount = getInt(8);
+            nameCount = getInt(12);
+            nodeTableOffset = getLong(16);
+            nameOffsetsOffset = getLong(24);
+            firstRecordsOffset = getLong(40);
+            nameCache = new String[Math.max(nameCount, 0)];
+        }
+
+        /**
+         * Creates the node for the given record, without its prey but with its stored subtree aggregates.
+         *
+         * @param record
+         * The index of the record in the node table.
+         * @return
+         * The node.
+         */
+        LazyOrganismNode node(int record) {
+            long base = nodeTableOffset + (long) RECORD_BYTES * record;
+            int flags = getByte(base + 40);
+            LazyOrganismNode node = new LazyOrganismNode(this, record, name(getInt(base)), (flags & PLANT) != 0, (flags & HERBIVORE) != 0, (flags & CARNIVORE) != 0);
+            node.setAggregates(getInt(base + 20), getInt(base + 24), getInt(base + 28), getLong(base + 32));
+            return node;
+        }
+
+        /**
+         * Materializes the prey of the given node and adds them to the tree's name index.
+         *
+         * @param node
+         * The node whose prey should be loaded.
+         * @return
+         * The left, middle and right prey, with their parent set to node. Empty slots are null.
+         */
+        LazyOrganismNode[] loadChildren(LazyOrganismNode node) {
+            LazyOrganismNode[] children = new LazyOrganismNode[3];
+            long base = nodeTableOffset + (long) RECORD_BYTES * node.getRecord();
+            for (int slot = 0; slot < 3; slot++) {
+                int record = getInt(base + 8 + 4L * slot);
+                if (record == NONE) {
+                    continue;
+                }
+                LazyOrganismNode child = node(record);
+                child.setParent(node);
+                children[slot] = child;
+                if (tree != null) {
+                    tree.indexLoaded(child);
+                }
+            }
+            return children;
+        }
+
+        /**
+         * Finds the first organism in preorder with the given name that is still in the tree, and materializes the
+         * path to it. The name is found by binary search and its first record read from the index; later records
+         * are only scanned if that organism has been removed since the snapshot was loaded.
+         *
+         * @param root
+         * The apex predator of the tree.
+         * @param name
+         * The name to look for.
+         * @return
+         * The organism, or null if no organism still in the tree has that name.
+         */
+        OrganismNode find(OrganismNode root, String name) {
+            byte[] target = name.getBytes(StandardCharsets.UTF_8);
+            int nameId = NONE;
+            for (int low = 0, high = nameCount - 1; low <= high && nameId == NONE; ) {
+                int middle = (low + high) >>> 1;
+                int order = compareName(getLong(nameOffsetsOffset + 8L * middle), target);
+                if (order < 0) {
+                    low = middle + 1;
+                } else if (order > 0) {
+                    high = middle - 1;
+                } else {
+                    nameId = middle;
+                }
+            }
+            if (nameId == NONE) {
+                return null;
+            }
+
+            for (int record = getInt(firstRecordsOffset + 4L * nameId); record != NONE && record < nodeCount; record++) {
+                if (getInt(nodeTableOffset + (long) RECORD_BYTES * record) == nameId) {
+                    OrganismNode node = materializePath(root, record);
+                    if (node != null && node.getName().equals(name)) {
+                        return node;
+                    }
+                }
+            }
+            return null;
+        }
+
+        private OrganismNode materializePath(OrganismNode root, int record) {
+            int[] chain = new int[16];
+            int depth = 0;
+            for (int r = record; r != NONE; r = getInt(nodeTableOffset + (long) RECORD_BYTES * r + 4)) {
+                if (depth == chain.length) {
+                    chain = Arrays.copyOf(chain, depth * 2);
+                }
+                chain[depth++] = r;
+            }
+
+            OrganismNode current = root;
+            if (!(current instanceof LazyOrganismNode) || ((LazyOrganismNode) current).getRecord() != chain[depth - 1]) {
+                return null;
+            }
+            for (int i = depth - 2; i >= 0 && current != null; i--) {
+                current = childWithRecord(current, chain[i]);
+            }
+            return current;
+        }
+
+        private static OrganismNode childWithRecord(OrganismNode node, int record) {
+            OrganismNode[] children = { node.getLeft(), node.getMiddle(), node.getRight() };
+            for (OrganismNode child : children) {
+                if (child instanceof LazyOrganismNode && ((LazyOrganismNode) child).getRecord() == record) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private String name(int id) {
+            String name = nameCache[id];
+            if (name == null) {
+                long offset = getLong(nameOffsetsOffset + 8L * id);
+                byte[] bytes = new byte[getInt(offset)];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = getByte(offset + 4 + i);
+                }
+                name = NameDictionary.shared().entry(new String(bytes, StandardCharsets.UTF_8)).name;
+                nameCache[id] = name;
+            }
+            return name;
+        }
+
+        /**
+         * Compares the stored name at the given offset with target in unsigned byte order, the order of the name ids.
+         */
+        private int compareName(long offset, byte[] target) {
+            int length = getInt(offset);
+            for (int i = 0; i < Math.min(length, target.length); i++) {
+                int order = Byte.toUnsignedInt(getByte(offset + 4 + i)) - Byte.toUnsignedInt(target[i]);
+                if (order != 0) {
+                    return order;
+                }
+            }
+            return length - target.length;
+        }
+
+        private byte getByte(long position) {
+            return chunks[(int) (position >>> CHUNK_SHIFT)].get((int) (position & (CHUNK_BYTES - 1)));
+        }
+
+        int getInt(long position) {
+            MappedByteBuffer chunk = chunks[(int) (position >>> CHUNK_SHIFT)];
+            int offset = (int) (position & (CHUNK_BYTES - 1));
+            if (offset + 4 <= chunk.limit()) {
+                return chunk.getInt(offset);
+            }
+            return (getByte(position) & 0xff) << 24 | (getByte(position + 1) & 0xff) << 16
+                    | (getByte(position + 2) & 0xff) << 8 | (getByte(position + 3) & 0xff);
+        }
+
+        long getLong(long position) {
+            return (long) getInt(position) << 32 | (getInt(position + 4) & 0xffffffffL);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/**
+ * Callback used by OrganismTraversal to visit the nodes of an OrganismTree.
+ *
+ * @param <X>
+ * The checked exception type the visitor may throw, or RuntimeException if it throws none.
+ */
+public interface OrganismVisitor<X extends Exception> {
+
+    /**
+     * Tells the traversal how to continue after a node has been visited.
+     */
+    enum Result {
+        /** Continue with the children of the visited node. */
+        CONTINUE,
+        /** Skip the children of the visited node but continue with its siblings. */
+        SKIP_CHILDREN,
+        /** Stop the traversal immediately. */
+        TERMINATE
+    }
+
+    /**
+     * Visits a single node.
+     *
+     * @param node
+     * The node being visited.
+     * @param depth
+     * The depth of the node relative to the start of the traversal, where the start node has depth 0.
+     * @return
+     * How the traversal should continue.
+     * @throws X
+     * If the visitor fails.
+     */
+    Result visit(OrganismNode node, int depth) throws X;
+}
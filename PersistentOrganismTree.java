@@ -0,0 +1,471 @@
+import java.util.Arrays;
+
+/**
+ * An immutable version of a food pyramid.
+ *
+ * Every edit returns a new PersistentOrganismTree and leaves this one unchanged. Edits copy only the nodes on the
+ * path from the apex predator to the cursor and share every other node with the previous version, so keeping a
+ * version around for reporting, undo or comparison costs O(depth) memory rather than a copy of the whole tree.
+ * Cursor moves also return a new version that shares the whole tree.
+ */
+public final class PersistentOrganismTree {
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final Node root;
+    private final Path cursor;
+
+    private PersistentOrganismTree(Node root, Path cursor) {
+        this.root = root;
+        this.cursor = cursor;
+    }
+
+    /**
+     * Creates a version holding only the given apex predator.
+     *
+     * @param apexName
+     * The name of the apex predator.
+     * @param isHerbivore
+     * True if the apex predator is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the apex predator is a carnivore, false otherwise.
+     * @return
+     * The new version, with its cursor at the apex predator.
+     */
+    public static PersistentOrganismTree of(String apexName, boolean isHerbivore, boolean isCarnivore) {
+        Node apex = new Node(apexName, false, isHerbivore, isCarnivore, null, null, null);
+        return new PersistentOrganismTree(apex, new Path(apex, null, 0));
+    }
+
+    /**
+     * Copies a mutable tree into a persistent version. This is a one-time O(n) conversion, done under the tree's
+     * read lock so that it copies one consistent tree; all later versions derived from the result share structure.
+     *
+     * @param tree
+     * The tree to copy.
+     * @return
+     * A version with the same organisms, with its cursor at the apex predator.
+     */
+    public static PersistentOrganismTree copyOf(OrganismTree tree) {
+        Node[] apex = new Node[1];
+        tree.readLocked(() -> apex[0] = copy(tree.getRoot()));
+        return new PersistentOrganismTree(apex[0], new Path(apex[0], null, 0));
+    }
+
+    /**
+     * Builds a mutable OrganismTree with the same organisms as this version.
+     *
+     * @return
+     * A new OrganismTree, with its cursor at the apex predator.
+     */
+    public OrganismTree toOrganismTree() {
+        OrganismNode apex = toOrganismNode(root);
+        try {
+            return new OrganismTree(apex);
+        } catch (IsPlantException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the name of the organism at the cursor.
+     *
+     * @return
+     * The name of the organism at the cursor.
+     */
+    public String getCursorName() {
+        return cursor.node.name;
+    }
+
+    /**
+     * Checks if the organism at the cursor is a plant.
+     *
+     * @return
+     * True if the cursor is a plant, false otherwise.
+     */
+    public boolean cursorIsPlant() {
+        return cursor.node.isPlant;
+    }
+
+    /**
+     * Returns a version with the cursor at the root.
+     *
+     * @return
+     * A version sharing this version's tree, with the cursor at the root.
+     */
+    public PersistentOrganismTree cursorReset() {
+        return new PersistentOrganismTree(root, new Path(root, null, 0));
+    }
+
+    /**
+     * Returns a version with the cursor moved to the child with the given name.
+     *
+     * @param name
+     * The name of the child to move the cursor to.
+     * @return
+     * A version sharing this version's tree, with the cursor at the child.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the cursor's children.
+     */
+    public PersistentOrganismTree moveCursor(String name) throws IllegalArgumentException {
+        Node at = cursor.node;
+        Node child = at.left != null && at.left.name.equals(name) ? at.left
+                : at.middle != null && at.middle.name.equals(name) ? at.middle
+                : at.right != null && at.right.name.equals(name) ? at.right : null;
+        if (child == null) {
+            throw new IllegalArgumentException("ERROR: This prey does not exist for this predator.");
+        }
+        return new PersistentOrganismTree(root, new Path(child, cursor, cursor.depth + 1));
+    }
+
+    /**
+     * Returns a string representation of the prey of the cursor.
+     *
+     * @return
+     * A string representation of the prey of the cursor.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     */
+    public String listPrey() throws IsPlantException {
+        Node at = cursor.node;
+        if (at.isPlant) throw new IsPlantException("Cursor is a plant.");
+        if (at.right != null) {
+            return at.name + " -> " + at.left.name + ", " + at.middle.name + ", " + at.right.name;
+        } else if (at.middle != null) {
+            return at.name + " -> " + at.left.name + ", " + at.middle.name;
+        } else if (at.left != null) {
+            return at.name + " -> " + at.left.name;
+        }
+        return "";
+    }
+
+    /**
+     * Returns a string representation of the food chain from the apex predator to the cursor.
+     *
+     * @return
+     * A string representation of the food chain from the apex predator to the cursor.
+     */
+    public String listFoodChain() {
+        Node[] chain = new Node[cursor.depth + 1];
+        int length = 0;
+        for (Path p = cursor; p != null; p = p.up) {
+            chain[p.depth] = p.node;
+            length += p.node.name.length() + 3;
+        }
+        StringBuilder path = new StringBuilder(length);
+        path.append(' ').append(chain[0].name);
+        for (int i = 1; i < chain.length; i++) {
+            path.append("-> ").append(chain[i].name);
+        }
+        return path.toString();
+    }
+
+    /**
+     * Returns a string representation of all the plants in the tree that support the cursor.
+     *
+     * @return
+     * A string representation of all the plants in the tree that support the cursor.
+     */
+    public String listAllPlants() {
+        StringBuilder plantList = new StringBuilder();
+        Node[] stack = new Node[16];
+        int size = 0;
+        stack[size++] = cursor.node;
+        while (size > 0) {
+            Node node = stack[--size];
+            if (node.isPlant) {
+                if (plantList.length() > 0) {
+                    plantList.append(',');
+                }
+                plantList.append(node.name);
+            }
+            if (size + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            if (node.right != null) stack[size++] = node.right;
+            if (node.middle != null) stack[size++] = node.middle;
+            if (node.left != null) stack[size++] = node.left;
+        }
+        return plantList.length() == 0 ? "No plants found supporting the cursor." : plantList.toString();
+    }
+
+    /**
+     * Returns the tree with the cursor as the root, in the same format as OrganismTree.printOrganismTree.
+     *
+     * @return
+     * The printed tree.
+     */
+    public String printOrganismTree() {
+        StringBuilder out = new StringBuilder();
+        Node[] stack = new Node[16];
+        int[] depths = new int[16];
+        int size = 0;
+        stack[size] = cursor.node;
+        depths[size++] = 0;
+        while (size > 0) {
+            Node node = stack[--size];
+            int depth = depths[size];
+            for (int i = 0; i < depth; i++) {
+                out.append('\t');
+            }
+            if (node.isPlant) {
+                out.append('-').append(node.name).append(LINE_SEPARATOR);
+                continue;
+            }
+            out.append("|- ").append(node.name).append(LINE_SEPARATOR);
+            if (size + 3 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                depths = Arrays.copyOf(depths, depths.length * 2);
+            }
+            if (node.right != null) { stack[size] = node.right; depths[size++] = depth + 1; }
+            if (node.middle != null) { stack[size] = node.middle; depths[size++] = depth + 1; }
+            if (node.left != null) { stack[size] = node.left; depths[size++] = depth + 1; }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Checks if the cursor has three children.
+     *
+     * @return
+     * True if the cursor has three children, false otherwise.
+     */
+    public boolean isFull() {
+        return cursor.node.right != null;
+    }
+
+    /**
+     * Returns a version with an animal child added under the cursor.
+     *
+     * @param name
+     * The name of the animal child.
+     * @param isHerbivore
+     * True if the animal child is a herbivore, false otherwise.
+     * @param isCarnivore
+     * True if the animal child is a carnivore, false otherwise.
+     * @return
+     * The new version, with its cursor at the same organism.
+     * @throws IllegalArgumentException
+     * If the given name is already taken by a sibling.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three children.
+     * @throws DietMismatchException
+     * If the animal child's diet is incompatible with the cursor's diet.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     */
+    public PersistentOrganismTree addAnimalChild(String name, boolean isHerbivore, boolean isCarnivore) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException {
+        return addPrey(new Node(name, false, isHerbivore, isCarnivore, null, null, null));
+    }
+
+    /**
+     * Returns a version with a plant child added under the cursor.
+     *
+     * @param name
+     * The name of the plant child.
+     * @return
+     * The new version, with its cursor at the same organism.
+     * @throws IllegalArgumentException
+     * If the given name is already taken by a sibling.
+     * @throws PositionNotAvailableException
+     * If the cursor already has three children.
+     * @throws DietMismatchException
+     * If the cursor does not eat plants.
+     * @throws IsPlantException
+     * If the cursor is a plant.
+     */
+    public PersistentOrganismTree addPlantChild(String name) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException {
+        return addPrey(new Node(name, true, false, false, null, null, null));
+    }
+
+    /**
+     * Returns a version with the child with the given name, and all of its prey, removed from under the cursor.
+     *
+     * @param name
+     * The name of the child to remove.
+     * @return
+     * The new version, with its cursor at the same organism.
+     * @throws IllegalArgumentException
+     * If the given name does not match any of the cursor's children.
+     */
+    public PersistentOrganismTree removeChild(String name) throws IllegalArgumentException {
+        Node at = cursor.node;
+        Node updated;
+        if (at.left != null && at.left.name.equalsIgnoreCase(name)) {
+            updated = at.withChildren(at.middle, at.right, null);
+        } else if (at.middle != null && at.middle.name.equalsIgnoreCase(name)) {
+            updated = at.withChildren(at.left, at.right, null);
+        } else if (at.right != null && at.right.name.equalsIgnoreCase(name)) {
+            updated = at.withChildren(at.left, at.middle, null);
+        } else {
+            throw new IllegalArgumentException("Name does not reference a direct, valid child of cursor");
+        }
+        return replaceCursor(updated);
+    }
+
+    private PersistentOrganismTree addPrey(Node prey) throws IllegalArgumentException, PositionNotAvailableException, DietMismatchException, IsPlantException {
+        Node at = cursor.node;
+        if ((at.left != null && at.left.name.equals(prey.name)) || (at.middle != null && at.middle.name.equals(prey.name)) || (at.right != null && at.right.name.equals(prey.name))) {
+            throw new IllegalArgumentException("ERROR: This prey already exists for this predator.");
+        }
+        if (at.isPlant) throw new IsPlantException("Plant nodes cannot have children.");
+        if ((prey.isPlant && !at.isHerbivore) || (!prey.isPlant && !at.isCarnivore)) throw new DietMismatchException("ERROR: This prey cannot be added as it does not match the diet of the predator.");
+
+        Node updated;
+        if (at.left == null) {
+            updated = at.withChildren(prey, null, null);
+        } else if (at.middle == null) {
+            updated = at.withChildren(at.left, prey, null);
+        } else if (at.right == null) {
+            updated = at.withChildren(at.left, at.middle, prey);
+        } else {
+            throw new PositionNotAvailableException("ERROR: There is no more room for more prey for this predator.");
+        }
+        return replaceCursor(updated);
+    }
+
+    /**
+     * Copies the path from the root to the cursor so that the cursor node is replaced by updated.
+     *
+     * @param updated
+     * The new cursor node.
+     * @return
+     * The new version, with its cursor at updated.
+     */
+    private PersistentOrganismTree replaceCursor(Node updated) {
+        Node[] copies = new Node[cursor.depth + 1];
+        copies[cursor.depth] = updated;
+        Node old = cursor.node;
+        for (Path p = cursor.up; p != null; p = p.up) {
+            Node predator = p.node;
+            Node replacement = copies[p.depth + 1];
+            copies[p.depth] = predator.withChildren(
+                    predator.left == old ? replacement : predator.left,
+                    predator.middle == old ? replacement : predator.middle,
+                    predator.right == old ? replacement : predator.right);
+            old = predator;
+        }
+
+        Path path = null;
+        for (int i = 0; i < copies.length; i++) {
+            path = new Path(copies[i], path, i);
+        }
+        return new PersistentOrganismTree(copies[0], path);
+    }
+
+    /**
+     * Copies a mutable subtree bottom-up without recursion. Nodes are collected in preorder, so building them in
+     * reverse order creates every child before its predator.
+     */
+    private static Node copy(OrganismNode start) {
+        OrganismNode[][] order = { new OrganismNode[64] };
+        int[][] parents = { new int[64] };
+        int[] size = { 0 };
+        int[][] path = { new int[16] };
+        OrganismTraversal.preorder(start, (node, depth) -> {
+            int index = size[0]++;
+            if (index == order[0].length) {
+                order[0] = Arrays.copyOf(order[0], index * 2);
+                parents[0] = Arrays.copyOf(parents[0], index * 2);
+            }
+            if (depth == path[0].length) {
+                path[0] = Arrays.copyOf(path[0], depth * 2);
+            }
+            order[0][index] = node;
+            parents[0][index] = depth == 0 ? -1 : path[0][depth - 1];
+            path[0][depth] = index;
+            return OrganismVisitor.Result.CONTINUE;
+        });
+
+        Node[] children = new Node[size[0] * 3];
+        Node built = null;
+        for (int i = size[0] - 1; i >= 0; i--) {
+            OrganismNode node = order[0][i];
+            built = new Node(node.getName(), node.getIsPlant(), node.getIsHerbivore(), node.getIsCarnivore(),
+                    children[i * 3], children[i * 3 + 1], children[i * 3 + 2]);
+            int parent = parents[0][i];
+            if (parent >= 0) {
+                OrganismNode predator = order[0][parent];
+                int slot = predator.getLeft() == node ? 0 : predator.getMiddle() == node ? 1 : 2;
+                children[parent * 3 + slot] = built;
+            }
+        }
+        return built;
+    }
+
+    /**
+     * Copies an immutable subtree into linked OrganismNodes without recursion.
+     */
+    private static OrganismNode toOrganismNode(Node start) {
+        OrganismNode apex = new OrganismNode(start.name, start.isPlant, start.isHerbivore, start.isCarnivore, null, null, null);
+        Node[] stack = new Node[16];
+        OrganismNode[] copies = new OrganismNode[16];
+        int size = 0;
+        stack[size] = start;
+        copies[size++] = apex;
+        while (size > 0) {
+            Node node = stack[--size];
+            OrganismNode copy = copies[size];
+            Node[] prey = { node.left, node.middle, node.right };
+            for (int slot = 0; slot < 3; slot++) {
+                if (prey[slot] == null) {
+                    continue;
+                }
+                Node child = prey[slot];
+                OrganismNode childCopy = new OrganismNode(child.name, child.isPlant, child.isHerbivore, child.isCarnivore, null, null, null);
+                childCopy.setParent(copy);
+                if (slot == 0) {
+                    copy.setLeft(childCopy);
+                } else if (slot == 1) {
+                    copy.setMiddle(childCopy);
+                } else {
+                    copy.setRight(childCopy);
+                }
+                if (size == stack.length) {
+                    stack = Arrays.copyOf(stack, size * 2);
+                    copies = Arrays.copyOf(copies, size * 2);
+                }
+                stack[size] = child;
+                copies[size++] = childCopy;
+            }
+        }
+        return apex;
+    }
+
+    /**
+     * An immutable organism. Nodes may be shared by many versions.
+     */
+    private static final class Node {
+        final String name;
+        final boolean isPlant, isHerbivore, isCarnivore;
+        final Node left, middle, right;
+
+        Node(String name, boolean isPlant, boolean isHerbivore, boolean isCarnivore, Node left, Node middle, Node right) {
+            this.name = name;
+            this.isPlant = isPlant;
+            this.isHerbivore = isHerbivore;
+            this.isCarnivore = isCarnivore;
+            this.left = left;
+            this.middle = middle;
+            this.right = right;
+        }
+
+        Node withChildren(Node left, Node middle, Node right) {
+            return new Node(name, isPlant, isHerbivore, isCarnivore, left, middle, right);
+        }
+    }
+
+    /**
+     * An immutable list of the nodes from the cursor up to the root, so that cursor moves share their prefix.
+     */
+    private static final class Path {
+        final Node node;
+        final Path up;
+        final int depth;
+
+        Path(Node node, Path up, int depth) {
+            this.node = node;
+            this.up = up;
+            this.depth = depth;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Runs predator-prey biomass dynamics over a food pyramid in fixed time steps.
+ *
+ * The pyramid's structure is copied once into primitive arrays in level order, so the prey of each organism sit
+ * next to each other and are found from a first-prey index and a count. Biomass lives in two double[] buffers:
+ * each step reads the current buffer and writes the next one, so organisms can be updated in parallel without
+ * locks, and the buffers are swapped afterwards. A step allocates only its O(n / CHUNK) fork/join tasks.
+ *
+ * Per step of length dt, with B the biomass of an organism, P its predator and j its prey:
+ * <pre>
+ *   plants    dB = dt * (growthRate * B * (1 - B / carryingCapacity) - attackRate * B_P * B)
+ *   animals   dB = dt * (efficiency * attackRate * B * sum(B_j) - deathRate * B - attackRate * B_P * B)
+ * </pre>
+ * Biomass never drops below zero. Population is biomass divided by the organism's body mass.
+ */
+public final class PopulationSimulation {
+    /** The number of organisms one fork/join task updates without splitting further. */
+    static final int CHUNK = 8192;
+
+    private static final int NONE = -1;
+
+    private final OrganismNode[] organisms;
+    private final int[] parent;
+    private final int[] firstPrey;
+    private final byte[] preyCount;
+    private final boolean[] isPlant;
+    private final double[] bodyMass;
+    private double[] biomass;
+    private double[] next;
+
+    private double timeStep = 0.01;
+    private double growthRate = 1.0;
+    private double carryingCapacity = 100.0;
+    private double attackRate = 0.02;
+    private double efficiency = 0.1;
+    private double deathRate = 0.05;
+    private long steps;
+
+    /**
+     * Constructs a simulation over a copy of the structure under apex. Later edits to the tree do not affect it.
+     * Every organism starts with a body mass of 1, plants at the carrying capacity and animals at a biomass of 1.
+     * The tree must not be modified while this runs; OrganismTree.simulatePopulation holds its read lock.
+     *
+     * @param apex
+     * The top of the pyramid to simulate.
+     * @custom.precondition
+     * apex is not null.
+     * @custom.postcondition
+     * The simulation holds every organism under apex, at step 0.
+     */
+    PopulationSimulation(OrganismNode apex) {
+        int n = Math.max(1, apex.getSubtreeSize());
+        OrganismNode[] order = new OrganismNode[n];
+        int[] parents = new int[n];
+        int[] first = new int[n];
+        byte[] counts = new byte[n];
+        order[0] = apex;
+        parents[0] = NONE;
+        int tail = 1;
+        for (int i = 0; i < tail; i++) {
+            first[i] = tail;
+            OrganismNode node = order[i];
+            OrganismNode[] prey = { node.getLeft(), node.getMiddle(), node.getRight() };
+            for (OrganismNode p : prey) {
+                if (p != null) {
+                    if (tail == order.length) {
+                        order = Arrays.copyOf(order, tail * 2);
+                        parents = Arrays.copyOf(parents, tail * 2);
+                        first = Arrays.copyOf(first, tail * 2);
+                        counts = Arrays.copyOf(counts, tail * 2);
+                    }
+                    order[tail] = p;
+                    parents[tail++] = i;
+                    counts[i]++;
+                }
+            }
+        }
+
+        organisms = Arrays.copyOf(order, tail);
+        parent = Arrays.copyOf(parents, tail);
+        firstPrey = Arrays.copyOf(first, tail);
+        preyCount = Arrays.copyOf(counts, tail);
+        isPlant = new boolean[tail];
+        bodyMass = new double[tail];
+        biomass = new double[tail];
+        next = new double[tail];
+        for (int i = 0; i < tail; i++) {
+            isPlant[i] = organisms[i].getIsPlant();
+            bodyMass[i] = 1.0;
+            biomass[i] = isPlant[i] ? carryingCapacity : 1.0;
+        }
+    }
+
+    /**
+     * Returns the number of organisms in the simulation.
+     *
+     * @return
+     * The number of organisms.
+     */
+    public int size() {
+        return organisms.length;
+    }
+
+    /**
+     * Returns the number of steps run so far.
+     *
+     * @return
+     * The step count.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Returns the index of the first organism with the given name, in level order from the apex predator.
+     *
+     * @param name
+     * The name of the organism.
+     * @return
+     * The index.
+     * @throws IllegalArgumentException
+     * If no organism in the simulation has the given name.
+     */
+    public int indexOf(String name) throws IllegalArgumentException {
+        int nameId = NameDictionary.shared().lookup(name);
+        for (int i = 0; i < organisms.length && nameId != NameDictionary.NONE; i++) {
+            if (organisms[i].getNameId() == nameId) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("ERROR: The organism does not exist in the simulation.");
+    }
+
+    /**
+     * Returns the organism at the given index.
+     *
+     * @param index
+     * The index, 0 for the apex predator.
+     * @return
+     * The organism.
+     */
+    public OrganismNode getOrganism(int index) {
+        return organisms[index];
+    }
+
+    /**
+     * Returns the biomass of the organism at the given index.
+     *
+     * @param index
+     * The index.
+     * @return
+     * The biomass.
+     */
+    public double getBiomass(int index) {
+        return biomass[index];
+    }
+
+    /**
+     * Sets the biomass of the organism at the given index.
+     *
+     * @param index
+     * The index.
+     * @param value
+     * The biomass, at least 0.
+     */
+    public void setBiomass(int index, double value) {
+        if (value < 0) throw new IllegalArgumentException("Biomass cannot be negative.");
+        biomass[index] = value;
+    }
+
+    /**
+     * Returns the population of the organism at the given index, its biomass divided by its body mass.
+     *
+     * @param index
+     * The index.
+     * @return
+     * The population.
+     */
+    public double getPopulation(int index) {
+        return biomass[index] / bodyMass[index];
+    }
+
+    /**
+     * Sets the population of the organism at the given index, keeping its body mass.
+     *
+     * @param index
+     * The index.
+     * @param population
+     * The population, at least 0.
+     */
+    public void setPopulation(int index, double population) {
+        setBiomass(index, population * bodyMass[index]);
+    }
+
+    /**
+     * Sets the body mass of one individual of the organism at the given index, keeping its biomass.
+     *
+     * @param index
+     * The index.
+     * @param mass
+     * The body mass, greater than 0.
+     */
+    public void setBodyMass(int index, double mass) {
+        if (!(mass > 0)) throw new IllegalArgumentException("Body mass must be positive.");
+        bodyMass[index] = mass;
+    }
+
+    /**
+     * Returns the total biomass of every organism.
+     *
+     * @return
+     * The sum of all biomass.
+     */
+    public double totalBiomass() {
+        double total = 0;
+        for (double b : biomass) {
+            total += b;
+        }
+        return total;
+    }
+
+    /**
+     * Sets the length of one step.
+     *
+     * @param timeStep
+     * The length of one step.
+     */
+    public void setTimeStep(double timeStep) {
+        this.timeStep = timeStep;
+    }
+
+    /**
+     * Sets the plant growth rate.
+     *
+     * @param growthRate
+     * The rate at which plants grow while far below the carrying capacity.
+     */
+    public void setGrowthRate(double growthRate) {
+        this.growthRate = growthRate;
+    }
+
+    /**
+     * Sets the plant carrying capacity.
+     *
+     * @param carryingCapacity
+     * The biomass at which plants stop growing.
+     */
+    public void setCarryingCapacity(double carryingCapacity) {
+        this.carryingCapacity = carryingCapacity;
+    }
+
+    /**
+     * Sets the attack rate of every predator.
+     *
+     * @param attackRate
+     * The fraction of prey biomass a unit of predator biomass eats per unit of time.
+     */
+    public void setAttackRate(double attackRate) {
+        this.attackRate = attackRate;
+    }
+
+    /**
+     * Sets the assimilation efficiency of every predator.
+     *
+     * @param efficiency
+     * The fraction of eaten biomass that becomes predator biomass.
+     */
+    public void setEfficiency(double efficiency) {
+        this.efficiency = efficiency;
+    }
+
+    /**
+     * Sets the death rate of every animal.
+     *
+     * @param deathRate
+     * The fraction of animal biomass lost per unit of time.
+     */
+    public void setDeathRate(double deathRate) {
+        this.deathRate = deathRate;
+    }
+
+    /**
+     * Runs the given number of steps on the common ForkJoinPool.
+     *
+     * @param count
+     * The number of steps.
+     * @custom.precondition
+     * count is at least 0.
+     * @custom.postcondition
+     * The biomass of every organism has advanced by count steps.
+     */
+    public void run(int count) {
+        run(count, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Runs the given number of steps on the given pool.
+     *
+     * @param count
+     * The number of steps.
+     * @param pool
+     * The pool to update organisms on.
+     * @custom.precondition
+     * count is at least 0 and pool is not null.
+     * @custom.postcondition
+     * The biomass of every organism has advanced by count steps.
+     */
+    public void run(int count, ForkJoinPool pool) {
+        for (int s = 0; s < count; s++) {
+            if (organisms.length <= CHUNK) {
+                update(0, organisms.length);
+            } else {
+                pool.invoke(new Step(0, organisms.length));
+            }
+            double[] swap = biomass;
+            biomass = next;
+            next = swap;
+            steps++;
+        }
+    }
+
+    /**
+     * Writes the next biomass of organisms from..to-1, reading only the current buffer.
+     */
+    private void update(int from, int to) {
+        double[] current = biomass, out = next;
+        double dt = timeStep, attack = attackRate;
+        for (int i = from; i < to; i++) {
+            double b = current[i];
+            int predator = parent[i];
+            double change = predator == NONE ? 0 : -attack * current[predator] * b;
+            if (isPlant[i]) {
+                change += growthRate * b * (1 - b / carryingCapacity);
+            } else {
+                double food = 0;
+                for (int j = firstPrey[i], end = j + preyCount[i]; j < end; j++) {
+                    food += current[j];
+                }
+                change += efficiency * attack * b * food - deathRate * b;
+            }
+            double value = b + dt * change;
+            out[i] = value > 0 ? value : 0;
+        }
+    }
+
+    /**
+     * Updates a range of organisms, splitting it in half until it is at most CHUNK long.
+     */
+    private final class Step extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        Step(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK) {
+                update(from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new Step(from, middle), new Step(middle, to));
+        }
+    }
+}
@@ -3,4 +3,8 @@ public class PositionNotAvailableException extends Exception {
     public PositionNotAvailableException(String message) {
         super(message);
     }
+
+    public PositionNotAvailableException(String message, boolean writableStackTrace) {
+        super(message, null, writableStackTrace, writableStackTrace);
+    }
 }
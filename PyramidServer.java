@@ -0,0 +1,424 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the CommandInterpreter command language to many clients at once over TCP or a Unix-domain socket.
+ *
+ * Every connection gets its own OrganismSession, so each client has its own cursor into the shared tree, and its
+ * own CommandInterpreter, while all of them record into one CommandMetrics. One selector thread does all of the
+ * network I/O with non-blocking channels, so an idle connection costs only its buffers. Commands run on a small
+ * pool of worker threads, one command per connection at a time so that replies keep their order. A command writes
+ * its output into memory and the selector thread sends it, so no thread ever blocks on a client while it holds the
+ * tree's lock, and a connection reads no further commands until its previous reply has been sent. Read commands
+ * from different connections run concurrently under the tree's optimistic reads.
+ *
+ * The protocol is line based, in UTF-8. The server greets each client with a +OK line. After each command line
+ * it writes the command's output, then a +OK line, or a -ERR line holding the error message if the command was
+ * rejected. A command line longer than MAX_LINE_BYTES is answered with -ERR and not run. Q is answered with +OK
+ * and closes the connection.
+ */
+public final class PyramidServer implements Closeable {
+    /** The longest command line accepted, in bytes, not counting the line terminator. */
+    public static final int MAX_LINE_BYTES = 8192;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    /** Stands in a connection's queue for a line that was too long to keep. */
+    private static final String TOO_LONG = new String("line too long");
+
+    private final OrganismTree tree;
+    private final CommandMetrics metrics;
+    private final ExecutorService workers;
+    private final Set<Connection> clients = ConcurrentHashMap.newKeySet();
+    /** Connections whose command has finished, waiting for the selector thread to send the reply. */
+    private final Queue<Connection> replies = new ConcurrentLinkedQueue<>();
+    private ServerSocketChannel server;
+    private Selector selector;
+    private Thread selectorThread;
+    private Path socketFile;
+    private volatile boolean closing;
+
+    /**
+     * Constructs a server for the given tree. Nothing is bound until start is called.
+     *
+     * @param tree
+     * The tree every connection works on.
+     * @param metrics
+     * The metrics every connection records its commands in.
+     * @custom.precondition
+     * tree and metrics are not null.
+     * @custom.postcondition
+     * The server is ready to start.
+     */
+    public PyramidServer(OrganismTree tree, CommandMetrics metrics) {
+        this.tree = tree;
+        this.metrics = metrics;
+        this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread thread = new Thread(task, "pyramid-server-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Parses a listening address: unix:path for a Unix-domain socket, host:port for TCP, or a port alone for TCP
+     * on the loopback interface.
+     *
+     * @param address
+     * The address.
+     * @return
+     * The socket address.
+     * @throws IllegalArgumentException
+     * If the address cannot be parsed.
+     */
+    public static SocketAddress parseAddress(String address) throws IllegalArgumentException {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring(5));
+        }
+        int colon = address.lastIndexOf(':');
+        try {
+            if (colon < 0) {
+                return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+            }
+            return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid server address: " + address);
+        }
+    }
+
+    /**
+     * Binds the given address and starts accepting connections.
+     *
+     * @param address
+     * A TCP address, port 0 for any free port, or a UnixDomainSocketAddress. A stale socket file is replaced.
+     * @return
+     * The address actually bound.
+     * @throws IOException
+     * If the address cannot be bound.
+     * @custom.precondition
+     * The server has not been started.
+     * @custom.postcondition
+     * The server accepts connections on the returned address until it is closed.
+     */
+    public synchronized SocketAddress start(SocketAddress address) throws IOException {
+        if (server != null) throw new IllegalStateException("The server has already been started.");
+        if (address instanceof UnixDomainSocketAddress) {
+            socketFile = ((UnixDomainSocketAddress) address).getPath();
+            Files.deleteIfExists(socketFile);
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            server = ServerSocketChannel.open();
+        }
+        server.bind(address, 1024);
+        server.configureBlocking(false);
+        selector = Selector.open();
+        server.register(selector, SelectionKey.OP_ACCEPT);
+        selectorThread = new Thread(this::run, "pyramid-server");
+        selectorThread.start();
+        return server.getLocalAddress();
+    }
+
+    /**
+     * Returns the number of connections currently open.
+     *
+     * @return
+     * The number of open connections.
+     */
+    public int getConnectionCount() {
+        return clients.size();
+    }
+
+    /**
+     * Stops accepting connections, closes every open connection and waits briefly for running commands to finish.
+     *
+     * @throws IOException
+     * If the Unix-domain socket file cannot be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        Thread running;
+        synchronized (this) {
+            closing = true;
+            running = selectorThread;
+        }
+        try {
+            if (running != null) {
+                // The selector thread closes the listening socket and every connection on its way out.
+                selector.wakeup();
+                running.join();
+            }
+            workers.shutdown();
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (socketFile != null) {
+            Files.deleteIfExists(socketFile);
+        }
+    }
+
+    /**
+     * The selector loop: accepts connections, reads command lines, and sends replies until close is called.
+     */
+    private void run() {
+        try {
+            while (!closing) {
+                selector.select();
+                for (Connection connection; (connection = replies.poll()) != null; ) {
+                    connection.send();
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        Connection connection = (Connection) key.attachment();
+                        if (key.isWritable()) {
+                            connection.send();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.receive();
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            if (!closing) {
+                System.err.println(e);
+            }
+        } finally {
+            try {
+                server.close();
+            } catch (IOException e) {
+                // The listening socket is gone either way.
+            }
+            for (Connection connection : clients) {
+                connection.close();
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                // Every channel registered with it is already closed.
+            }
+        }
+    }
+
+    private void accept() {
+        SocketChannel channel;
+        try {
+            channel = server.accept();
+            if (channel == null) {
+                return;
+            }
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            System.err.println(e);
+            return;
+        }
+        Connection connection = new Connection(channel);
+        clients.add(connection);
+        try {
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        } catch (IOException e) {
+            connection.close();
+            return;
+        }
+        connection.busy = true;
+        connection.reply("+OK food pyramid of " + tree.getRoot().getName() + LINE_SEPARATOR, true);
+        connection.send();
+    }
+
+    /**
+     * One client. Everything but command execution runs on the selector thread; a worker only fills in the reply
+     * of the command it was handed and queues the connection in replies.
+     */
+    private final class Connection {
+        private final SocketChannel channel;
+        private final CommandInterpreter interpreter;
+        private final ByteBuffer input = ByteBuffer.allocate(4096);
+        private byte[] line = new byte[256];
+        private int lineLength;
+        /** Whether the rest of the current line is being skipped because it was too long. */
+        private boolean discarding;
+        private final ArrayDeque<String> lines = new ArrayDeque<>();
+        private SelectionKey key;
+        /** Whether a command is running or its reply has not been sent yet. */
+        private boolean busy;
+        private boolean endOfInput;
+        /** Set by the worker before the connection is queued in replies, read by the selector thread after. */
+        private ByteBuffer output;
+        private boolean keepOpen;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.interpreter = new CommandInterpreter(tree.openSession(), metrics);
+        }
+
+        /**
+         * Reads what the client has sent, splits it into lines, and starts the next command if none is running.
+         */
+        void receive() {
+            int read;
+            try {
+                read = channel.read(input);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (read < 0) {
+                // The client sent all its commands; answer the ones left, then hang up.
+                endOfInput = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                if (!busy && lines.isEmpty()) {
+                    close();
+                }
+                return;
+            }
+            input.flip();
+            while (input.hasRemaining()) {
+                byte b = input.get();
+                if (b == '\n') {
+                    if (!discarding) {
+                        int end = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+                        lines.add(new String(line, 0, end, StandardCharsets.UTF_8));
+                    }
+                    lineLength = 0;
+                    discarding = false;
+                } else if (discarding) {
+                    continue;
+                } else if (lineLength == MAX_LINE_BYTES) {
+                    lines.add(TOO_LONG);
+                    lineLength = 0;
+                    discarding = true;
+                } else {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, Math.min(MAX_LINE_BYTES, line.length * 2));
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+            input.clear();
+            if (!busy) {
+                next();
+            }
+        }
+
+        /**
+         * Starts the next queued command, or goes back to reading if there is none.
+         */
+        private void next() {
+            String command = lines.poll();
+            if (command == null) {
+                if (endOfInput) {
+                    close();
+                } else {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+                return;
+            }
+            busy = true;
+            // No more input is read until the reply has been sent, so a client that does not read its replies
+            // only stalls itself.
+            key.interestOps(0);
+            if (command == TOO_LONG) {
+                reply("-ERR The command line is longer than " + MAX_LINE_BYTES + " bytes." + LINE_SEPARATOR, true);
+                send();
+                return;
+            }
+            try {
+                workers.execute(() -> execute(command));
+            } catch (RejectedExecutionException e) {
+                // The server is closing.
+                close();
+            }
+        }
+
+        /**
+         * Runs one command on a worker thread and hands its reply to the selector thread.
+         */
+        private void execute(String command) {
+            StringBuilder out = new StringBuilder();
+            boolean more;
+            try {
+                more = interpreter.execute(command, out);
+                out.append("+OK").append(LINE_SEPARATOR);
+            } catch (Exception e) {
+                more = true;
+                String message = e.getMessage();
+                out.append("-ERR ").append(message == null ? e.toString() : message.replace('\n', ' ')).append(LINE_SEPARATOR);
+            }
+            reply(out, more);
+            replies.add(this);
+            selector.wakeup();
+        }
+
+        private void reply(CharSequence text, boolean more) {
+            this.output = ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+            this.keepOpen = more;
+        }
+
+        /**
+         * Writes as much of the pending reply as the channel takes, and moves on once all of it is sent.
+         */
+        void send() {
+            if (output == null || !channel.isOpen()) {
+                return;
+            }
+            try {
+                channel.write(output);
+            } catch (IOException e) {
+                close();
+                return;
+            }
+            if (output.hasRemaining()) {
+                key.interestOps(SelectionKey.OP_WRITE);
+                return;
+            }
+            output = null;
+            busy = false;
+            if (!keepOpen) {
+                close();
+                return;
+            }
+            next();
+        }
+
+        void close() {
+            clients.remove(this);
+            if (key != null) {
+                key.cancel();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing more can be done for a connection that fails to close.
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded least-recently-used cache of rendered query results for one OrganismTree.
+ *
+ * Results are keyed by query, organism and the tree's version, which every add or remove bumps, so a result is
+ * only ever served for the exact tree it was computed from. Because versions only grow, the first lookup at a newer
+ * version drops every older entry at once. The cache is bounded both by entry count and by the total length of the
+ * cached strings, and a single result may use at most a quarter of the character budget.
+ *
+ * The entries are spread over segments by key, each with its own monitor and recency order, so lookups at
+ * different organisms rarely wait for each other. The limits hold for the cache as a whole: a put evicts from its
+ * own segment first and then from the following ones, so the order is least recently used per segment, not overall.
+ */
+public final class QueryCache {
+    /**
+     * The queries whose results are cached.
+     */
+    public enum Query {
+        /** listPrey. */
+        PREY,
+        /** listFoodChain. */
+        FOOD_CHAIN,
+        /** listAllPlants, as the comma-separated names. */
+        PLANTS,
+        /** printOrganismTree. */
+        PYRAMID
+    }
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    private static final int SEGMENTS = 16;
+
+    private final int maxEntries;
+    private final long maxChars;
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicLong chars = new AtomicLong(), latest = new AtomicLong();
+    private final LongAdder hits = new LongAdder(), misses = new LongAdder(), evictions = new LongAdder(), invalidations = new LongAdder();
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxEntries
+     * The most results to keep.
+     * @param maxChars
+     * The most characters to keep across all results.
+     * @custom.precondition
+     * maxEntries and maxChars are positive.
+     * @custom.postcondition
+     * The cache is empty and every counter is zero.
+     */
+    public QueryCache(int maxEntries, long maxChars) {
+        if (maxEntries <= 0 || maxChars <= 0) throw new IllegalArgumentException("The cache limits must be positive.");
+        this.maxEntries = maxEntries;
+        this.maxChars = maxChars;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment(i);
+        }
+    }
+
+    /**
+     * Returns whether a result of about the given length could be cached, so callers can avoid rendering a large
+     * result into memory only to have it rejected.
+     *
+     * @param estimatedChars
+     * The expected length of the result.
+     * @return
+     * True if a result that long fits in the cache.
+     */
+    public boolean admits(long estimatedChars) {
+        return estimatedChars <= maxChars / 4;
+    }
+
+    /**
+     * Returns the cached result of a query, counting a hit or a miss.
+     *
+     * @param query
+     * The query.
+     * @param at
+     * The organism the query ran at.
+     * @param version
+     * The tree's current version.
+     * @return
+     * The result, or null if it is not cached for this version.
+     */
+    public String get(Query query, OrganismNode at, long version) {
+        invalidateBefore(version);
+        Key key = new Key(query, at, version);
+        String result;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            result = segment.entries.get(key);
+        }
+        (result == null ? misses : hits).increment();
+        return result;
+    }
+
+    /**
+     * Caches the result of a query, evicting the least recently used results until the limits hold again.
+     *
+     * @param query
+     * The query.
+     * @param at
+     * The organism the query ran at.
+     * @param version
+     * The tree version the result was computed at.
+     * @param result
+     * The result.
+     * @custom.precondition
+     * result is what query returns at at when the tree is at version.
+     * @custom.postcondition
+     * If the result fits and version is current, it is cached.
+     */
+    public void put(Query query, OrganismNode at, long version, String result) {
+        if (!admits(result.length()) || version < latest.get()) {
+            return;
+        }
+        invalidateBefore(version);
+        Key key = new Key(query, at, version);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            // Checked under the segment's monitor, so a put that lost a race with a newer version cannot slip in
+            // after that version dropped the segment.
+            if (version < segment.version) {
+                return;
+            }
+            if (version > segment.version) {
+                segment.version = version;
+                segment.clear();
+            }
+            String previous = segment.entries.put(key, result);
+            chars.addAndGet(result.length() - (previous == null ? 0 : previous.length()));
+            if (previous == null) {
+                size.incrementAndGet();
+            }
+        }
+        for (int i = 0; i < SEGMENTS && isOverLimits(); i++) {
+            Segment victim = segments[(segment.index + i) % SEGMENTS];
+            synchronized (victim) {
+                // The result just cached is the most recent entry of its own segment, so it is kept.
+                int keep = victim == segment ? 1 : 0;
+                Iterator<String> eldest = victim.entries.values().iterator();
+                while (victim.entries.size() > keep && isOverLimits()) {
+                    chars.addAndGet(-eldest.next().length());
+                    eldest.remove();
+                    size.decrementAndGet();
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops every cached result.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of lookups answered from the cache.
+     *
+     * @return
+     * The number of hits.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups the cache could not answer.
+     *
+     * @return
+     * The number of misses.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of results dropped to stay within the limits.
+     *
+     * @return
+     * The number of evictions.
+     */
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Returns the number of results dropped because the tree changed, or by clear.
+     *
+     * @return
+     * The number of invalidated results.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * Returns the number of cached results.
+     *
+     * @return
+     * The number of entries.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the total length of the cached results.
+     *
+     * @return
+     * The number of cached characters.
+     */
+    public long getChars() {
+        return chars.get();
+    }
+
+    /**
+     * Writes one line with the cache's counters. The counters are read one at a time, so under concurrent use they
+     * may be a few lookups apart.
+     *
+     * @param out
+     * The sink for the line.
+     * @throws IOException
+     * If out fails to accept the output.
+     */
+    public void dump(Appendable out) throws IOException {
+        long hit = hits.sum(), missed = misses.sum(), lookups = hit + missed;
+        out.append(String.format("query cache: %d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations, %d entries, %d chars",
+                hit, missed, lookups == 0 ? 0.0 : 100.0 * hit / lookups, evictions.sum(), invalidations.sum(), size.get(), chars.get()))
+                .append(LINE_SEPARATOR);
+    }
+
+    private boolean isOverLimits() {
+        return size.get() > maxEntries || chars.get() > maxChars;
+    }
+
+    private Segment segmentFor(Key key) {
+        int hash = key.hashCode();
+        return segments[((hash ^ (hash >>> 16)) & 0x7fffffff) % SEGMENTS];
+    }
+
+    private void invalidateBefore(long current) {
+        long seen = latest.get();
+        while (current > seen) {
+            if (latest.compareAndSet(seen, current)) {
+                // Only the thread that moved the version on drops the older entries, one segment at a time.
+                for (Segment segment : segments) {
+                    synchronized (segment) {
+                        if (current > segment.version) {
+                            segment.version = current;
+                            segment.clear();
+                        }
+                    }
+                }
+                return;
+            }
+            seen = latest.get();
+        }
+    }
+
+    /**
+     * One lock's share of the entries, in access order. Guarded by its own monitor.
+     */
+    private final class Segment {
+        final int index;
+        final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+        long version;
+
+        Segment(int index) {
+            this.index = index;
+        }
+
+        void clear() {
+            if (entries.isEmpty()) {
+                return;
+            }
+            long dropped = 0;
+            for (String result : entries.values()) {
+                dropped += result.length();
+            }
+            invalidations.add(entries.size());
+            size.addAndGet(-entries.size());
+            chars.addAndGet(-dropped);
+            entries.clear();
+        }
+    }
+
+    /**
+     * A query at an organism, compared by identity, at one tree version.
+     */
+    private static final class Key {
+        final Query query;
+        final OrganismNode at;
+        final long version;
+
+        Key(Query query, OrganismNode at, long version) {
+            this.query = query;
+            this.at = at;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return query == key.query && at == key.at && version == key.version;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(at) * 31 + query.ordinal()) * 31 + Long.hashCode(version);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package foodpyramid.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so every result reports allocation rate next to throughput.
+ *
+ * Accepts the usual JMH command line, for example {@code java -jar benchmarks/target/benchmarks.jar listAllPlants -p size=1000}.
+ */
+public final class BenchmarkRunner {
+    private BenchmarkRunner(){}
+
+    public static void main(String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,112 @@
+package foodpyramid.bench;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Measures the retained heap of OrganismTree and CompactOrganismTree over generated pyramids of each shape.
+ *
+ * For each shape and size, enough copies of the pyramid are built to hold about a million organisms, and the heap in
+ * use after a full collection is compared with the heap in use before. The difference divided by the number of
+ * organisms is the measured cost of one organism, including its name, its name index entry and any spare array
+ * capacity. Every copy has its own names, as distinct pyramids would, so neither kind shares names across copies.
+ * Run it with {@code java -cp benchmarks/target/benchmarks.jar foodpyramid.bench.Footprint [size...]}.
+ */
+public final class Footprint {
+    private static final int ORGANISMS_PER_MEASUREMENT = 1_000_000;
+    private static final MemoryMXBean MEMORY = ManagementFactory.getMemoryMXBean();
+
+    private Footprint(){}
+
+    public static void main(String[] args) throws Throwable {
+        int[] sizes = args.length == 0 ? new int[] { 1000, 100000 } : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        System.out.printf("%-12s %8s %22s %22s %8s%n", "shape", "size", "OrganismTree B/org", "Compact B/org", "ratio");
+        for (Shape shape : Shape.values()) {
+            for (int size : sizes) {
+                Pyramid.Layout layout = Pyramid.Layout.of(shape, size);
+                int copies = Math.max(1, ORGANISMS_PER_MEASUREMENT / layout.size());
+                double pointer = measure(layout, copies, false);
+                double compact = measure(layout, copies, true);
+                System.out.printf("%-12s %8d %22.1f %22.1f %7.1fx%n", shape, layout.size(), pointer, compact, pointer / compact);
+            }
+        }
+    }
+
+    /**
+     * Returns the retained bytes per organism of the given number of copies of a pyramid.
+     */
+    private static double measure(Pyramid.Layout layout, int copies, boolean isCompact) throws Throwable {
+        Object[] trees = new Object[copies];
+        long before = usedHeap();
+        for (int i = 0; i < copies; i++) {
+            Pyramid.Layout copy = layout.renamed((isCompact ? "c" : "p") + i + "-");
+            trees[i] = isCompact ? buildCompact(copy) : Pyramid.generate(copy).tree;
+        }
+        long after = usedHeap();
+        if (trees[copies - 1] == null) throw new AssertionError();
+        return (double) (after - before - arrayBytes(copies)) / ((long) copies * layout.size());
+    }
+
+    /**
+     * Adds every organism of the layout to a CompactOrganismTree sized to hold exactly them. The cursor only moves
+     * down while prey are added in preorder, returning to the apex predator when the next predator is off the
+     * current food chain.
+     */
+    private static Object buildCompact(Pyramid.Layout layout) throws Throwable {
+        int n = layout.size();
+        Object tree = (Object) Organisms.NEW_COMPACT.invokeExact(layout.name(0), true, true, n);
+        int[][] prey = layout.prey();
+        int[] pending = new int[n];
+        int size = 0, cursor = 0;
+        pending[size++] = 0;
+        while (size > 0) {
+            int predator = pending[--size];
+            if (layout.predator[predator] != cursor && predator != cursor) {
+                Organisms.COMPACT_CURSOR_RESET.invokeExact(tree);
+                String[] path = layout.path(predator);
+                for (int i = 1; i < path.length; i++) {
+                    Organisms.COMPACT_MOVE_CURSOR.invokeExact(tree, path[i]);
+                }
+            } else if (predator != cursor) {
+                Organisms.COMPACT_MOVE_CURSOR.invokeExact(tree, layout.name(predator));
+            }
+            cursor = predator;
+            for (int p : prey[predator]) {
+                if (p < 0) {
+                    continue;
+                }
+                if (layout.isPlant[p]) {
+                    Organisms.COMPACT_ADD_PLANT_CHILD.invokeExact(tree, layout.name(p));
+                } else {
+                    Organisms.COMPACT_ADD_ANIMAL_CHILD.invokeExact(tree, layout.name(p), true, true);
+                }
+            }
+            // Pushed in reverse so that the leftmost animal is visited next, straight below the cursor.
+            for (int slot = 2; slot >= 0; slot--) {
+                int p = prey[predator][slot];
+                if (p >= 0 && !layout.isPlant[p]) {
+                    pending[size++] = p;
+                }
+            }
+        }
+        return tree;
+    }
+
+    private static long usedHeap() {
+        long used = Long.MAX_VALUE;
+        // Collections can leave floating garbage behind, so take the lowest of a few readings.
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, MEMORY.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    /** The holder array itself, which is not part of any tree. */
+    private static long arrayBytes(int length) {
+        return (16 + 4L * length + 7) & ~7L;
+    }
+}
@@ -0,0 +1,91 @@
+package foodpyramid.bench;
+
+import java.io.BufferedReader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Constant method handles onto the food pyramid classes.
+ *
+ * The food pyramid classes are in the default package, which cannot be imported from a named package, and JMH
+ * does not accept benchmarks in the default package. The handles are looked up once by class name, with nodes and
+ * trees adapted to Object, so benchmarks call them with invokeExact and the JIT inlines them like direct calls.
+ */
+final class Organisms {
+    static final Class<?> NODE = load("OrganismNode");
+    static final Class<?> TREE = load("OrganismTree");
+    static final Class<?> COMPACT = load("CompactOrganismTree");
+
+    static final MethodHandle LOAD = staticMethod(load("OrganismTreeLoader"), "load", TREE, BufferedReader.class);
+
+    static final MethodHandle GET_ROOT = virtual(TREE, "getRoot", NODE);
+    static final MethodHandle GET_CURSOR = virtual(TREE, "getCursor", NODE);
+    static final MethodHandle SET_CURSOR = virtual(TREE, "setCursor", void.class, NODE);
+    static final MethodHandle CURSOR_RESET = virtual(TREE, "cursorReset", void.class);
+    static final MethodHandle MOVE_CURSOR = virtual(TREE, "moveCursor", void.class, String.class);
+    static final MethodHandle JUMP_CURSOR = virtual(TREE, "jumpCursor", void.class, String.class);
+    static final MethodHandle LIST_FOOD_CHAIN = virtual(TREE, "listFoodChain", String.class);
+    static final MethodHandle LIST_ALL_PLANTS = virtual(TREE, "listAllPlants", String.class);
+    static final MethodHandle PRINT_ORGANISM_TREE = virtual(TREE, "printOrganismTree", void.class, Appendable.class);
+    static final MethodHandle ADD_PLANT_CHILD = virtual(TREE, "addPlantChild", void.class, String.class);
+    static final MethodHandle REMOVE_CHILD = virtual(TREE, "removeChild", void.class, String.class);
+
+    static final MethodHandle NEW_COMPACT = constructor(COMPACT, String.class, boolean.class, boolean.class, int.class);
+    static final MethodHandle COMPACT_CURSOR_RESET = virtual(COMPACT, "cursorReset", void.class);
+    static final MethodHandle COMPACT_MOVE_CURSOR = virtual(COMPACT, "moveCursor", void.class, String.class);
+    static final MethodHandle COMPACT_ADD_ANIMAL_CHILD = virtual(COMPACT, "addAnimalChild", void.class, String.class, boolean.class, boolean.class);
+    static final MethodHandle COMPACT_ADD_PLANT_CHILD = virtual(COMPACT, "addPlantChild", void.class, String.class);
+
+    private Organisms(){}
+
+    /**
+     * Replaces the food pyramid classes in a method type with Object, keeping every other type.
+     */
+    private static MethodType opaque(MethodType type) {
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (type.parameterType(i) == NODE || type.parameterType(i) == TREE || type.parameterType(i) == COMPACT) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (type.returnType() == NODE || type.returnType() == TREE || type.returnType() == COMPACT) {
+            type = type.changeReturnType(Object.class);
+        }
+        return type;
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> owner, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findConstructor(owner, MethodType.methodType(void.class, parameters));
+            return handle.asType(opaque(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle staticMethod(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findStatic(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(opaque(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private static MethodHandle virtual(Class<?> owner, String name, Class<?> returnType, Class<?>... parameters) {
+        try {
+            MethodHandle handle = MethodHandles.publicLookup().findVirtual(owner, name, MethodType.methodType(returnType, parameters));
+            return handle.asType(opaque(handle.type()));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package foodpyramid.bench;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.Arrays;
+
+/**
+ * A generated food pyramid together with the organisms the benchmarks aim at.
+ */
+final class Pyramid {
+    /** The OrganismTree. */
+    final Object tree;
+    /** The apex predator. */
+    final Object root;
+    /** The deepest animal. It always has a free prey slot. */
+    final Object deepest;
+    /** The names on the path from the apex predator to the deepest animal, both included. */
+    final String[] path;
+
+    private Pyramid(Object tree, Object root, Object deepest, String[] path) {
+        this.tree = tree;
+        this.root = root;
+        this.deepest = deepest;
+        this.path = path;
+    }
+
+    /**
+     * Generates a food pyramid with about the given number of organisms.
+     *
+     * @param shape
+     * The shape of the pyramid.
+     * @param size
+     * The number of organisms, at least 2.
+     * @return
+     * The pyramid.
+     * @throws Throwable
+     * If OrganismTreeLoader rejects the pyramid.
+     */
+    static Pyramid generate(Shape shape, int size) throws Throwable {
+        return generate(Layout.of(shape, size));
+    }
+
+    /**
+     * Loads the pyramid described by a layout.
+     *
+     * @param layout
+     * The organisms of the pyramid.
+     * @return
+     * The pyramid.
+     * @throws Throwable
+     * If OrganismTreeLoader rejects the pyramid.
+     */
+    static Pyramid generate(Layout layout) throws Throwable {
+        Object tree = (Object) Organisms.LOAD.invokeExact(new BufferedReader(new StringReader(layout.edgeList())));
+        Object root = (Object) Organisms.GET_ROOT.invokeExact(tree);
+        Organisms.JUMP_CURSOR.invokeExact(tree, layout.name(layout.deepest));
+        Object deepest = (Object) Organisms.GET_CURSOR.invokeExact(tree);
+        Organisms.CURSOR_RESET.invokeExact(tree);
+        return new Pyramid(tree, root, deepest, layout.path(layout.deepest));
+    }
+
+    /**
+     * The organisms of a generated pyramid by index, 0 being the apex predator, with each one's predator and slot.
+     * Animals are omnivores so that any prey matches their diet.
+     */
+    static final class Layout {
+        final int[] predator;
+        final int[] slot;
+        final boolean[] isPlant;
+        final int deepest;
+        /** Prepended to every name, so that copies of a layout do not share names. */
+        private final String prefix;
+
+        private Layout(int[] predator, int[] slot, boolean[] isPlant, int deepest) {
+            this(predator, slot, isPlant, deepest, "");
+        }
+
+        private Layout(int[] predator, int[] slot, boolean[] isPlant, int deepest, String prefix) {
+            this.predator = predator;
+            this.slot = slot;
+            this.isPlant = isPlant;
+            this.deepest = deepest;
+            this.prefix = prefix;
+        }
+
+        /**
+         * Returns the same layout with every name prefixed.
+         */
+        Layout renamed(String prefix) {
+            return new Layout(predator, slot, isPlant, deepest, prefix);
+        }
+
+        /**
+         * Lays out a food pyramid with about the given number of organisms.
+         *
+         * @param shape
+         * The shape of the pyramid.
+         * @param size
+         * The number of organisms, at least 2.
+         * @return
+         * The layout.
+         */
+        static Layout of(Shape shape, int size) {
+            if (size < 2) throw new IllegalArgumentException("A pyramid needs at least 2 organisms.");
+            switch (shape) {
+                case CHAIN: {
+                    Layout layout = new Layout(new int[size], new int[size], new boolean[size], size - 2);
+                    for (int i = 0; i < size; i++) {
+                        layout.predator[i] = i - 1;
+                    }
+                    layout.isPlant[size - 1] = true;
+                    return layout;
+                }
+                case PLANT_HEAVY: {
+                    // A spine of animals, each eating the next animal in its left slot and two plants beside it. The
+                    // last animal eats two plants on the left, leaving its right slot free.
+                    int spine = Math.max(1, size / 3);
+                    int count = spine * 3;
+                    Layout layout = new Layout(new int[count], new int[count], new boolean[count], 3 * (spine - 1));
+                    for (int i = 0; i < spine; i++) {
+                        int animal = 3 * i;
+                        layout.predator[animal] = i == 0 ? -1 : animal - 3;
+                        int first = i == spine - 1 ? 0 : 1;
+                        for (int p = 1; p <= 2; p++) {
+                            layout.predator[animal + p] = animal;
+                            layout.slot[animal + p] = first + p - 1;
+                            layout.isPlant[animal + p] = true;
+                        }
+                    }
+                    return layout;
+                }
+                default: {
+                    // Node i preys on nodes 3i+1 to 3i+3. The last animal drops its third prey so it has a free slot.
+                    int lastAnimal = (size - 2) / 3;
+                    int count = Math.min(size, 3 * lastAnimal + 3);
+                    Layout layout = new Layout(new int[count], new int[count], new boolean[count], lastAnimal);
+                    layout.predator[0] = -1;
+                    for (int i = 1; i < count; i++) {
+                        layout.predator[i] = (i - 1) / 3;
+                        layout.slot[i] = (i - 1) % 3;
+                        layout.isPlant[i] = 3 * i + 1 >= count;
+                    }
+                    return layout;
+                }
+            }
+        }
+
+        int size() {
+            return predator.length;
+        }
+
+        String name(int index) {
+            return prefix + (isPlant[index] ? "plant-" : "animal-") + index;
+        }
+
+        /**
+         * Returns the names from the apex predator down to the organism at the given index, both included.
+         */
+        String[] path(int index) {
+            int depth = 0;
+            for (int i = index; i >= 0; i = predator[i]) {
+                depth++;
+            }
+            String[] path = new String[depth];
+            for (int i = index; i >= 0; i = predator[i]) {
+                path[--depth] = name(i);
+            }
+            return path;
+        }
+
+        /**
+         * Returns the index of the prey in each slot of each organism, or -1 for an empty slot.
+         */
+        int[][] prey() {
+            int[][] prey = new int[size()][3];
+            for (int[] slots : prey) {
+                Arrays.fill(slots, -1);
+            }
+            for (int i = 1; i < size(); i++) {
+                prey[predator[i]][slot[i]] = i;
+            }
+            return prey;
+        }
+
+        /**
+         * Returns the layout as an edge list for OrganismTreeLoader, with each predator's prey in slot order.
+         */
+        String edgeList() {
+            int[][] prey = prey();
+            StringBuilder edges = new StringBuilder(size() * 32);
+            edges.append(',').append(name(0)).append(",A,O\n");
+            for (int i = 0; i < size(); i++) {
+                for (int p : prey[i]) {
+                    if (p >= 0) {
+                        edges.append(name(i)).append(',').append(name(p)).append(isPlant[p] ? ",P\n" : ",A,O\n");
+                    }
+                }
+            }
+            return edges.toString();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package foodpyramid.bench;
+
+/**
+ * The shapes of generated food pyramids.
+ */
+public enum Shape {
+    /** A complete ternary tree of omnivores whose last level is plants. Depth grows with log3 of the size. */
+    BALANCED,
+    /** A single chain of omnivores ending in one plant. Depth equals the size. */
+    CHAIN,
+    /** A spine of omnivores, each preying on the next omnivore and two plants. Two thirds of the organisms are plants. */
+    PLANT_HEAVY
+}
@@ -0,0 +1,95 @@
+package foodpyramid.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the core tree operations over generated pyramids of each shape and size.
+ *
+ * Operations that work at the cursor are measured at the deepest animal, where the food chain is longest;
+ * whole-pyramid operations are measured from the apex predator.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TreeBenchmarks {
+    private static final String SEED = "benchmark-seed";
+
+    @Param({"BALANCED", "CHAIN", "PLANT_HEAVY"})
+    public Shape shape;
+
+    @Param({"1000", "100000"})
+    public int size;
+
+    private Pyramid pyramid;
+    private final StringBuilder output = new StringBuilder();
+
+    @Setup
+    public void setUp() throws Throwable {
+        pyramid = Pyramid.generate(shape, size);
+    }
+
+    /**
+     * Adds a plant under the deepest animal, which updates the cached aggregates up to the apex predator, and removes it again.
+     */
+    @Benchmark
+    public void addPrey() throws Throwable {
+        Organisms.SET_CURSOR.invokeExact(pyramid.tree, pyramid.deepest);
+        Organisms.ADD_PLANT_CHILD.invokeExact(pyramid.tree, SEED);
+        Organisms.REMOVE_CHILD.invokeExact(pyramid.tree, SEED);
+    }
+
+    /**
+     * Moves the cursor from the apex predator down to the deepest animal one level at a time.
+     */
+    @Benchmark
+    public void moveCursor() throws Throwable {
+        Organisms.CURSOR_RESET.invokeExact(pyramid.tree);
+        String[] path = pyramid.path;
+        for (int i = 1; i < path.length; i++) {
+            Organisms.MOVE_CURSOR.invokeExact(pyramid.tree, path[i]);
+        }
+    }
+
+    @Benchmark
+    public void jumpCursor() throws Throwable {
+        Organisms.JUMP_CURSOR.invokeExact(pyramid.tree, pyramid.path[pyramid.path.length - 1]);
+    }
+
+    @Benchmark
+    public String listFoodChain() throws Throwable {
+        Organisms.SET_CURSOR.invokeExact(pyramid.tree, pyramid.deepest);
+        return (String) Organisms.LIST_FOOD_CHAIN.invokeExact(pyramid.tree);
+    }
+
+    @Benchmark
+    public String listAllPlants() throws Throwable {
+        Organisms.SET_CURSOR.invokeExact(pyramid.tree, pyramid.root);
+        return (String) Organisms.LIST_ALL_PLANTS.invokeExact(pyramid.tree);
+    }
+
+    /**
+     * Prints the whole pyramid through printOrganismTreeHelper into a reused buffer.
+     */
+    @Benchmark
+    public int printOrganismTree() throws Throwable {
+        Organisms.SET_CURSOR.invokeExact(pyramid.tree, pyramid.root);
+        output.setLength(0);
+        Organisms.PRINT_ORGANISM_TREE.invokeExact(pyramid.tree, (Appendable) output);
+        return output.length();
+    }
+}
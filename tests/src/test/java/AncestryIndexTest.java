@@ -0,0 +1,63 @@
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class AncestryIndexTest {
+    @Test
+    void agreesWithAWalkUpThePredatorsForEveryPair() throws Exception {
+        AncestryIndex index = RandomPyramid.load(11, 400).ancestryIndex();
+        assertEquals(400, index.size());
+
+        for (int a = 0; a < index.size(); a++) {
+            OrganismNode first = index.getOrganism(a);
+            Map<OrganismNode, Boolean> predators = predatorsOf(first);
+            for (int b = 0; b < index.size(); b++) {
+                OrganismNode second = index.getOrganism(b);
+                assertEquals(predatorsOf(second).containsKey(first), index.isInFoodChain(a, b), () -> first.getName() + " over " + second.getName());
+                OrganismNode common = second;
+                while (!predators.containsKey(common)) {
+                    common = common.getParent();
+                }
+                assertSame(common, index.getOrganism(index.lowestCommonPredator(a, b)), () -> first.getName() + " and " + second.getName());
+            }
+        }
+    }
+
+    @Test
+    void answersBatchesLikeSingleQueries() throws Exception {
+        AncestryIndex index = RandomPyramid.load(13, 5000).ancestryIndex();
+        Random random = new Random(13);
+        int queries = 3 * AncestryIndex.CHUNK;
+        int[] a = new int[queries], b = new int[queries], expectedCommon = new int[queries];
+        boolean[] expectedChain = new boolean[queries];
+        for (int i = 0; i < queries; i++) {
+            a[i] = random.nextInt(index.size());
+            b[i] = random.nextInt(index.size());
+            expectedCommon[i] = index.lowestCommonPredator(a[i], b[i]);
+            expectedChain[i] = index.isInFoodChain(a[i], b[i]);
+        }
+
+        int[] common = new int[queries];
+        boolean[] chain = new boolean[queries];
+        index.lowestCommonPredators(a, b, common);
+        index.isInFoodChain(a, b, chain);
+
+        assertArrayEquals(expectedCommon, common);
+        assertArrayEquals(expectedChain, chain);
+    }
+
+    /** Returns node and everything that eats it, directly or indirectly. */
+    private static Map<OrganismNode, Boolean> predatorsOf(OrganismNode node) {
+        Map<OrganismNode, Boolean> predators = new IdentityHashMap<>();
+        for (; node != null; node = node.getParent()) {
+            predators.put(node, Boolean.TRUE);
+        }
+        return predators;
+    }
+}
@@ -0,0 +1,20 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+class CompactOrganismTreeTest {
+    @Test
+    void keepsAnAnimalWithNoDietThroughNameRebuilds() throws Exception {
+        CompactOrganismTree tree = new CompactOrganismTree("Lion", false, true);
+        tree.addAnimalChild("Rock", false, false);
+        for (int i = 0; i < 5000; i++) {
+            tree.addAnimalChild("Zebra" + i, true, false);
+            tree.removeChild("Zebra" + i);
+        }
+
+        assertEquals(2, tree.size());
+        tree.moveCursor("Rock");
+        assertEquals("Rock", tree.getCursorName());
+        assertEquals(" Lion-> Rock", tree.listFoodChain());
+    }
+}
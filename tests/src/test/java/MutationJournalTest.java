@@ -0,0 +1,398 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MutationJournalTest {
+    @TempDir
+    Path directory;
+
+    private Path snapshot, journalFile;
+    private OrganismTree tree;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        snapshot = directory.resolve("pyramid.snapshot");
+        journalFile = directory.resolve("pyramid.journal");
+        tree = new OrganismTree(new OrganismNode("Lion", false, true, true, null, null, null));
+    }
+
+    @Test
+    void replaysEveryAppendAfterTheSnapshot() throws Exception {
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, journalFile)) {
+            tree.addAnimalChild("Zebra", true, false);
+            tree.addAnimalChild("Hyena", false, true);
+            tree.moveCursor("Zebra");
+            tree.addPlantChild("Grass");
+            tree.addPlantChild("Acacia");
+            tree.cursorReset();
+            tree.removeChild("Hyena");
+            assertEquals(5, journal.getDurableCount());
+        }
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertSamePyramid(tree, recovered);
+        assertEquals(4, recovered.countOrganisms());
+    }
+
+    @Test
+    void stopsAtATornTailRecord() throws Exception {
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, journalFile)) {
+            tree.addAnimalChild("Zebra", true, false);
+            tree.addAnimalChild("Hyena", false, true);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile.toFile(), "rw")) {
+            file.setLength(file.length() - 3);
+        }
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertEquals(2, recovered.countOrganisms());
+        assertEquals(" Lion-> Zebra", jump(recovered, "Zebra"));
+    }
+
+    @Test
+    void stopsAtATailRecordWithABadChecksum() throws Exception {
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, journalFile)) {
+            tree.addAnimalChild("Zebra", true, false);
+            tree.addAnimalChild("Hyena", false, true);
+        }
+        try (RandomAccessFile file = new RandomAccessFile(journalFile.toFile(), "rw")) {
+            // The last byte is the end of the last record's name.
+            file.seek(file.length() - 1);
+            int last = file.read();
+            file.seek(file.length() - 1);
+            file.write(last ^ 0x20);
+        }
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertEquals(2, recovered.countOrganisms());
+        assertNull(recovered.getRoot().getMiddle());
+    }
+
+    @Test
+    void ignoresAJournalOlderThanTheSnapshot() throws Exception {
+        byte[] beforeCompaction;
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, journalFile)) {
+            tree.addAnimalChild("Zebra", true, false);
+            tree.moveCursor("Zebra");
+            tree.addPlantChild("Grass");
+            tree.cursorReset();
+            beforeCompaction = Files.readAllBytes(journalFile);
+            journal.compact();
+            assertEquals(2, journal.getGeneration());
+        }
+        // A crash after the new snapshot was moved into place, before the journal was truncated.
+        Files.write(journalFile, beforeCompaction);
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertSamePyramid(tree, recovered);
+        assertEquals(0, MutationJournal.replay(OrganismTreeSnapshot.load(snapshot), journalFile, OrganismTreeSnapshot.readGeneration(snapshot)));
+    }
+
+    @Test
+    void concurrentCommittersShareTheJournal() throws Exception {
+        int threads = 3, addsPerThread = 50;
+        for (int t = 0; t < threads; t++) {
+            tree.addAnimalChild("Omnivore" + t, true, true);
+        }
+
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, journalFile)) {
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Void>> done = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    String predator = "Omnivore" + t;
+                    done.add(pool.submit((Callable<Void>) () -> {
+                        OrganismSession session = tree.openSession();
+                        session.moveCursor(predator);
+                        String chain = predator;
+                        for (int i = 0; i < addsPerThread; i++) {
+                            String prey = chain + "-" + i;
+                            session.addAnimalChild(prey, true, true);
+                            session.moveCursor(prey);
+                            chain = prey;
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : done) {
+                    future.get();
+                }
+            } finally {
+                pool.shutdown();
+            }
+            assertEquals((long) threads * addsPerThread, journal.getDurableCount());
+        }
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertSamePyramid(tree, recovered);
+        assertEquals(1 + threads * (addsPerThread + 1), recovered.countOrganisms());
+    }
+
+    @Test
+    void journalsAGraftOfADetachedSubtreeAsOneRecord() throws Exception {
+        tree.addAnimalChild("Zebra", true, false);
+        tree.addAnimalChild("Hyena", false, true);
+        tree.moveCursor("Zebra");
+        tree.addPlantChild("Grass");
+        tree.addPlantChild("Acacia");
+        tree.cursorReset();
+
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, journalFile)) {
+            OrganismNode zebra = tree.detachChild("Zebra");
+            // Edits inside the detached subtree are journaled against it.
+            tree.setCursor(zebra);
+            tree.addPlantChild("Clover");
+            tree.cursorReset();
+            tree.moveCursor("Hyena");
+            tree.graft(zebra);
+            tree.cursorReset();
+            assertEquals(3, journal.getDurableCount());
+        }
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertSamePyramid(tree, recovered);
+        assertEquals(" Lion-> Hyena-> Zebra-> Clover", jump(recovered, "Clover"));
+    }
+
+    @Test
+    void recreatesSubtreesDetachedAcrossACompaction() throws Exception {
+        tree.addAnimalChild("Zebra", true, false);
+        tree.addAnimalChild("Hyena", false, true);
+        tree.moveCursor("Zebra");
+        tree.addPlantChild("Grass");
+        tree.cursorReset();
+
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, journalFile)) {
+            OrganismNode zebra = tree.detachChild("Zebra");
+            journal.compact();
+            tree.moveCursor("Hyena");
+            tree.graft(zebra);
+            tree.cursorReset();
+        }
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertSamePyramid(tree, recovered);
+        assertEquals(" Lion-> Hyena-> Zebra-> Grass", jump(recovered, "Grass"));
+    }
+
+    @Test
+    void discardsDetachedSubtreesFromTheIndex() throws Exception {
+        tree.addAnimalChild("Zebra", true, false);
+        tree.addAnimalChild("Hyena", false, true);
+        tree.moveCursor("Hyena");
+        tree.addAnimalChild("Jackal", false, true);
+        tree.cursorReset();
+
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, journalFile)) {
+            OrganismNode zebra = tree.detachChild("Zebra");
+            tree.discard(zebra);
+            assertThrows(IllegalArgumentException.class, () -> tree.jumpCursor("Zebra"));
+            assertThrows(IllegalArgumentException.class, () -> tree.discard(zebra));
+            // Left detached when the process stops, so recovery drops it.
+            tree.moveCursor("Hyena");
+            tree.detachChild("Jackal");
+            tree.cursorReset();
+        }
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertSamePyramid(tree, recovered);
+        assertThrows(IllegalArgumentException.class, () -> recovered.jumpCursor("Zebra"));
+        assertThrows(IllegalArgumentException.class, () -> recovered.jumpCursor("Jackal"));
+    }
+
+    @Test
+    void graftsANewSubtreeOnlyIfItObeysTheAddRules() throws Exception {
+        tree.addAnimalChild("Zebra", true, false);
+        OrganismNode gap = new OrganismNode("Cow", false, true, false, null, new OrganismNode("Grass", true, false, false, null, null, null), null);
+        OrganismNode wrongDiet = new OrganismNode("Cow", false, true, false, new OrganismNode("Mouse", false, true, false, null, null, null), null, null);
+        OrganismNode twins = new OrganismNode("Cow", false, true, false, new OrganismNode("Grass", true, false, false, null, null, null),
+                new OrganismNode("Grass", true, false, false, null, null, null), null);
+        OrganismNode plantWithPrey = new OrganismNode("Fern", true, false, false, new OrganismNode("Moss", true, false, false, null, null, null), null, null);
+        OrganismNode shared = new OrganismNode("Cow", false, true, true, tree.getRoot().getLeft(), null, null);
+        long before = tree.getVersion();
+        assertThrows(PositionNotAvailableException.class, () -> tree.graft(gap));
+        assertThrows(DietMismatchException.class, () -> tree.graft(wrongDiet));
+        assertThrows(IllegalArgumentException.class, () -> tree.graft(twins));
+        assertThrows(IllegalArgumentException.class, () -> tree.graft(shared));
+        tree.moveCursor("Zebra");
+        assertThrows(IsPlantException.class, () -> tree.graft(plantWithPrey));
+        tree.cursorReset();
+        assertEquals(before, tree.getVersion());
+        assertEquals(2, tree.countOrganisms());
+
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, journalFile)) {
+            OrganismNode cow = new OrganismNode("Cow", false, true, false, new OrganismNode("Grass", true, false, false, null, null, null),
+                    new OrganismNode("Clover", true, false, false, null, null, null), null);
+            tree.graft(cow);
+            assertFalse(tree.getRoot().getMiddle().getLeft().getParent() == null);
+            assertEquals(3, journal.getDurableCount());
+        }
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertSamePyramid(tree, recovered);
+        assertEquals(" Lion-> Cow-> Clover", jump(recovered, "Clover"));
+    }
+
+    @Test
+    void retriesAFailedCommitAtTheSameOffset() throws Exception {
+        FailingChannel channel = new FailingChannel(FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        try (MutationJournal journal = MutationJournal.open(tree, snapshot, channel, 0, 0)) {
+            tree.addAnimalChild("Zebra", true, false);
+            channel.failing = true;
+            assertThrows(UncheckedIOException.class, () -> tree.addAnimalChild("Hyena", false, true));
+            assertThrows(IOException.class, journal::sync);
+            assertEquals(1, journal.getDurableCount());
+            channel.failing = false;
+            tree.addAnimalChild("Warthog", true, true);
+            assertEquals(3, journal.getDurableCount());
+            journal.sync();
+        }
+
+        OrganismTree recovered = MutationJournal.recover(snapshot, journalFile);
+        assertSamePyramid(tree, recovered);
+        assertEquals(4, recovered.countOrganisms());
+    }
+
+    private static void assertSamePyramid(OrganismTree expected, OrganismTree actual) {
+        OrganismDiff diff = OrganismDiff.diff(expected, actual);
+        assertTrue(diff.isEmpty(), () -> "Recovered tree differs: " + diff.getChanges());
+        assertEquals(expected.getRoot().getHash(), actual.getRoot().getHash());
+    }
+
+    private static String jump(OrganismTree tree, String name) {
+        tree.jumpCursor(name);
+        String chain = tree.listFoodChain();
+        tree.cursorReset();
+        return chain;
+    }
+
+    /**
+     * A journal channel whose positional writes, while failing is set, write half the buffer and then throw.
+     */
+    private static final class FailingChannel extends FileChannel {
+        private final FileChannel file;
+        volatile boolean failing;
+
+        FailingChannel(FileChannel file) {
+            this.file = file;
+        }
+
+        @Override
+        public int write(ByteBuffer source, long position) throws IOException {
+            if (!failing) {
+                return file.write(source, position);
+            }
+            ByteBuffer half = source.duplicate();
+            half.limit(half.position() + half.remaining() / 2);
+            file.write(half, position);
+            throw new IOException("Injected write failure");
+        }
+
+        @Override
+        public int read(ByteBuffer destination) throws IOException {
+            return file.read(destination);
+        }
+
+        @Override
+        public long read(ByteBuffer[] destinations, int offset, int length) throws IOException {
+            return file.read(destinations, offset, length);
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            return file.write(source);
+        }
+
+        @Override
+        public long write(ByteBuffer[] sources, int offset, int length) throws IOException {
+            return file.write(sources, offset, length);
+        }
+
+        @Override
+        public long position() throws IOException {
+            return file.position();
+        }
+
+        @Override
+        public FileChannel position(long position) throws IOException {
+            file.position(position);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return file.size();
+        }
+
+        @Override
+        public FileChannel truncate(long size) throws IOException {
+            file.truncate(size);
+            return this;
+        }
+
+        @Override
+        public void force(boolean metaData) throws IOException {
+            file.force(metaData);
+        }
+
+        @Override
+        public long transferTo(long position, long count, WritableByteChannel target) throws IOException {
+            return file.transferTo(position, count, target);
+        }
+
+        @Override
+        public long transferFrom(ReadableByteChannel source, long position, long count) throws IOException {
+            return file.transferFrom(source, position, count);
+        }
+
+        @Override
+        public int read(ByteBuffer destination, long position) throws IOException {
+            return file.read(destination, position);
+        }
+
+        @Override
+        public MappedByteBuffer map(MapMode mode, long position, long size) throws IOException {
+            return file.map(mode, position, size);
+        }
+
+        @Override
+        public FileLock lock(long position, long size, boolean shared) throws IOException {
+            return file.lock(position, size, shared);
+        }
+
+        @Override
+        public FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return file.tryLock(position, size, shared);
+        }
+
+        @Override
+        protected void implCloseChannel() throws IOException {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+class NameDictionaryTest {
+    @Test
+    @Timeout(60)
+    void reclaimsTheNamesOfRemovedOrganisms() throws Exception {
+        NameDictionary names = NameDictionary.shared();
+        OrganismTree tree = new OrganismTree(new OrganismNode("Lion", false, true, true, null, null, null));
+        tree.addAnimalChild("Kept", true, false);
+        int before = names.size();
+
+        for (int i = 0; i < 20000; i++) {
+            tree.addAnimalChild("Passing" + i, true, false);
+            tree.removeChild("Passing" + i);
+        }
+        assertTrue(names.size() > before);
+
+        // Collection is up to the JVM, so this asks until the removed organisms' names are gone.
+        while (names.size() > before + 1000) {
+            System.gc();
+            Thread.sleep(10);
+            // Adding a name is what frees the collected ones.
+            new OrganismNode("Probe", true, false, false, null, null, null);
+        }
+        assertEquals(NameDictionary.NONE, names.lookup("Passing0"));
+        assertNotEquals(NameDictionary.NONE, names.lookup("Kept"));
+        tree.moveCursor("Kept");
+        assertEquals("Kept", tree.getCursor().getName());
+    }
+
+    @Test
+    void keepsEveryNameInAnOwnedDictionary() {
+        NameDictionary names = new NameDictionary();
+        int zebra = names.intern("Zebra");
+        System.gc();
+        names.intern("zebra");
+
+        assertEquals(2, names.size());
+        assertEquals(zebra, names.lookup("Zebra"));
+        assertEquals("Zebra", names.name(zebra));
+        assertEquals(names.lookupFolded("ZEBRA"), names.foldedId(zebra));
+    }
+}
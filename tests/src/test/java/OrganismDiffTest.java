@@ -0,0 +1,67 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OrganismDiffTest {
+    @Test
+    void reportsAddedRemovedAndChangedOrganisms() throws Exception {
+        OrganismTree before = RandomPyramid.load(",Lion,A,O\nLion,Zebra,A,H\nZebra,Grass,P\nLion,Hyena,A,C\n");
+        OrganismTree after = RandomPyramid.load(",Lion,A,O\nLion,Zebra,A,O\nZebra,Grass,P\nLion,Warthog,A,H\nWarthog,Acacia,P\n");
+
+        OrganismDiff diff = OrganismDiff.diff(before, after);
+
+        assertEquals(3, diff.getChanges().size());
+        List<OrganismDiff.Change> changed = diff.getChanges(OrganismDiff.Kind.CHANGED);
+        assertEquals(1, changed.size());
+        assertEquals("Lion -> Zebra", changed.get(0).getPath());
+        assertEquals("~ Lion -> Zebra (herbivore -> omnivore)", changed.get(0).toString());
+        List<OrganismDiff.Change> added = diff.getChanges(OrganismDiff.Kind.ADDED);
+        assertEquals(1, added.size());
+        assertNull(added.get(0).getBefore());
+        assertEquals("+ Lion -> Warthog (2 organisms)", added.get(0).toString());
+        List<OrganismDiff.Change> removed = diff.getChanges(OrganismDiff.Kind.REMOVED);
+        assertEquals(1, removed.size());
+        assertNull(removed.get(0).getAfter());
+        assertEquals("- Lion -> Hyena", removed.get(0).toString());
+    }
+
+    @Test
+    void comparesNothingInIdenticalPyramids() throws Exception {
+        String edges = RandomPyramid.edges(7, 2000);
+        OrganismDiff diff = OrganismDiff.diff(RandomPyramid.load(edges), RandomPyramid.load(edges));
+
+        assertTrue(diff.isEmpty());
+        assertEquals(0, diff.getComparedCount());
+    }
+
+    @Test
+    void opensOnlyThePathToAChange() throws Exception {
+        String edges = RandomPyramid.edges(7, 2000);
+        OrganismTree before = RandomPyramid.load(edges);
+        OrganismTree after = RandomPyramid.load(edges);
+        OrganismNode deepest = after.streamSubtree().filter(node -> !node.getIsPlant() && node.getLeft() == null)
+                .max((a, b) -> Integer.compare(depth(a), depth(b))).orElseThrow();
+        after.jumpCursor(deepest.getName());
+        after.addPlantChild("Clover");
+
+        OrganismDiff diff = OrganismDiff.diff(before, after);
+
+        assertEquals(1, diff.getChanges().size());
+        assertEquals(OrganismDiff.Kind.ADDED, diff.getChanges().get(0).getKind());
+        assertEquals("Clover", diff.getChanges().get(0).getAfter().getName());
+        // Every pair from the apex predator down to Clover's predator differs, and no other pair is opened.
+        assertEquals(depth(deepest) + 1, diff.getComparedCount());
+    }
+
+    private static int depth(OrganismNode node) {
+        int depth = 0;
+        for (OrganismNode predator = node.getParent(); predator != null; predator = predator.getParent()) {
+            depth++;
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,68 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OrganismSessionTest {
+    @TempDir
+    Path directory;
+
+    private OrganismTree tree;
+    private OrganismSession first, second;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tree = new OrganismTree(new OrganismNode("Lion", false, true, true, null, null, null));
+        first = tree.openSession();
+        second = tree.openSession();
+    }
+
+    @Test
+    void rejectsEditsAtACursorAnotherSessionRemoved() throws Exception {
+        try (MutationJournal journal = MutationJournal.open(tree, directory.resolve("pyramid.snapshot"), directory.resolve("pyramid.journal"))) {
+            first.addAnimalChild("Zebra", true, false);
+            second.moveCursor("Zebra");
+            first.removeChild("Zebra");
+            long version = tree.getVersion();
+
+            assertEquals(OrganismResult.NOT_IN_PYRAMID, second.tryAddPlantChild("Grass"));
+            assertThrows(IllegalArgumentException.class, () -> second.addPlantChild("Grass"));
+            assertEquals(OrganismResult.NOT_IN_PYRAMID, second.tryRemoveChild("Grass"));
+            assertThrows(IllegalArgumentException.class, () -> second.detachChild("Grass"));
+            assertEquals(version, tree.getVersion());
+            assertThrows(IllegalArgumentException.class, () -> first.jumpCursor("Grass"));
+            assertEquals(" Lion", first.listFoodChain());
+            assertEquals(2, journal.getDurableCount());
+        }
+        assertEquals(1, tree.countOrganisms());
+    }
+
+    @Test
+    void keepsEditingASubtreeDetachedFromTheTree() throws Exception {
+        first.addAnimalChild("Zebra", true, false);
+        second.moveCursor("Zebra");
+        OrganismNode zebra = first.detachChild("Zebra");
+
+        assertEquals(OrganismResult.OK, second.tryAddPlantChild("Grass"));
+        first.graft(zebra);
+        first.jumpCursor("Grass");
+        assertEquals(" Lion-> Zebra-> Grass", first.listFoodChain());
+    }
+
+    @Test
+    void jumpsOnlyToOrganismsInThePyramid() throws Exception {
+        first.addAnimalChild("Zebra", true, false);
+        first.moveCursor("Zebra");
+        first.addPlantChild("Grass");
+        second.moveCursor("Zebra");
+        first.cursorReset();
+        first.removeChild("Zebra");
+
+        assertThrows(IllegalArgumentException.class, () -> first.jumpCursor("Grass"));
+        assertThrows(IllegalArgumentException.class, () -> second.jumpCursor("Zebra"));
+    }
+}
@@ -0,0 +1,64 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OrganismSpliteratorTest {
+    private OrganismTree tree;
+    private List<OrganismNode> preorder;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tree = RandomPyramid.load(17, 3000);
+        preorder = new ArrayList<>();
+        OrganismTraversal.preorder(tree.getRoot(), (node, depth) -> {
+            preorder.add(node);
+            return OrganismVisitor.Result.CONTINUE;
+        });
+    }
+
+    @Test
+    void keepsPreorderInParallelStreams() {
+        assertEquals(preorder, tree.streamSubtree().parallel().collect(Collectors.toList()));
+        assertEquals(preorder.stream().filter(OrganismNode::getIsPlant).collect(Collectors.toList()),
+                tree.streamPlants().parallel().collect(Collectors.toList()));
+        assertEquals(tree.getRoot().getSubtreeSize(), tree.streamSubtree().parallel().count());
+        assertEquals(tree.getRoot().getPlantCount(), tree.streamPlants().parallel().count());
+    }
+
+    @Test
+    void splitsIntoExactlySizedPiecesInOrder() {
+        List<OrganismNode> walked = new ArrayList<>();
+        drain(OrganismSpliterator.subtree(tree.getRoot()), walked);
+        assertEquals(preorder, walked);
+
+        List<OrganismNode> plants = new ArrayList<>();
+        drain(OrganismSpliterator.plants(tree.getRoot()), plants);
+        assertEquals(preorder.stream().filter(OrganismNode::getIsPlant).collect(Collectors.toList()), plants);
+    }
+
+    /**
+     * Splits a spliterator all the way down, checking that every piece reports its exact size, and walks the
+     * pieces in encounter order: each split-off prefix before what is left.
+     */
+    private static void drain(Spliterator<OrganismNode> spliterator, List<OrganismNode> out) {
+        assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED | Spliterator.ORDERED));
+        long size = spliterator.getExactSizeIfKnown();
+        int start = out.size();
+        Spliterator<OrganismNode> prefix = spliterator.trySplit();
+        if (prefix != null) {
+            assertEquals(size, prefix.getExactSizeIfKnown() + spliterator.getExactSizeIfKnown());
+            drain(prefix, out);
+            drain(spliterator, out);
+        } else {
+            spliterator.forEachRemaining(out::add);
+        }
+        assertEquals(size, out.size() - start);
+    }
+}
@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+class OrganismTreeLoaderTest {
+    @Test
+    void loadsEdgesInAnyOrder() throws Exception {
+        OrganismTree tree = RandomPyramid.load("predator,prey,type,diet\n# prey first\nZebra,Grass,P\n\nLion,Zebra,A,H\n,Lion,A,C\n");
+
+        assertEquals(3, tree.countOrganisms());
+        tree.jumpCursor("Grass");
+        assertEquals(" Lion-> Zebra-> Grass", tree.listFoodChain());
+    }
+
+    @Test
+    void rejectsMalformedLinesWithTheirLineNumber() {
+        assertMessage(IllegalArgumentException.class, "line 2: Expected predator,prey,type[,diet]", ",Lion,A,C\nLion\n");
+        assertMessage(IllegalArgumentException.class, "line 1: Invalid diet: X. Expected H, C or O.", ",Lion,A,X\n");
+        assertMessage(IllegalArgumentException.class, "line 2: Invalid type: Q. Expected A or P.", ",Lion,A,C\nLion,Zebra,Q\n");
+        assertMessage(IllegalArgumentException.class, "line 3: Zebra is defined more than once.", ",Lion,A,C\nLion,Zebra,A,H\nLion,Zebra,A,H\n");
+        assertMessage(IllegalArgumentException.class, "line 2: Only one apex predator may be given.", ",Lion,A,C\n,Tiger,A,C\n");
+        assertMessage(PositionNotAvailableException.class, "line 5: ERROR: There is no more room for more prey for Lion.",
+                ",Lion,A,C\nLion,A,A,C\nLion,B,A,C\nLion,C,A,C\nLion,D,A,C\n");
+    }
+
+    @Test
+    void rejectsEdgesThatDoNotFormOnePyramid() {
+        assertMessage(IllegalArgumentException.class, "Lion is a predator but is never defined.", "Lion,Zebra,A,H\n");
+        assertMessage(IllegalArgumentException.class, "The edge list has no apex predator.", "A,B,A,C\nB,A,A,C\n");
+        assertMessage(IllegalArgumentException.class, "The edge list does not form a single food pyramid under Lion.",
+                ",Lion,A,C\nA,B,A,C\nB,A,A,C\n");
+    }
+
+    @Test
+    void rejectsPreyThePredatorCannotEat() {
+        assertMessage(IsPlantException.class, "Plant nodes cannot have children: Grass", ",Lion,A,O\nLion,Grass,P\nGrass,Moss,P\n");
+        assertMessage(DietMismatchException.class, "ERROR: Grass does not match the diet of Lion.", ",Lion,A,C\nLion,Grass,P\n");
+    }
+
+    private static void assertMessage(Class<? extends Exception> type, String message, String edges) {
+        assertEquals(message, assertThrows(type, () -> RandomPyramid.load(edges)).getMessage());
+    }
+}
@@ -0,0 +1,44 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class OrganismTreeSnapshotTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void loadsTheTreeItSaved() throws Exception {
+        OrganismTree saved = RandomPyramid.load(19, 3000);
+        Path file = directory.resolve("pyramid.snapshot");
+        OrganismTreeSnapshot.save(saved, file);
+
+        OrganismTree loaded = OrganismTreeSnapshot.load(file);
+
+        assertEquals(saved.getRoot().getHash(), loaded.getRoot().getHash());
+        assertTrue(OrganismDiff.diff(saved, loaded).isEmpty());
+        assertEquals(saved.countOrganisms(), loaded.countOrganisms());
+        StringBuilder savedPrintout = new StringBuilder(), loadedPrintout = new StringBuilder();
+        saved.printOrganismTree(savedPrintout);
+        loaded.printOrganismTree(loadedPrintout);
+        assertEquals(savedPrintout.toString(), loadedPrintout.toString());
+
+        saved.jumpCursor("O2999");
+        loaded.jumpCursor("O2999");
+        assertEquals(saved.listFoodChain(), loaded.listFoodChain());
+    }
+
+    @Test
+    void rejectsAFileThatIsNotASnapshot() throws Exception {
+        Path file = directory.resolve("pyramid.snapshot");
+        Files.write(file, new byte[64]);
+
+        assertThrows(IOException.class, () -> OrganismTreeSnapshot.load(file));
+    }
+}
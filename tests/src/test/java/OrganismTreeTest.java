@@ -0,0 +1,72 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.util.ConcurrentModificationException;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class OrganismTreeTest {
+    private OrganismTree tree;
+
+    /** Builds a pyramid whose printout is several times larger than one streamed chunk. */
+    @BeforeEach
+    void setUp() throws Exception {
+        tree = new OrganismTree(new OrganismNode("Predator0", false, true, true, null, null, null));
+        int named = 1;
+        for (int predator = 0; predator < 2000; predator++) {
+            tree.jumpCursor("Predator" + predator);
+            tree.addAnimalChild("Predator" + named++, true, true);
+            tree.addAnimalChild("Predator" + named++, true, true);
+            tree.addPlantChild("Plant" + predator);
+        }
+        tree.cursorReset();
+    }
+
+    @Test
+    void streamsTheSameTreeAsItRendersInMemory() throws Exception {
+        StringBuilder rendered = new StringBuilder();
+        tree.printOrganismTree(rendered);
+        StringWriter streamed = new StringWriter();
+        tree.printOrganismTree(streamed);
+
+        assertTrue(rendered.length() > 2 << 16, "The printout fits in too few chunks: " + rendered.length());
+        assertEquals(rendered.toString(), streamed.toString());
+    }
+
+    @Test
+    void streamsTheSamePlantsAsItListsInMemory() throws Exception {
+        StringBuilder listed = new StringBuilder();
+        StringWriter streamed = new StringWriter();
+
+        assertEquals(2000, tree.listAllPlants(listed));
+        assertEquals(2000, tree.listAllPlants(streamed));
+        assertEquals(listed.toString(), streamed.toString());
+        assertEquals(tree.listAllPlants(), streamed.toString());
+    }
+
+    @Test
+    void failsAStreamTheTreeChangedUnder() {
+        Appendable meddling = new Appendable() {
+            @Override
+            public Appendable append(CharSequence text) {
+                tree.removeChild("Plant0");
+                return this;
+            }
+
+            @Override
+            public Appendable append(CharSequence text, int start, int end) {
+                return append(text);
+            }
+
+            @Override
+            public Appendable append(char c) {
+                return append(String.valueOf(c));
+            }
+        };
+
+        assertThrows(ConcurrentModificationException.class, () -> tree.printOrganismTree(meddling));
+    }
+}
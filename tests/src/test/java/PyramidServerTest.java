@@ -0,0 +1,183 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(30)
+class PyramidServerTest {
+    private OrganismTree tree;
+    private PyramidServer server;
+    private SocketAddress address;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tree = new OrganismTree(new OrganismNode("Lion", false, true, true, null, null, null));
+        tree.addAnimalChild("Zebra", true, false);
+        tree.addAnimalChild("Hyena", false, true);
+        tree.addAnimalChild("Warthog", true, true);
+        server = new PyramidServer(tree, new CommandMetrics());
+        address = server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        server.close();
+    }
+
+    @Test
+    void framesEveryReplyWithOkOrErr() throws Exception {
+        try (Client client = new Client()) {
+            assertEquals(List.of("+OK food pyramid of Lion"), client.greeting);
+            assertEquals(List.of("Cursor successfully moved to Zebra!", "+OK"), client.send("M Zebra"));
+            assertEquals(List.of("+OK"), client.send("# a comment"));
+            List<String> error = client.send("M Nobody");
+            assertEquals(1, error.size());
+            assertTrue(error.get(0).startsWith("-ERR "), error.get(0));
+            assertEquals(List.of("-ERR Invalid choice: XYZZY"), client.send("xyzzy"));
+            // The connection is still usable after an error.
+            assertEquals(List.of(" Lion-> Zebra", "+OK"), client.send("C"));
+        }
+    }
+
+    @Test
+    void givesEveryClientItsOwnCursor() throws Exception {
+        String[] prey = { "Zebra", "Hyena", "Warthog" };
+        ExecutorService pool = Executors.newFixedThreadPool(prey.length);
+        try {
+            List<Future<Void>> done = new ArrayList<>();
+            for (String name : prey) {
+                done.add(pool.submit((Callable<Void>) () -> {
+                    try (Client client = new Client()) {
+                        client.send("M " + name);
+                        for (int i = 0; i < 50; i++) {
+                            assertEquals(List.of(" Lion-> " + name, "+OK"), client.send("C"));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<Void> future : done) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void answersPipelinedCommandsInOrder() throws Exception {
+        try (Client client = new Client()) {
+            client.write("M Hyena\nC\r\nR\nC\n");
+            assertEquals(List.of("Cursor successfully moved to Hyena!", "+OK"), client.reply());
+            assertEquals(List.of(" Lion-> Hyena", "+OK"), client.reply());
+            assertEquals(List.of("Cursor successfully reset to root!", "+OK"), client.reply());
+            assertEquals(List.of(" Lion", "+OK"), client.reply());
+        }
+    }
+
+    @Test
+    void rejectsAnOverlongLineAndKeepsServing() throws Exception {
+        try (Client client = new Client()) {
+            char[] name = new char[PyramidServer.MAX_LINE_BYTES + 100];
+            Arrays.fill(name, 'x');
+            List<String> error = client.send("M " + new String(name));
+            assertEquals(1, error.size());
+            assertTrue(error.get(0).startsWith("-ERR "), error.get(0));
+            assertEquals(List.of(" Lion", "+OK"), client.send("C"));
+        }
+    }
+
+    @Test
+    void closesTheConnectionOnQ() throws Exception {
+        try (Client client = new Client()) {
+            assertEquals(List.of("+OK"), client.send("Q"));
+            assertNull(client.in.readLine());
+        }
+        awaitConnectionCount(0);
+    }
+
+    @Test
+    void closeHangsUpOnOpenConnections() throws Exception {
+        try (Client first = new Client(); Client second = new Client()) {
+            first.send("M Zebra");
+            awaitConnectionCount(2);
+            server.close();
+            assertNull(first.in.readLine());
+            assertNull(second.in.readLine());
+            assertEquals(0, server.getConnectionCount());
+        }
+    }
+
+    private void awaitConnectionCount(int expected) throws InterruptedException {
+        while (server.getConnectionCount() != expected) {
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * A blocking client that reads the greeting on connect.
+     */
+    private final class Client implements Closeable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final OutputStream out;
+        private final List<String> greeting;
+
+        Client() throws IOException {
+            socket = new Socket();
+            socket.connect(address);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = socket.getOutputStream();
+            greeting = reply();
+        }
+
+        List<String> send(String command) throws IOException {
+            write(command + "\n");
+            return reply();
+        }
+
+        void write(String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        /** Reads the lines of one reply, up to and including its +OK or -ERR line. */
+        List<String> reply() throws IOException {
+            List<String> lines = new ArrayList<>();
+            String line;
+            do {
+                line = in.readLine();
+                if (line == null) throw new IOException("The server closed the connection mid-reply: " + lines);
+                lines.add(line);
+            } while (!line.startsWith("+OK") && !line.startsWith("-ERR"));
+            return lines;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
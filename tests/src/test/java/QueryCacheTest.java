@@ -0,0 +1,66 @@
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class QueryCacheTest {
+    @Test
+    void servesAResultOnlyAtItsVersion() {
+        QueryCache cache = new QueryCache(16, 1 << 10);
+        OrganismNode lion = new OrganismNode("Lion", false, true, true, null, null, null);
+        cache.put(QueryCache.Query.PREY, lion, 1, "Zebra");
+
+        assertEquals("Zebra", cache.get(QueryCache.Query.PREY, lion, 1));
+        assertNull(cache.get(QueryCache.Query.FOOD_CHAIN, lion, 1));
+        assertNull(cache.get(QueryCache.Query.PREY, lion, 2));
+        assertEquals(1, cache.getInvalidations());
+        cache.put(QueryCache.Query.PREY, lion, 1, "Zebra");
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getChars());
+    }
+
+    @Test
+    void keepsWithinItsLimitsUnderConcurrentPuts() throws Exception {
+        QueryCache cache = new QueryCache(100, 4000);
+        List<OrganismNode> organisms = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            organisms.add(new OrganismNode("O" + i, true, false, false, null, null, null));
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> done = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                int first = thread;
+                done.add(pool.submit(() -> {
+                    for (int i = first; i < organisms.size(); i += 4) {
+                        cache.put(QueryCache.Query.PLANTS, organisms.get(i), 1, "x".repeat(i % 50 + 1));
+                        cache.get(QueryCache.Query.PLANTS, organisms.get(i / 2), 1);
+                    }
+                }));
+            }
+            for (Future<?> future : done) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        assertTrue(cache.size() <= 100, () -> cache.size() + " entries");
+        assertTrue(cache.getChars() <= 4000, () -> cache.getChars() + " chars");
+        assertEquals(1000, cache.getHits() + cache.getMisses());
+        assertEquals(1000, cache.size() + cache.getEvictions());
+        long cachedChars = 0;
+        for (OrganismNode organism : organisms) {
+            String result = cache.get(QueryCache.Query.PLANTS, organism, 1);
+            cachedChars += result == null ? 0 : result.length();
+        }
+        assertEquals(cachedChars, cache.getChars());
+    }
+}
@@ -0,0 +1,42 @@
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates reproducible edge lists for OrganismTreeLoader: an omnivore apex predator O0 and organisms O1, O2 and
+ * so on, each the prey of a random omnivore with room left. About a third of them are plants.
+ */
+final class RandomPyramid {
+    private RandomPyramid() {}
+
+    static String edges(long seed, int organisms) {
+        Random random = new Random(seed);
+        StringBuilder edges = new StringBuilder(",O0,A,O\n");
+        List<Integer> open = new ArrayList<>(List.of(0));
+        int[] prey = new int[organisms];
+        for (int i = 1; i < organisms; i++) {
+            int slot = random.nextInt(open.size());
+            int predator = open.get(slot);
+            // The last predator with room keeps the pyramid growing, so it only gets an animal as its last prey.
+            boolean plant = random.nextInt(3) == 0 && !(open.size() == 1 && prey[predator] == 2);
+            edges.append('O').append(predator).append(",O").append(i).append(plant ? ",P\n" : ",A,O\n");
+            if (++prey[predator] == 3) {
+                open.remove(slot);
+            }
+            if (!plant) {
+                open.add(i);
+            }
+        }
+        return edges.toString();
+    }
+
+    static OrganismTree load(long seed, int organisms) throws Exception {
+        return load(edges(seed, organisms));
+    }
+
+    static OrganismTree load(String edges) throws Exception {
+        return OrganismTreeLoader.load(new BufferedReader(new StringReader(edges)));
+    }
+}